@@ -1,5 +1,6 @@
 plugins {
     java
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 java {
@@ -13,6 +14,37 @@ repositories {
 
 dependencies {
     compileOnly(files("libs/HytaleServer.jar"))
+
+    // Benchmarks run without the server; Gson is normally provided by HytaleServer.jar
+    jmh("com.google.code.gson:gson:2.11.0")
+}
+
+// Benchmarks: ./gradlew jmh (results are written to benchmarks/results)
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.projectDirectory.file("benchmarks/results/jmh-result.json"))
+    humanOutputFile.set(layout.projectDirectory.file("benchmarks/results/jmh-result.txt"))
+}
+
+// Load simulator: ./gradlew loadTest --args="--rate 5000 --seconds 30" (see README)
+val loadtest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+dependencies {
+    // Gson is normally provided by HytaleServer.jar
+    "loadtestImplementation"("com.google.code.gson:gson:2.11.0")
+}
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Drives the rejection pipeline with a synthetic connection storm and reports throughput, latency, file writes and heap growth"
+    group = "verification"
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("de.noel.whitelist.loadtest.ConnectionStorm")
+    maxHeapSize = "1g"
 }
 
 // Version aus Gradle Property oder Fallback
@@ -0,0 +1,39 @@
+package de.noel.whitelist.benchmark;
+
+import de.noel.whitelist.config.WhitelistConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Temp directories for benchmarks that persist data, so runs never touch the project directory.
+ */
+final class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+    }
+
+    static Path createDirectory() throws IOException {
+        return Files.createTempDirectory("whitelist-bench");
+    }
+
+    /**
+     * Writes {@code json} as {@code whitelist_config.json} into {@code directory} and loads it.
+     */
+    static WhitelistConfig config(Path directory, String json) throws IOException {
+        Path file = directory.resolve("whitelist_config.json");
+        Files.writeString(file, json);
+        return WhitelistConfig.load(file);
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package de.noel.whitelist.benchmark;
+
+import de.noel.whitelist.audit.AuditLog;
+import de.noel.whitelist.capture.ConnectHandler;
+import de.noel.whitelist.capture.RejectionCapture;
+import de.noel.whitelist.capture.RejectionLogger;
+import de.noel.whitelist.capture.RejectionRateLimiter;
+import de.noel.whitelist.capture.SubnetBlocklist;
+import de.noel.whitelist.config.WhitelistConfig;
+import de.noel.whitelist.data.ConnectionAttemptManager;
+import de.noel.whitelist.data.PlayerNameDirectory;
+import de.noel.whitelist.data.UsernameIndex;
+import de.noel.whitelist.metrics.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@code WhitelistPlugin.onPlayerSetupConnect} does for a rejected connect ({@link ConnectHandler}): rate
+ * limit, store, log and audit the attempt, then record the name. {@code size} is both the pending cap and
+ * the number of names already known.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectHandlerBenchmark {
+    private static final int HOSTS = 4096;
+    private static final String REASON = "You are not whitelisted!";
+
+    @Param({"50", "5000", "100000"})
+    public int size;
+
+    private Path directory;
+    private ConnectionAttemptManager attemptManager;
+    private PlayerNameDirectory names;
+    private AuditLog auditLog;
+    private RejectionCapture capture;
+    private ConnectHandler handler;
+    private String[] hosts;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        WhitelistConfig config = BenchmarkFiles.config(directory,
+            "{\"pending\": {\"maxEntries\": " + size + ", \"flushIntervalMs\": 1000}}");
+        Metrics metrics = new Metrics();
+        attemptManager = new ConnectionAttemptManager(config, directory, metrics);
+        names = new PlayerNameDirectory(directory.resolve("whitelist_names.tsv"), Math.max(100, size), 5000, new UsernameIndex());
+        for (int i = 0; i < size; i++) {
+            names.record(UUID.randomUUID(), "Known" + i);
+        }
+
+        RejectionRateLimiter rateLimiter = new RejectionRateLimiter(
+            config.getRateLimitPerHostPerMinute(), config.getRateLimitPerHostBurst(),
+            config.getRateLimitPerUuidPerMinute(), config.getRateLimitPerUuidBurst(),
+            config.getRateLimitMaxTrackedKeys());
+        RejectionLogger logger = new RejectionLogger(message -> { }, true, config.getRejectionLogSampleRate(),
+            config.getRejectionLogIntervalSeconds(), config.getRejectionLogTopOffenders(),
+            config.getRejectionLogQueueCapacity());
+        auditLog = new AuditLog(directory.resolve("audit"), config.getAuditPartitionHours(), config.getAuditMaxFileMb(),
+            config.getAuditMaxAgeDays(), config.getAuditMaxTotalMb(), config.getAuditQueueCapacity(), names, metrics);
+        capture = new RejectionCapture(attemptManager, null, (uuid, actor) -> { }, rateLimiter,
+            new SubnetBlocklist(directory.resolve("whitelist_blocked_subnets.txt")), logger, auditLog, metrics);
+        handler = new ConnectHandler(names, capture);
+
+        hosts = new String[HOSTS];
+        for (int i = 0; i < HOSTS; i++) {
+            hosts[i] = "10.1." + (i >> 8) + "." + (i & 255);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        capture.shutdown();
+        auditLog.shutdown();
+        attemptManager.shutdown();
+        names.shutdown();
+        BenchmarkFiles.delete(directory);
+    }
+
+    /**
+     * New players from many hosts - mostly admitted by the rate limiter, so most attempts are stored.
+     */
+    @Benchmark
+    public boolean rejectedConnectDistinct() {
+        long i = next++;
+        UUID uuid = new UUID(0x5EED, i);
+        return handler.onConnect(uuid, "Bench" + i, true, REASON, hosts[(int) (i % HOSTS)]);
+    }
+
+    /**
+     * A reconnect loop from one host - the rate limiter drops almost everything.
+     */
+    @Benchmark
+    public boolean rejectedConnectFlood() {
+        long i = next++;
+        UUID uuid = new UUID(0xF100D, i & 7);
+        return handler.onConnect(uuid, "Flood" + (i & 7), true, REASON, "203.0.113.7");
+    }
+}
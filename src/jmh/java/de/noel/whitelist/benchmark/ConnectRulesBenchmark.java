@@ -0,0 +1,106 @@
+package de.noel.whitelist.benchmark;
+
+import de.noel.whitelist.capture.ConnectRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The connect rule check at the start of every rejected connect. The rule file has a pattern rule, then
+ * {@code size} username prefixes, UUIDs and /24 subnets in one rule each, so both benchmarks check every rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectRulesBenchmark {
+    private static final int HOSTS = 4096;
+
+    @Param({"50", "5000", "100000"})
+    public int size;
+
+    private Path directory;
+    private ConnectRules rules;
+    private String[] outsideHosts;
+    private String[] partnerHosts;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        StringBuilder json = new StringBuilder("{\"rules\": [\n");
+        json.append("{\"name\": \"bots\", \"action\": \"deny\", \"usernamePatterns\": [\"^bot_?\\\\d+$\", \"^[a-z]{2}\\\\d{6}$\"]},\n");
+        json.append("{\"name\": \"spam\", \"action\": \"deny\", \"usernamePrefixes\": [");
+        for (int i = 0; i < size; i++) {
+            json.append(i > 0 ? ", " : "").append("\"spam").append(i).append('"');
+        }
+        json.append("]},\n{\"name\": \"staff\", \"action\": \"approve\", \"uuids\": [");
+        for (int i = 0; i < size; i++) {
+            json.append(i > 0 ? ", " : "").append('"').append(new UUID(0x57AFF, i)).append('"');
+        }
+        json.append("]},\n{\"name\": \"partner\", \"action\": \"approve\", \"subnets\": [");
+        for (int i = 0; i < size; i++) {
+            json.append(i > 0 ? ", " : "").append('"').append(partnerNetwork(i)).append(".0/24\"");
+        }
+        json.append("]}\n]}");
+        Path file = directory.resolve("whitelist_rules.json");
+        Files.writeString(file, json);
+        rules = new ConnectRules(file, 0, message -> { });
+
+        outsideHosts = new String[HOSTS];
+        partnerHosts = new String[HOSTS];
+        for (int i = 0; i < HOSTS; i++) {
+            outsideHosts[i] = "192.168." + (i >> 8) + "." + (i & 255);
+            partnerHosts[i] = partnerNetwork(i % size) + "." + (i & 255);
+        }
+    }
+
+    /**
+     * @return the first three octets of the {@code i}-th partner /24, from 10.0.0 on
+     */
+    private static String partnerNetwork(int i) {
+        return (10 + (i >> 16)) + "." + ((i >> 8) & 255) + "." + (i & 255);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        rules.shutdown();
+        BenchmarkFiles.delete(directory);
+    }
+
+    /**
+     * A connect no rule matches - it goes on to the pending list.
+     */
+    @Benchmark
+    public ConnectRules.Rule unmatchedConnect() {
+        long i = next++;
+        return rules.match(new UUID(0x5EED, i), "Player" + i, outsideHosts[(int) (i % HOSTS)]);
+    }
+
+    /**
+     * A connect from a partner subnet, matched by the last rule.
+     */
+    @Benchmark
+    public ConnectRules.Rule approvedBySubnet() {
+        long i = next++;
+        return rules.match(new UUID(0x5EED, i), "Partner" + i, partnerHosts[(int) (i % HOSTS)]);
+    }
+}
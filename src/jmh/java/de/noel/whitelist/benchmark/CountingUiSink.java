@@ -0,0 +1,63 @@
+package de.noel.whitelist.benchmark;
+
+import de.noel.whitelist.pages.UiSink;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Stand-in for the server's UI command/event builders: consumes every command so the JIT
+ * cannot drop the rendering work, and counts them like {@code BuilderUiSink} does.
+ */
+class CountingUiSink implements UiSink {
+    private final Blackhole blackhole;
+    private int count;
+
+    CountingUiSink(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void clear(String selector) {
+        consume(selector, null);
+    }
+
+    @Override
+    public void append(String listSelector, String document) {
+        consume(listSelector, document);
+    }
+
+    @Override
+    public void appendInline(String listSelector, String markup) {
+        consume(listSelector, markup);
+    }
+
+    @Override
+    public void insertBefore(String selector, String document) {
+        consume(selector, document);
+    }
+
+    @Override
+    public void remove(String selector) {
+        consume(selector, null);
+    }
+
+    @Override
+    public void set(String selector, String value) {
+        consume(selector, value);
+    }
+
+    @Override
+    public void bind(String selector, String action, String key) {
+        consume(selector, key);
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    private void consume(String a, String b) {
+        count++;
+        blackhole.consume(a);
+        blackhole.consume(b);
+    }
+}
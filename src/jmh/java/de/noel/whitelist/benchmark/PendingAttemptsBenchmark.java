@@ -0,0 +1,89 @@
+package de.noel.whitelist.benchmark;
+
+import de.noel.whitelist.config.WhitelistConfig;
+import de.noel.whitelist.data.ConnectionAttempt;
+import de.noel.whitelist.data.ConnectionAttemptManager;
+import de.noel.whitelist.metrics.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ConnectionAttemptManager} with a full pending list of {@code size} entries:
+ * capturing one more attempt (which evicts the oldest), listing, and persisting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PendingAttemptsBenchmark {
+
+    @Param({"50", "5000", "100000"})
+    public int size;
+
+    @Param({"json", "journal", "binary"})
+    public String storage;
+
+    private Path directory;
+    private ConnectionAttemptManager manager;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        // Default write-behind interval, so the background flusher runs like it does on a server
+        WhitelistConfig config = BenchmarkFiles.config(directory,
+            "{\"pending\": {\"storage\": \"" + storage + "\", \"maxEntries\": " + size + "}}");
+        manager = new ConnectionAttemptManager(config, directory, new Metrics());
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            manager.addAttempt(new ConnectionAttempt(UUID.randomUUID(), "Player" + i, now - size + i, "10.0." + (i >> 8 & 255) + "." + (i & 255)));
+        }
+        manager.getFlusher().flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.shutdown();
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public void addAttempt() {
+        long i = next++;
+        manager.addAttempt(new ConnectionAttempt(new UUID(0x5EED, i), "Bench" + i, "192.168.0." + (i & 255)));
+    }
+
+    @Benchmark
+    public Collection<ConnectionAttempt> getPendingAttempts() {
+        return manager.getPendingAttempts();
+    }
+
+    /**
+     * One capture plus the write it causes - the cost of every change with {@code persistence: sync}.
+     */
+    @Benchmark
+    public void addAttemptAndSave() {
+        addAttempt();
+        manager.getFlusher().flush();
+    }
+}
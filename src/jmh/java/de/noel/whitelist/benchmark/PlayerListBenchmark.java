@@ -0,0 +1,123 @@
+package de.noel.whitelist.benchmark;
+
+import de.noel.whitelist.data.ConnectionAttempt;
+import de.noel.whitelist.data.PlayerNameDirectory;
+import de.noel.whitelist.data.UsernameIndex;
+import de.noel.whitelist.data.UuidSet;
+import de.noel.whitelist.pages.ListView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The player list of {@code WhitelistPage} for a whitelist of {@code size} UUIDs: the same
+ * sorted view, paging, name lookup and {@link ListView} rendering as {@code buildPlayerList}, with the
+ * {@link UuidSet} mirror of {@code WhitelistAccess} standing in for the provider and {@link CountingUiSink}
+ * for the UI builders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayerListBenchmark {
+    private static final int PAGE_SIZE = 25;
+
+    @Param({"50", "5000", "100000"})
+    public int size;
+
+    private Path directory;
+    private UuidSet whitelist;
+    private PlayerNameDirectory names;
+    private ListView playerView;
+    private UUID toggled;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        names = new PlayerNameDirectory(directory.resolve("whitelist_names.tsv"), Math.max(100, size), 3_600_000, new UsernameIndex());
+        whitelist = new UuidSet();
+        for (int i = 0; i < size; i++) {
+            UUID uuid = UUID.randomUUID();
+            whitelist.add(uuid);
+            // Every other member has a known name, like a server that migrated part of its list
+            if (i % 2 == 0) {
+                names.record(uuid, "Player" + i);
+            }
+        }
+        playerView = new ListView("#PlayerList", "Pages/WhitelistEntry.ui",
+            new String[]{" #PlayerName.Text", " #PlayerUUID.Text", " #SelectButton.Text"},
+            " #RemoveButton", "Remove", " #SelectButton", "SelectPlayer");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        names.shutdown();
+        BenchmarkFiles.delete(directory);
+    }
+
+    /**
+     * Opening the page: every row of the first page is created.
+     */
+    @Benchmark
+    public int buildPlayerList(Blackhole blackhole) {
+        CountingUiSink sink = new CountingUiSink(blackhole);
+        playerView.reset();
+        render(sink);
+        return sink.getCount();
+    }
+
+    /**
+     * Refreshing after one whitelist change: only the difference is sent.
+     */
+    @Benchmark
+    public int refreshPlayerList(Blackhole blackhole) {
+        if (toggled == null) {
+            toggled = firstPage().get(0);
+            whitelist.remove(toggled);
+        } else {
+            whitelist.add(toggled);
+            toggled = null;
+        }
+
+        CountingUiSink sink = new CountingUiSink(blackhole);
+        render(sink);
+        return sink.getCount();
+    }
+
+    private List<UUID> firstPage() {
+        List<UUID> sorted = whitelist.sorted().asList();
+        return sorted.subList(0, Math.min(PAGE_SIZE, sorted.size()));
+    }
+
+    private void render(CountingUiSink sink) {
+        List<ListView.Row> rows = new ArrayList<>(PAGE_SIZE);
+        for (UUID uuid : firstPage()) {
+            PlayerNameDirectory.Entry known = names.getEntry(uuid);
+            String uuidText = uuid.toString();
+            String displayName = known != null ? known.username() : uuidText.substring(0, 8) + "...";
+            String statusText = known != null ? uuidText + "  (seen " + ConnectionAttempt.formatAgo(known.lastSeen()) + ")" : uuidText;
+            rows.add(new ListView.Row(uuidText, displayName, statusText, "[ ]"));
+        }
+        playerView.render(rows, "No players whitelisted", sink);
+    }
+}
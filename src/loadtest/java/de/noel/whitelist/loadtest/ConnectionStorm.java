@@ -0,0 +1,435 @@
+package de.noel.whitelist.loadtest;
+
+import de.noel.whitelist.audit.AuditLog;
+import de.noel.whitelist.capture.ConnectHandler;
+import de.noel.whitelist.capture.ConnectRules;
+import de.noel.whitelist.capture.RejectionCapture;
+import de.noel.whitelist.capture.RejectionLogger;
+import de.noel.whitelist.capture.RejectionRateLimiter;
+import de.noel.whitelist.capture.SubnetBlocklist;
+import de.noel.whitelist.config.WhitelistConfig;
+import de.noel.whitelist.data.ConnectionAttemptManager;
+import de.noel.whitelist.data.MutationExecutor;
+import de.noel.whitelist.data.PlayerNameDirectory;
+import de.noel.whitelist.data.UsernameIndex;
+import de.noel.whitelist.metrics.Counter;
+import de.noel.whitelist.metrics.Gauge;
+import de.noel.whitelist.metrics.Histogram;
+import de.noel.whitelist.metrics.Metric;
+import de.noel.whitelist.metrics.Metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Offline load test of the rejection pipeline: synthetic connects at a fixed arrival rate go through the
+ * same {@link ConnectHandler}, rate limiter, pending store, rejection log and audit log the plugin builds,
+ * with {@link SimulatedWhitelistProvider} deciding which of them are rejected. All files go to a temp directory.
+ * <p>
+ * Arrivals are open-loop: each connect has a scheduled time, and its latency is measured from that time,
+ * so a handler that falls behind shows up in the percentiles instead of silently lowering the rate.
+ * Run with {@code ./gradlew loadTest --args="--rate 5000 --seconds 30"}, {@code --help} lists the options.
+ */
+public final class ConnectionStorm {
+    private static final long MB = 1024 * 1024;
+    // Waits longer than this park the thread, shorter ones spin
+    private static final long PARK_THRESHOLD_NANOS = 50_000;
+
+    private static final String USAGE = """
+        Options (defaults in brackets):
+          --rate <n>          connects per second, all threads together [5000]
+          --seconds <n>       measured duration [30]
+          --warmup <n>        seconds run before measuring [5]
+          --threads <n>       connecting threads, like the server's network threads [2]
+          --players <n>       distinct UUIDs/usernames [100000]
+          --hosts <n>         distinct referral IPs [5000]
+          --whitelisted <f>   share of players already on the whitelist, 0 - 1 [0]
+          --config <file>     whitelist_config.json to use instead of the defaults
+          --storage <type>    pending.storage when no --config is given [json]
+          --max-entries <n>   pending.maxEntries when no --config is given [players]
+          --rules <file>      connect rule file to apply (see README, Connect Rules)
+          --keep              keep the run directory with the written files""";
+
+    private record Options(int rate, int seconds, int warmup, int threads, int players, int hosts, double whitelisted,
+                           Path config, String storage, int maxEntries, Path rules, boolean keep) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            boolean keep = false;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--keep" -> keep = true;
+                    case "--help", "-h" -> throw new IllegalArgumentException("");
+                    default -> {
+                        if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                            throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                        }
+                        values.put(args[i].substring(2), args[++i]);
+                    }
+                }
+            }
+
+            int players = positive(values, "players", 100_000);
+            Options options = new Options(
+                positive(values, "rate", 5000),
+                positive(values, "seconds", 30),
+                Integer.parseInt(values.getOrDefault("warmup", "5")),
+                positive(values, "threads", 2),
+                players,
+                positive(values, "hosts", 5000),
+                Double.parseDouble(values.getOrDefault("whitelisted", "0")),
+                values.containsKey("config") ? Paths.get(values.get("config")) : null,
+                values.getOrDefault("storage", "json"),
+                positive(values, "max-entries", players),
+                values.containsKey("rules") ? Paths.get(values.get("rules")) : null,
+                keep);
+            values.keySet().removeAll(Stream.of("rate", "seconds", "warmup", "threads", "players", "hosts", "whitelisted",
+                "config", "storage", "max-entries", "rules").toList());
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown option --" + values.keySet().iterator().next());
+            }
+            if (options.warmup < 0 || options.whitelisted < 0 || options.whitelisted > 1) {
+                throw new IllegalArgumentException("--warmup must be >= 0 and --whitelisted between 0 and 1");
+            }
+            return options;
+        }
+
+        private static int positive(Map<String, String> values, String key, int defaultValue) {
+            int value = Integer.parseInt(values.getOrDefault(key, String.valueOf(defaultValue)));
+            if (value <= 0) {
+                throw new IllegalArgumentException("--" + key + " must be positive");
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Latencies of the measured connects of one thread, in nanoseconds.
+     */
+    private static final class Samples {
+        final long[] latency;  // from the scheduled arrival
+        final long[] service;  // from the actual call
+        int count;
+        long lost; // measured connects beyond the arrays, only counted
+
+        Samples(int capacity) {
+            latency = new long[capacity];
+            service = new long[capacity];
+        }
+    }
+
+    private final Options options;
+    private final Path directory;
+    private final Metrics metrics = new Metrics();
+    private final SimulatedWhitelistProvider whitelist = new SimulatedWhitelistProvider();
+    private final AtomicLong logLines = new AtomicLong();
+    private final UUID[] uuids;
+    private final String[] usernames;
+    private final String[] hostAddresses;
+
+    private WhitelistConfig config;
+    private ConnectionAttemptManager attemptManager;
+    private PlayerNameDirectory nameDirectory;
+    private AuditLog auditLog;
+    private MutationExecutor mutations;
+    private RejectionCapture rejectionCapture;
+    private ConnectHandler connectHandler;
+
+    private ConnectionStorm(Options options, Path directory) {
+        this.options = options;
+        this.directory = directory;
+        this.uuids = new UUID[options.players()];
+        this.usernames = new String[options.players()];
+        for (int i = 0; i < options.players(); i++) {
+            uuids[i] = new UUID(0x5701_0000_0000_0000L, i);
+            usernames[i] = "Storm" + i;
+        }
+        this.hostAddresses = new String[options.hosts()];
+        for (int i = 0; i < options.hosts(); i++) {
+            // 10.0.0.0/8 and up - any host count fits
+            hostAddresses[i] = (10 + (i >>> 24)) + "." + ((i >>> 16) & 255) + "." + ((i >>> 8) & 255) + "." + (i & 255);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            if (!e.getMessage().isEmpty()) {
+                System.err.println(e.getMessage());
+            }
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        Path directory = Files.createTempDirectory("whitelist-storm");
+        ConnectionStorm storm = new ConnectionStorm(options, directory);
+        try {
+            storm.setup();
+            storm.run();
+        } finally {
+            if (options.keep()) {
+                System.out.println("Files kept in " + directory);
+            } else {
+                delete(directory);
+            }
+        }
+    }
+
+    /**
+     * Builds the pipeline the way {@code WhitelistPlugin.setup} does, minus UI, sync and metrics endpoint.
+     */
+    private void setup() throws IOException {
+        Path configFile = directory.resolve("whitelist_config.json");
+        if (options.config() != null) {
+            Files.copy(options.config(), configFile);
+        } else {
+            // The plugin ships these features off; the storm measures the full pipeline
+            Files.writeString(configFile, "{\"pending\": {\"storage\": \"" + options.storage() + "\", \"maxEntries\": "
+                + options.maxEntries() + "}, \"rateLimit\": {\"enabled\": true}, \"rules\": {\"enabled\": true},"
+                + " \"logging\": {\"rejections\": \"aggregate\"}, \"audit\": {\"enabled\": true}}");
+        }
+        config = WhitelistConfig.load(configFile);
+        if (options.rules() != null) {
+            Files.copy(options.rules(), directory.resolve(config.getRulesFile()));
+        }
+
+        attemptManager = new ConnectionAttemptManager(config, directory, metrics);
+        nameDirectory = new PlayerNameDirectory(directory.resolve("whitelist_names.tsv"),
+            config.getNamesMaxEntries(), config.getNamesFlushIntervalMs(), new UsernameIndex());
+        RejectionRateLimiter rateLimiter = config.isRateLimitEnabled()
+            ? new RejectionRateLimiter(
+                config.getRateLimitPerHostPerMinute(), config.getRateLimitPerHostBurst(),
+                config.getRateLimitPerUuidPerMinute(), config.getRateLimitPerUuidBurst(),
+                config.getRateLimitMaxTrackedKeys())
+            : null;
+        RejectionLogger rejectionLogger = new RejectionLogger(message -> logLines.incrementAndGet(),
+            config.isRejectionLogAggregate(), config.getRejectionLogSampleRate(),
+            config.getRejectionLogIntervalSeconds(), config.getRejectionLogTopOffenders(),
+            config.getRejectionLogQueueCapacity());
+        if (config.isAuditEnabled()) {
+            auditLog = new AuditLog(directory.resolve(config.getAuditDirectory()), config.getAuditPartitionHours(),
+                config.getAuditMaxFileMb(), config.getAuditMaxAgeDays(), config.getAuditMaxTotalMb(),
+                config.getAuditQueueCapacity(), nameDirectory, metrics);
+        }
+        SubnetBlocklist blocklist = new SubnetBlocklist(directory.resolve("whitelist_blocked_subnets.txt"));
+        ConnectRules rules = config.isRulesEnabled()
+            ? new ConnectRules(directory.resolve(config.getRulesFile()), 0, System.out::println)
+            : null;
+        mutations = new MutationExecutor(metrics);
+        rejectionCapture = new RejectionCapture(attemptManager, rules, this::approveByRule, rateLimiter, blocklist,
+            rejectionLogger, auditLog, metrics);
+        connectHandler = new ConnectHandler(nameDirectory, rejectionCapture);
+
+        int whitelisted = (int) (options.players() * options.whitelisted());
+        whitelist.modify(list -> {
+            list.addAll(Arrays.asList(uuids).subList(0, whitelisted));
+            return whitelisted > 0;
+        });
+        attemptManager.whenLoaded().join();
+    }
+
+    /**
+     * Same as {@code WhitelistPlugin.approveByRule}, against the stand-in provider.
+     */
+    private void approveByRule(UUID uuid, String actor) {
+        mutations.run(() -> {
+            whitelist.modify(list -> list.add(uuid));
+            attemptManager.removeAttempt(uuid);
+        });
+    }
+
+    private void run() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = usedHeapAfterGc(memory);
+
+        int threads = options.threads();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * threads / options.rate();
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureStart = start + TimeUnit.SECONDS.toNanos(options.warmup());
+        long end = measureStart + TimeUnit.SECONDS.toNanos(options.seconds());
+        int perThread = (int) Math.min(Integer.MAX_VALUE - 8, (long) options.rate() * options.seconds() / threads + 16);
+
+        Samples[] samples = new Samples[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Samples own = samples[t] = new Samples(perThread);
+            // Threads are offset by a fraction of the interval, so arrivals are evenly spread
+            long first = start + intervalNanos * t / threads;
+            workers[t] = new Thread(() -> drive(first, intervalNanos, measureStart, end, own), "Storm-" + t);
+            workers[t].start();
+        }
+
+        LockSupport.parkNanos(measureStart - System.nanoTime());
+        Map<String, Long> before = snapshot();
+        long writesBefore = whitelist.getSaveCount();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - measureStart;
+        Map<String, Long> after = snapshot();
+        long writesAfter = whitelist.getSaveCount();
+        // Let queued rule approvals finish before the heap is measured
+        mutations.shutdown();
+        long heapAfter = usedHeapAfterGc(memory);
+
+        long shutdownStart = System.nanoTime();
+        rejectionCapture.shutdown();
+        if (auditLog != null) {
+            auditLog.shutdown();
+        }
+        attemptManager.shutdown();
+        nameDirectory.shutdown();
+        long shutdownMillis = (System.nanoTime() - shutdownStart) / 1_000_000;
+
+        report(samples, elapsed, before, after, writesAfter - writesBefore, heapBefore, heapAfter, shutdownMillis);
+    }
+
+    private void drive(long first, long intervalNanos, long measureStart, long end, Samples samples) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long scheduled = first; scheduled < end; scheduled += intervalNanos) {
+            long wait = scheduled - System.nanoTime();
+            if (wait > PARK_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(wait - PARK_THRESHOLD_NANOS / 2);
+            }
+            while (System.nanoTime() < scheduled) {
+                Thread.onSpinWait();
+            }
+
+            int player = random.nextInt(uuids.length);
+            long begin = System.nanoTime();
+            SimulatedConnectEvent event = whitelist.connect(uuids[player], usernames[player],
+                hostAddresses[random.nextInt(hostAddresses.length)]);
+            connectHandler.onConnect(event.uuid(), event.username(), event.cancelled(), event.reason(), event.referralHost());
+            long done = System.nanoTime();
+
+            if (scheduled >= measureStart) {
+                if (samples.count < samples.latency.length) {
+                    samples.latency[samples.count] = done - scheduled;
+                    samples.service[samples.count] = done - begin;
+                    samples.count++;
+                } else {
+                    samples.lost++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return every counter and gauge value and every histogram's count, by metric name
+     */
+    private Map<String, Long> snapshot() {
+        Map<String, Long> values = new HashMap<>();
+        for (Metric metric : metrics.getAll()) {
+            if (metric instanceof Counter counter) {
+                values.put(metric.getName(), counter.get());
+            } else if (metric instanceof Gauge gauge) {
+                values.put(metric.getName(), gauge.get());
+            } else if (metric instanceof Histogram histogram) {
+                values.put(metric.getName(), histogram.getCount());
+            }
+        }
+        values.put("names_flushes", nameDirectory.getFlushCount());
+        values.put("log_lines", logLines.get());
+        return values;
+    }
+
+    private void report(Samples[] samples, long elapsedNanos, Map<String, Long> before, Map<String, Long> after,
+                        long whitelistSaves, long heapBefore, long heapAfter, long shutdownMillis) {
+        int total = 0;
+        long lost = 0;
+        for (Samples own : samples) {
+            total += own.count;
+            lost += own.lost;
+        }
+        long[] latency = new long[total];
+        long[] service = new long[total];
+        int offset = 0;
+        for (Samples own : samples) {
+            System.arraycopy(own.latency, 0, latency, offset, own.count);
+            System.arraycopy(own.service, 0, service, offset, own.count);
+            offset += own.count;
+        }
+        Arrays.sort(latency);
+        Arrays.sort(service);
+
+        double seconds = elapsedNanos / 1e9;
+        double throughput = (total + lost) / seconds;
+        System.out.printf(Locale.ROOT, "Connection storm: %d/s for %d s (%d s warmup), %d threads, %d players, %d hosts, %.0f%% whitelisted, %s storage, maxEntries %d%n",
+            options.rate(), options.seconds(), options.warmup(), options.threads(), options.players(), options.hosts(),
+            options.whitelisted() * 100, config.isPendingBinary() ? "binary" : config.isPendingJournal() ? "journal" : "json",
+            config.getPendingMaxEntries());
+        System.out.printf(Locale.ROOT, "Throughput:   %.0f connects/s (target %d)%s%n", throughput, options.rate(),
+            throughput < options.rate() * 0.99 ? " - could not keep up" : "");
+        System.out.println("Latency:      " + percentiles(latency) + "  (from scheduled arrival)");
+        System.out.println("Service time: " + percentiles(service));
+        System.out.println("Outcomes:     "
+            + delta(before, after, "whitelist_rejections_captured_total") + " captured, "
+            + delta(before, after, "whitelist_rejections_rate_limited_total") + " rate-limited, "
+            + delta(before, after, "whitelist_rejections_blocked_total") + " blocked, "
+            + delta(before, after, "whitelist_rules_denied_total") + " denied, "
+            + delta(before, after, "whitelist_rules_approved_total") + " approved by rule, "
+            + "pending " + after.getOrDefault("whitelist_pending_requests", 0L)
+            + ", whitelist " + whitelist.size());
+        System.out.println("File writes:  "
+            + delta(before, after, "whitelist_pending_save_seconds") + " pending store, "
+            + delta(before, after, "names_flushes") + " name directory, "
+            + delta(before, after, "whitelist_audit_flushes_total") + " audit log ("
+            + delta(before, after, "whitelist_audit_records_total") + " entries, "
+            + delta(before, after, "whitelist_audit_dropped_total") + " dropped), "
+            + whitelistSaves + " whitelist; "
+            + delta(before, after, "log_lines") + " log lines");
+        System.out.printf(Locale.ROOT, "Heap:         %+.1f MB retained (%.1f MB -> %.1f MB after GC), warmup included%n",
+            (heapAfter - heapBefore) / (double) MB, heapBefore / (double) MB, heapAfter / (double) MB);
+        System.out.println("Shutdown:     " + shutdownMillis + " ms for the final flushes");
+    }
+
+    private static long delta(Map<String, Long> before, Map<String, Long> after, String name) {
+        return after.getOrDefault(name, 0L) - before.getOrDefault(name, 0L);
+    }
+
+    private static String percentiles(long[] sorted) {
+        if (sorted.length == 0) {
+            return "no samples";
+        }
+        return "p50 " + micros(sorted, 0.5) + "  p90 " + micros(sorted, 0.9) + "  p99 " + micros(sorted, 0.99)
+            + "  p99.9 " + micros(sorted, 0.999) + "  max " + micros(sorted, 1.0);
+    }
+
+    private static String micros(long[] sorted, double quantile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return String.format(Locale.ROOT, "%.1f us", sorted[Math.max(0, index)] / 1000.0);
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
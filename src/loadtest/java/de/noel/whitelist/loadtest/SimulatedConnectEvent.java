@@ -0,0 +1,13 @@
+package de.noel.whitelist.loadtest;
+
+import java.util.UUID;
+
+/**
+ * Stand-in for {@code PlayerSetupConnectEvent}: the fields {@code WhitelistPlugin.onPlayerSetupConnect} reads,
+ * as the event looks once the access control module has run.
+ *
+ * @param referralHost {@code getReferralSource().host}, null if the client sent none
+ * @param reason       the rejection reason, null if the connect was accepted
+ */
+record SimulatedConnectEvent(UUID uuid, String username, String referralHost, boolean cancelled, String reason) {
+}
@@ -0,0 +1,60 @@
+package de.noel.whitelist.loadtest;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Stand-in for {@code HytaleWhitelistProvider}: the UUID set behind a read-write lock, where every
+ * {@link #modify} that changes the list counts as one save of {@code whitelist.json}.
+ */
+final class SimulatedWhitelistProvider {
+    static final String REJECT_REASON = "You are not whitelisted!";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<UUID> list = new HashSet<>();
+    private final AtomicLong saves = new AtomicLong();
+
+    /**
+     * The access control module's check before the plugin's listener sees the event.
+     */
+    SimulatedConnectEvent connect(UUID uuid, String username, String referralHost) {
+        boolean whitelisted;
+        lock.readLock().lock();
+        try {
+            whitelisted = list.contains(uuid);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new SimulatedConnectEvent(uuid, username, referralHost, !whitelisted, whitelisted ? null : REJECT_REASON);
+    }
+
+    boolean modify(Function<Set<UUID>, Boolean> change) {
+        lock.writeLock().lock();
+        try {
+            boolean changed = change.apply(list);
+            if (changed) {
+                saves.incrementAndGet();
+            }
+            return changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return list.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long getSaveCount() {
+        return saves.get();
+    }
+}
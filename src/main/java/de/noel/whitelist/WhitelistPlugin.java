@@ -1,8 +1,25 @@
 package de.noel.whitelist;
 
+import de.noel.whitelist.audit.AuditLog;
+import de.noel.whitelist.capture.ConnectHandler;
+import de.noel.whitelist.capture.ConnectRules;
+import de.noel.whitelist.capture.RejectionCapture;
+import de.noel.whitelist.capture.RejectionLogger;
+import de.noel.whitelist.capture.RejectionRateLimiter;
+import de.noel.whitelist.capture.SubnetBlocklist;
 import de.noel.whitelist.commands.WhitelistUICommand;
-import de.noel.whitelist.data.ConnectionAttempt;
+import de.noel.whitelist.config.WhitelistConfig;
 import de.noel.whitelist.data.ConnectionAttemptManager;
+import de.noel.whitelist.data.ConnectionAttempt;
+import de.noel.whitelist.data.MutationExecutor;
+import de.noel.whitelist.data.PlayerNameDirectory;
+import de.noel.whitelist.data.UsernameIndex;
+import de.noel.whitelist.data.WhitelistAccess;
+import de.noel.whitelist.data.WhitelistExpiry;
+import de.noel.whitelist.data.WhitelistTransfer;
+import de.noel.whitelist.metrics.Metrics;
+import de.noel.whitelist.metrics.PrometheusEndpoint;
+import de.noel.whitelist.sync.SyncService;
 import com.hypixel.hytale.event.EventPriority;
 import com.hypixel.hytale.protocol.HostAddress;
 import com.hypixel.hytale.server.core.event.events.player.PlayerSetupConnectEvent;
@@ -11,14 +28,35 @@ import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhite
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 public class WhitelistPlugin extends JavaPlugin {
 
     private static WhitelistPlugin instance;
+    private WhitelistConfig config;
     private HytaleWhitelistProvider whitelistProvider;
+    private WhitelistAccess whitelist;
+    private Metrics metrics;
+    private PrometheusEndpoint prometheusEndpoint;
+    private ScheduledExecutorService uiScheduler;
+    private MutationExecutor mutations;
     private ConnectionAttemptManager attemptManager;
+    private RejectionCapture rejectionCapture;
+    private ConnectHandler connectHandler;
+    private AuditLog auditLog;
+    private PlayerNameDirectory nameDirectory;
+    private WhitelistTransfer whitelistTransfer;
+    private WhitelistExpiry whitelistExpiry;
+    private SyncService syncService;
 
     public WhitelistPlugin(@Nonnull JavaPluginInit init) {
         super(init);
@@ -29,8 +67,76 @@ public class WhitelistPlugin extends JavaPlugin {
     protected void setup() {
         getLogger().at(Level.INFO).log("WhitelistPlugin loading...");
 
-        // Initialize connection attempt manager
-        attemptManager = new ConnectionAttemptManager();
+        config = WhitelistConfig.load();
+        metrics = new Metrics();
+
+        // Initialize connection attempt manager - a large pending store loads in the background
+        attemptManager = new ConnectionAttemptManager(config, Paths.get(""), metrics);
+
+        // Known usernames for offline players - read from disk on first use.
+        // The prefix index covers the directory plus pending requests recorded before it existed.
+        UsernameIndex usernameIndex = new UsernameIndex();
+        attemptManager.whenLoaded().thenRun(() -> {
+            List<ConnectionAttempt> pending = attemptManager.getPendingAttempts();
+            for (ConnectionAttempt attempt : pending) {
+                usernameIndex.add(attempt.getUuid(), attempt.getUsername());
+            }
+            getLogger().at(Level.INFO).log("Loaded " + pending.size() + " pending requests in " + attemptManager.getLoadMillis() + " ms");
+        });
+        nameDirectory = new PlayerNameDirectory(Paths.get("whitelist_names.tsv"),
+            config.getNamesMaxEntries(), config.getNamesFlushIntervalMs(), usernameIndex);
+        metrics.gauge("whitelist_known_names", "Usernames in the name directory", nameDirectory::size);
+        metrics.counter("whitelist_names_flushes_total", "Write-behind flushes of the name directory", nameDirectory::getFlushCount);
+
+        // Rejected connections go through the rate limiter before they are stored
+        RejectionRateLimiter rateLimiter = config.isRateLimitEnabled()
+            ? new RejectionRateLimiter(
+                config.getRateLimitPerHostPerMinute(), config.getRateLimitPerHostBurst(),
+                config.getRateLimitPerUuidPerMinute(), config.getRateLimitPerUuidBurst(),
+                config.getRateLimitMaxTrackedKeys())
+            : null;
+        // Rejection log lines are formatted on a background thread, optionally aggregated per interval
+        RejectionLogger rejectionLogger = new RejectionLogger(
+            message -> getLogger().at(Level.INFO).log(message),
+            config.isRejectionLogAggregate(), config.getRejectionLogSampleRate(),
+            config.getRejectionLogIntervalSeconds(), config.getRejectionLogTopOffenders(),
+            config.getRejectionLogQueueCapacity());
+        // Every rejection and whitelist change, kept in rolling files for /wl history
+        if (config.isAuditEnabled()) {
+            try {
+                auditLog = new AuditLog(Paths.get(config.getAuditDirectory()), config.getAuditPartitionHours(),
+                    config.getAuditMaxFileMb(), config.getAuditMaxAgeDays(), config.getAuditMaxTotalMb(),
+                    config.getAuditQueueCapacity(), nameDirectory, metrics);
+            } catch (IOException e) {
+                getLogger().at(Level.WARNING).log("Failed to open the audit log in " + config.getAuditDirectory() + ": " + e.getMessage());
+            }
+        }
+        // Subnets blocked from /wl - their connects never reach the pending list
+        SubnetBlocklist blocklist = new SubnetBlocklist(Paths.get("whitelist_blocked_subnets.txt"));
+        metrics.gauge("whitelist_blocked_subnets", "Subnets whose rejected connects are dropped", blocklist::size);
+        // Auto-approve and auto-deny rules, re-read when the file changes
+        ConnectRules rules = null;
+        if (config.isRulesEnabled()) {
+            rules = new ConnectRules(Paths.get(config.getRulesFile()), config.getRulesReloadIntervalMs(),
+                message -> getLogger().at(Level.INFO).log(message));
+            metrics.gauge("whitelist_connect_rules", "Connect rules currently loaded", rules::size);
+        }
+        rejectionCapture = new RejectionCapture(attemptManager, rules, this::approveByRule, rateLimiter, blocklist,
+            rejectionLogger, auditLog, metrics);
+        connectHandler = new ConnectHandler(nameDirectory, rejectionCapture);
+
+        // Debounced live updates of open /wl pages
+        uiScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Whitelist-LiveUpdates");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Whitelist and pending store writes triggered from /wl, kept off the world thread
+        mutations = new MutationExecutor(metrics);
+
+        // /wl import and /wl export only touch files in the server directory
+        whitelistTransfer = new WhitelistTransfer(Paths.get(""));
 
         // Get the whitelist provider from AccessControlModule via reflection
         try {
@@ -38,40 +144,120 @@ public class WhitelistPlugin extends JavaPlugin {
             Field providerField = AccessControlModule.class.getDeclaredField("whitelistProvider");
             providerField.setAccessible(true);
             whitelistProvider = (HytaleWhitelistProvider) providerField.get(accessControl);
+            whitelist = new WhitelistAccess(whitelistProvider, metrics);
+            whitelist.setAuditLog(auditLog);
             getLogger().at(Level.INFO).log("Successfully connected to whitelist provider");
         } catch (Exception e) {
             getLogger().at(Level.SEVERE).log("Failed to access whitelist provider: " + e.getMessage());
             return;
         }
 
+        // Time-limited entries, removed by one timer for all of them
+        whitelistExpiry = new WhitelistExpiry(Paths.get("whitelist_expiry.tsv"), whitelist,
+            config.getExpiryCheckIntervalMs(), metrics);
+
         // Register event listener to capture rejected connection attempts (runs AFTER whitelist check)
         getEventRegistry().register(EventPriority.LAST, PlayerSetupConnectEvent.class, this::onPlayerSetupConnect);
 
         // Register commands
         getCommandRegistry().registerCommand(new WhitelistUICommand());
 
+        // Optional sharing of whitelist and pending changes with other servers
+        if (config.isSyncEnabled()) {
+            try {
+                String serverId = config.getSyncServerId().isBlank() ? defaultServerId() : config.getSyncServerId();
+                syncService = new SyncService(serverId, Paths.get(config.getSyncDirectory()), Paths.get(""),
+                    config.getSyncPollIntervalMs(), config.getSyncCompactMb() * 1024L * 1024L,
+                    TimeUnit.DAYS.toMillis(config.getSyncServerTimeoutDays()), whitelist, attemptManager, metrics);
+                getLogger().at(Level.INFO).log("Syncing whitelist changes through " + config.getSyncDirectory() + " as " + serverId);
+            } catch (IOException e) {
+                getLogger().at(Level.WARNING).log("Failed to start whitelist sync in " + config.getSyncDirectory() + ": " + e.getMessage());
+            }
+        }
+
+        // Optional scrape endpoint, loopback only
+        if (config.isPrometheusEnabled()) {
+            try {
+                prometheusEndpoint = new PrometheusEndpoint(metrics, config.getPrometheusPort());
+                getLogger().at(Level.INFO).log("Metrics available at http://127.0.0.1:" + prometheusEndpoint.getPort() + "/metrics");
+            } catch (IOException e) {
+                getLogger().at(Level.WARNING).log("Failed to start metrics endpoint on port " + config.getPrometheusPort() + ": " + e.getMessage());
+            }
+        }
+
         getLogger().at(Level.INFO).log("WhitelistPlugin loaded - use /wl to open UI");
     }
 
     private void onPlayerSetupConnect(PlayerSetupConnectEvent event) {
-        // Only log if the connection was rejected due to whitelist
-        if (event.isCancelled() && event.getReason() != null && event.getReason().contains("not whitelisted")) {
-            String ip = "unknown";
-            HostAddress source = event.getReferralSource();
-            if (source != null && source.host != null) {
-                ip = source.host;
-            }
+        HostAddress source = event.getReferralSource();
+        connectHandler.onConnect(event.getUuid(), event.getUsername(), event.isCancelled(), event.getReason(),
+            source != null ? source.host : null);
+    }
 
-            ConnectionAttempt attempt = new ConnectionAttempt(
-                event.getUuid(),
-                event.getUsername(),
-                ip
-            );
+    /**
+     * Whitelists a player matched by an approve rule. The connect itself stays rejected - the player
+     * gets in on the next attempt, once the change has run on the mutation thread.
+     */
+    private void approveByRule(UUID uuid, String actor) {
+        if (whitelist.contains(uuid)) {
+            return; // Added by an earlier connect in the meantime
+        }
+        mutations.run(() -> {
+            whitelist.modify(actor, list -> list.add(uuid));
+            attemptManager.removeAttempt(uuid);
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                getLogger().at(Level.WARNING).log("Failed to whitelist " + uuid + " (" + actor + "): "
+                    + MutationExecutor.causeOf(error).getMessage());
+            }
+        });
+    }
 
-            attemptManager.addAttempt(attempt);
+    /**
+     * Host name plus server directory, so servers on the same host still get different IDs.
+     */
+    private static String defaultServerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "unknown";
+        }
+        return host + ":" + Paths.get("").toAbsolutePath();
+    }
 
-            getLogger().at(Level.INFO).log("Whitelist rejection logged: %s (%s) from %s",
-                event.getUsername(), event.getUuid(), ip);
+    @Override
+    protected void shutdown() {
+        if (prometheusEndpoint != null) {
+            prometheusEndpoint.stop();
+        }
+        if (uiScheduler != null) {
+            uiScheduler.shutdownNow();
+        }
+        // Let queued /wl changes finish before the stores they write to shut down
+        if (mutations != null) {
+            mutations.shutdown();
+        }
+        if (whitelistExpiry != null) {
+            whitelistExpiry.shutdown();
+        }
+        // Before the stores shut down, so queued changes still reach the shared log
+        if (syncService != null) {
+            syncService.shutdown();
+        }
+        if (rejectionCapture != null) {
+            rejectionCapture.shutdown();
+        }
+        // Before the name directory, the log thread looks up names of whitelist changes
+        if (auditLog != null) {
+            auditLog.shutdown();
+        }
+        // Write out anything the flushers have not persisted yet
+        if (attemptManager != null) {
+            attemptManager.shutdown();
+        }
+        if (nameDirectory != null) {
+            nameDirectory.shutdown();
         }
     }
 
@@ -79,11 +265,54 @@ public class WhitelistPlugin extends JavaPlugin {
         return instance;
     }
 
+    public WhitelistConfig getPluginConfig() {
+        return config;
+    }
+
     public HytaleWhitelistProvider getWhitelistProvider() {
         return whitelistProvider;
     }
 
+    public WhitelistAccess getWhitelist() {
+        return whitelist;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public ScheduledExecutorService getUiScheduler() {
+        return uiScheduler;
+    }
+
+    public MutationExecutor getMutations() {
+        return mutations;
+    }
+
     public ConnectionAttemptManager getAttemptManager() {
         return attemptManager;
     }
+
+    public PlayerNameDirectory getNameDirectory() {
+        return nameDirectory;
+    }
+
+    public RejectionCapture getRejectionCapture() {
+        return rejectionCapture;
+    }
+
+    /**
+     * @return the audit log, or null when it is disabled
+     */
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    public WhitelistExpiry getWhitelistExpiry() {
+        return whitelistExpiry;
+    }
+
+    public WhitelistTransfer getWhitelistTransfer() {
+        return whitelistTransfer;
+    }
 }
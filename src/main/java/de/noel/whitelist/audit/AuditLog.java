@@ -0,0 +1,578 @@
+package de.noel.whitelist.audit;
+
+import de.noel.whitelist.data.PlayerNameDirectory;
+import de.noel.whitelist.metrics.Counter;
+import de.noel.whitelist.metrics.Histogram;
+import de.noel.whitelist.metrics.Metrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps every rejected connect and every whitelist add and remove, with who made the change, so
+ * "how often did X try to join, from where, and who let them in?" can still be answered after the fact.
+ * The pending list only keeps the latest attempt per player.
+ * <p>
+ * Callers only offer entries to a bounded queue; one background thread appends them as
+ * {@code time<TAB>action<TAB>uuid<TAB>username<TAB>ip<TAB>actor} lines to the file of the current
+ * time partition, {@code audit-yyyyMMdd-HH.log} named after the partition's start in UTC. A file that
+ * reaches the size limit continues in {@code audit-yyyyMMdd-HH.1.log} and so on. Files whose partition
+ * ended before the retention age are deleted, then the oldest files until the total fits the size cap.
+ * <p>
+ * {@link #history} reads the files one line at a time on its own thread and keeps only counts and the
+ * newest matches, so a query over months of entries needs no more memory than one over an hour.
+ */
+public class AuditLog {
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HH").withZone(ZoneOffset.UTC);
+    private static final Pattern FILE_NAME = Pattern.compile("audit-(\\d{8})-(\\d{2})(?:\\.(\\d+))?\\.log");
+    private static final long RETENTION_CHECK_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final int BATCH_SIZE = 1024;
+    // Distinct IPs (or players) counted per query; more are only summed up
+    private static final int MAX_RELATED = 1000;
+
+    public enum Action {
+        REJECTED, RATE_LIMITED, ADDED, REMOVED, BLOCKED, DENIED
+    }
+
+    /**
+     * @param username may be null, e.g. for a whitelist change of a player never seen connecting
+     * @param ip       null for whitelist changes
+     * @param actor    who made a whitelist change, null for connects
+     */
+    public record Entry(long timestamp, Action action, UUID uuid, String username, String ip, String actor) {
+    }
+
+    private final Path directory;
+    private final long partitionMillis;
+    private final long maxFileBytes;
+    private final long maxAgeMillis;
+    private final long maxTotalBytes;
+    private final PlayerNameDirectory names;
+    private final BlockingQueue<Entry> queue;
+    private final Thread worker;
+    private final ExecutorService queries = Executors.newSingleThreadExecutor(
+        Thread.ofVirtual().name("Whitelist-AuditQuery").factory());
+    private final Counter written;
+    private final Counter flushes;
+    private final Counter dropped;
+    private final Histogram queryTimer;
+    private volatile boolean running = true;
+
+    // Only touched by the worker thread
+    private BufferedWriter writer;
+    private Partition current;
+    private long currentBytes;
+    private long nextRetentionCheck;
+
+    /**
+     * @param partitionHours length of one time partition, 1 - 24
+     * @param maxFileMb      size after which a partition continues in a new file
+     * @param maxAgeDays     partitions that ended longer ago are deleted
+     * @param maxTotalMb     cap for all files together; the oldest go first
+     */
+    public AuditLog(Path directory, int partitionHours, int maxFileMb, int maxAgeDays, int maxTotalMb,
+                    int queueCapacity, PlayerNameDirectory names, Metrics metrics) throws IOException {
+        this.directory = directory;
+        this.partitionMillis = TimeUnit.HOURS.toMillis(Math.max(1, Math.min(24, partitionHours)));
+        this.maxFileBytes = Math.max(1, maxFileMb) * 1024L * 1024L;
+        this.maxAgeMillis = TimeUnit.DAYS.toMillis(Math.max(1, maxAgeDays));
+        this.maxTotalBytes = Math.max(1, maxTotalMb) * 1024L * 1024L;
+        this.names = names;
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, queueCapacity));
+        this.written = metrics.counter("whitelist_audit_records_total", "Entries appended to the audit log");
+        this.flushes = metrics.counter("whitelist_audit_flushes_total", "Batches written to the audit log, one flush each");
+        this.dropped = metrics.counter("whitelist_audit_dropped_total", "Audit entries lost to a full queue or a failed write");
+        this.queryTimer = metrics.histogram("whitelist_audit_query_seconds", "Duration of /wl history queries");
+        Files.createDirectories(directory);
+
+        this.worker = new Thread(this::run, "Whitelist-AuditLog");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Records a connect rejected by the whitelist. Never blocks.
+     *
+     * @param action {@link Action#REJECTED} - it was stored as pending request. Connects dropped by a deny rule,
+     *               the subnet blocklist or the rate limit are only counted; {@link Action#RATE_LIMITED},
+     *               {@link Action#BLOCKED} and {@link Action#DENIED} only appear in older files.
+     */
+    public void rejected(UUID uuid, String username, String ip, Action action) {
+        offer(new Entry(System.currentTimeMillis(), action, uuid, username, ip, null));
+    }
+
+    /**
+     * Records the effective delta of one whitelist change. Never blocks; names are looked up on the log thread.
+     */
+    public void whitelistChanged(String actor, Collection<UUID> added, Collection<UUID> removed) {
+        long now = System.currentTimeMillis();
+        for (UUID uuid : added) {
+            offer(new Entry(now, Action.ADDED, uuid, null, null, actor));
+        }
+        for (UUID uuid : removed) {
+            offer(new Entry(now, Action.REMOVED, uuid, null, null, actor));
+        }
+    }
+
+    private void offer(Entry entry) {
+        if (!queue.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Streams all partitions for entries about {@code query}: a UUID, an IP address or a username.
+     * A username also matches entries of the UUID the name directory knows for it, e.g. whitelist
+     * changes made while the player had a different name.
+     *
+     * @param recentLimit how many of the newest matching entries to keep
+     */
+    public CompletableFuture<History> history(String query, int recentLimit) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                return search(query.trim(), Math.max(0, recentLimit));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read the audit log: " + e.getMessage(), e);
+            } finally {
+                queryTimer.recordSince(start);
+            }
+        }, queries);
+    }
+
+    /**
+     * Writes everything queued, then stops.
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queries.shutdownNow();
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    write(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // shutdown() interrupts to wake us up; the loop condition decides
+            }
+
+            if (System.currentTimeMillis() >= nextRetentionCheck) {
+                enforceRetention();
+            }
+        }
+        closeWriter();
+    }
+
+    private void write(List<Entry> batch) {
+        for (Entry entry : batch) {
+            String username = entry.username() != null || entry.uuid() == null ? entry.username() : names.getName(entry.uuid());
+            String line = entry.timestamp() + "\t" + entry.action() + "\t" + (entry.uuid() != null ? entry.uuid() : "")
+                + "\t" + clean(username) + "\t" + clean(entry.ip()) + "\t" + clean(entry.actor()) + "\n";
+            try {
+                ensureWriter(entry.timestamp());
+                writer.write(line);
+                // Close enough for the size limit, names and addresses are almost always ASCII
+                currentBytes += line.length();
+                written.increment();
+            } catch (IOException e) {
+                dropped.increment();
+                System.err.println("Failed to write the audit log: " + e.getMessage());
+                closeWriter();
+            }
+        }
+
+        // Once per batch, so queries see entries right after they were written
+        if (writer != null) {
+            try {
+                writer.flush();
+                flushes.increment();
+            } catch (IOException e) {
+                System.err.println("Failed to flush the audit log: " + e.getMessage());
+                closeWriter();
+            }
+        }
+    }
+
+    /**
+     * Opens the file for {@code timestamp}'s partition, or the next file of the current one once it is full.
+     * Entries stamped before the current partition (clock adjustments) stay in the current file.
+     */
+    private void ensureWriter(long timestamp) throws IOException {
+        long start = timestamp - Math.floorMod(timestamp, partitionMillis);
+        if (writer != null && start <= current.start() && currentBytes < maxFileBytes) {
+            return;
+        }
+        if (current != null) {
+            start = Math.max(start, current.start());
+        }
+        closeWriter();
+
+        // Continue the last file of the partition (e.g. after a restart) unless it is full. Never go back to
+        // a lower number, retention may have deleted the first files of a partition that is still written.
+        int sequence = 0;
+        if (current != null && current.start() == start) {
+            sequence = current.sequence() + 1;
+        } else {
+            for (Partition file : listFiles()) {
+                if (file.start() == start) {
+                    sequence = Math.max(sequence, file.sequence());
+                }
+            }
+        }
+        Path path = fileFor(start, sequence);
+        long size = Files.exists(path) ? Files.size(path) : 0;
+        if (size >= maxFileBytes) {
+            path = fileFor(start, ++sequence);
+            size = 0;
+        }
+
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        current = new Partition(path, start, sequence);
+        currentBytes = size;
+        nextRetentionCheck = 0;
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the audit log: " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    private Path fileFor(long start, int sequence) {
+        String name = "audit-" + PARTITION_FORMAT.format(Instant.ofEpochMilli(start));
+        return directory.resolve(sequence == 0 ? name + ".log" : name + "." + sequence + ".log");
+    }
+
+    private void enforceRetention() {
+        long now = System.currentTimeMillis();
+        nextRetentionCheck = now + RETENTION_CHECK_INTERVAL_MS;
+        try {
+            List<Partition> files = listFiles();
+            long total = 0;
+            for (Partition file : files) {
+                total += file.size();
+            }
+
+            // Oldest first; the file being written is never deleted
+            for (Partition file : files) {
+                if (current != null && file.path().equals(current.path())) {
+                    break;
+                }
+                boolean expired = file.start() + partitionMillis < now - maxAgeMillis;
+                if (!expired && total <= maxTotalBytes) {
+                    break;
+                }
+                long size = file.size();
+                Files.deleteIfExists(file.path());
+                total -= size;
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to clean up " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return all audit files, oldest first
+     */
+    private List<Partition> listFiles() throws IOException {
+        List<Partition> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Partition file = Partition.parse(path);
+                if (file != null) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(Partition::start).thenComparingInt(Partition::sequence));
+        return files;
+    }
+
+    private History search(String query, int recentLimit) throws IOException {
+        UUID uuid = parseUuid(query);
+        boolean byIp = uuid == null && looksLikeIp(query);
+        String name = uuid == null && !byIp ? query : null;
+        if (name != null) {
+            uuid = names.findByName(name);
+        }
+        String uuidText = uuid != null ? uuid.toString() : null;
+
+        History history = new History(query, byIp);
+        int[] tabs = new int[5];
+        for (Partition file : listFiles()) {
+            history.files++;
+            try (BufferedReader reader = Files.newBufferedReader(file.path(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    history.bytes += line.length() + 1;
+                    if (!split(line, tabs)) {
+                        continue;
+                    }
+
+                    // Compare fields in place, most lines don't match and should not allocate
+                    boolean match = byIp
+                        ? fieldEquals(line, tabs, 4, query)
+                        : (uuidText != null && fieldEquals(line, tabs, 2, uuidText)) || (name != null && fieldEquals(line, tabs, 3, name));
+                    if (match) {
+                        history.add(parse(line, tabs), recentLimit);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted by retention while we were reading
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Finds the five tab positions of a line; false for malformed (e.g. half-written) lines.
+     */
+    private static boolean split(String line, int[] tabs) {
+        int from = 0;
+        for (int i = 0; i < tabs.length; i++) {
+            int tab = line.indexOf('\t', from);
+            if (tab < 0) {
+                return false;
+            }
+            tabs[i] = tab;
+            from = tab + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Case-insensitive comparison of one field with {@code value}, without taking the field out of the line.
+     */
+    private static boolean fieldEquals(String line, int[] tabs, int index, String value) {
+        int start = index == 0 ? 0 : tabs[index - 1] + 1;
+        int end = index < tabs.length ? tabs[index] : line.length();
+        return end - start == value.length() && line.regionMatches(true, start, value, 0, value.length());
+    }
+
+    private static String field(String line, int[] tabs, int index) {
+        int start = index == 0 ? 0 : tabs[index - 1] + 1;
+        int end = index < tabs.length ? tabs[index] : line.length();
+        return line.substring(start, end);
+    }
+
+    private static Entry parse(String line, int[] tabs) {
+        long timestamp;
+        Action action;
+        try {
+            timestamp = Long.parseLong(field(line, tabs, 0));
+            action = Action.valueOf(field(line, tabs, 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String uuid = field(line, tabs, 2);
+        return new Entry(timestamp, action, uuid.isEmpty() ? null : parseUuid(uuid),
+            emptyToNull(field(line, tabs, 3)), emptyToNull(field(line, tabs, 4)), emptyToNull(field(line, tabs, 5)));
+    }
+
+    private static UUID parseUuid(String value) {
+        if (value.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Digits and dots (IPv4) or hex digits with colons (IPv6). Usernames never contain either separator.
+     */
+    private static boolean looksLikeIp(String value) {
+        if (value.isEmpty() || (value.indexOf('.') < 0 && value.indexOf(':') < 0)) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c == '.' || c == ':' || Character.digit(c, 16) >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private record Partition(Path path, long start, int sequence) {
+        static Partition parse(Path path) {
+            Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
+            if (!matcher.matches()) {
+                return null;
+            }
+            try {
+                long start = LocalDate.parse(matcher.group(1), DateTimeFormatter.BASIC_ISO_DATE)
+                    .atTime(Integer.parseInt(matcher.group(2)), 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+                return new Partition(path, start, matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 0);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        long size() {
+            try {
+                return Files.size(path);
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Result of one {@link #history} query: totals over every match plus the newest matches.
+     */
+    public static class History {
+        private final String query;
+        private final boolean byIp;
+        private final long[] counts = new long[Action.values().length];
+        private final Deque<Entry> recent = new ArrayDeque<>();
+        // IPs a player connected from, or players that connected from an IP, with their counts
+        private final Map<String, Long> related = new LinkedHashMap<>();
+        private long matches;
+        private long first = Long.MAX_VALUE;
+        private long last = Long.MIN_VALUE;
+        private int files;
+        private long bytes;
+
+        History(String query, boolean byIp) {
+            this.query = query;
+            this.byIp = byIp;
+        }
+
+        private void add(Entry entry, int recentLimit) {
+            if (entry == null) {
+                return;
+            }
+            matches++;
+            counts[entry.action().ordinal()]++;
+            first = Math.min(first, entry.timestamp());
+            last = Math.max(last, entry.timestamp());
+
+            String key = byIp
+                ? (entry.username() != null ? entry.username() : String.valueOf(entry.uuid()))
+                : entry.ip();
+            if (key != null && (related.containsKey(key) || related.size() < MAX_RELATED)) {
+                related.merge(key, 1L, Long::sum);
+            }
+
+            // Files are read oldest first, so the newest matches are the last ones seen
+            if (recentLimit > 0) {
+                if (recent.size() == recentLimit) {
+                    recent.removeFirst();
+                }
+                recent.addLast(entry);
+            }
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public boolean isByIp() {
+            return byIp;
+        }
+
+        public long getMatches() {
+            return matches;
+        }
+
+        public long getCount(Action action) {
+            return counts[action.ordinal()];
+        }
+
+        /**
+         * @return the oldest match's time, only meaningful if there are matches
+         */
+        public long getFirst() {
+            return first;
+        }
+
+        public long getLast() {
+            return last;
+        }
+
+        /**
+         * @return IPs (player query) or players (IP query) with their number of matches, most frequent first
+         */
+        public List<Map.Entry<String, Long>> getRelated() {
+            List<Map.Entry<String, Long>> sorted = new ArrayList<>(related.entrySet());
+            sorted.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            return sorted;
+        }
+
+        /**
+         * @return the newest matches, newest first
+         */
+        public List<Entry> getRecent() {
+            List<Entry> newestFirst = new ArrayList<>(recent);
+            Collections.reverse(newestFirst);
+            return newestFirst;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.noel.whitelist.capture;
+
+import de.noel.whitelist.data.PlayerNameDirectory;
+
+import java.util.UUID;
+
+/**
+ * What the plugin does with a player connect, taken out of the event so it can be driven without a
+ * server: hand connects the whitelist rejected to {@link RejectionCapture}, and remember the name of
+ * players who got in or were stored as pending request. Names from dropped connects are not recorded,
+ * so a flood of made-up players cannot push real ones out of the name directory.
+ * {@code WhitelistPlugin.onPlayerSetupConnect} unpacks the event into {@link #onConnect}.
+ */
+public class ConnectHandler {
+    // Part of the reason the whitelist gives for a rejection; other rejections (bans, full server) are ignored
+    private static final String WHITELIST_REASON = "not whitelisted";
+
+    private final PlayerNameDirectory nameDirectory;
+    private final RejectionCapture rejectionCapture;
+
+    public ConnectHandler(PlayerNameDirectory nameDirectory, RejectionCapture rejectionCapture) {
+        this.nameDirectory = nameDirectory;
+        this.rejectionCapture = rejectionCapture;
+    }
+
+    /**
+     * @param cancelled whether an earlier listener (the whitelist) rejected the connect
+     * @param reason    the rejection reason, may be null
+     * @param host      the referral host, null if unknown
+     * @return true if the connect was stored as pending request
+     */
+    public boolean onConnect(UUID uuid, String username, boolean cancelled, String reason, String host) {
+        if (!cancelled) {
+            nameDirectory.record(uuid, username);
+            return false;
+        }
+
+        // Only capture if the connection was rejected due to whitelist
+        if (reason == null || !reason.contains(WHITELIST_REASON)) {
+            return false;
+        }
+        // Over-limit attempts are only counted - no storage, no log line, no name
+        boolean captured = rejectionCapture.capture(uuid, username, host != null ? host : "unknown");
+        if (captured) {
+            nameDirectory.record(uuid, username);
+        }
+        return captured;
+    }
+}
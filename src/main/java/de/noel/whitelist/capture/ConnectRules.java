@@ -0,0 +1,346 @@
+package de.noel.whitelist.capture;
+
+import de.noel.whitelist.data.Subnet;
+import de.noel.whitelist.data.SubnetSet;
+import de.noel.whitelist.data.UuidSet;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Auto-approve and auto-deny rules for connects the whitelist rejected, read from a JSON file:
+ * <pre>
+ * {"rules": [
+ *   {"name": "partner", "action": "approve", "subnets": ["203.0.113.0/24", "2001:db8:42::/48"]},
+ *   {"name": "bots", "action": "deny", "usernamePatterns": ["^bot_?\\d+$"], "usernamePrefixes": ["spam"]},
+ *   {"name": "staff", "action": "approve", "uuids": ["0f3c...", "..."]}
+ * ]}
+ * </pre>
+ * Rules are checked in file order and the first match decides. A rule matches when every kind of
+ * condition it lists matches one of its entries; usernames are compared case-insensitively.
+ * <p>
+ * Each rule is compiled once per load: subnets into a {@link SubnetSet}, patterns into one alternation,
+ * prefixes into a hash set probed once per distinct prefix length, UUIDs into a {@link UuidSet}. The connect
+ * handler reads the compiled rules without locking. A background thread watches the file's modification
+ * time and size and swaps in the new rules after a change; a file that fails to parse keeps the old ones.
+ */
+public class ConnectRules {
+
+    public enum Action {
+        APPROVE, DENY
+    }
+
+    public static final class Rule {
+        private final String name;
+        private final Action action;
+        // Conditions the rule doesn't list are null
+        private final SubnetSet subnets;
+        private final UuidSet uuids;
+        private final Set<String> prefixes;  // lower case
+        private final int[] prefixLengths;   // distinct, ascending
+        private final Pattern pattern;
+
+        private Rule(String name, Action action, SubnetSet subnets, UuidSet uuids, Set<String> prefixes, Pattern pattern) {
+            this.name = name;
+            this.action = action;
+            this.subnets = subnets;
+            this.uuids = uuids;
+            this.prefixes = prefixes;
+            this.prefixLengths = prefixes == null ? null : prefixes.stream().mapToInt(String::length).distinct().sorted().toArray();
+            this.pattern = pattern;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        // Cheapest checks first
+        private boolean matches(UUID uuid, String username, String lowerName, Subnet address) {
+            if (uuids != null && (uuid == null || !uuids.contains(uuid))) {
+                return false;
+            }
+            if (subnets != null && (address == null || !subnets.matches(address))) {
+                return false;
+            }
+            if (prefixes != null && (lowerName == null || !matchesPrefix(lowerName))) {
+                return false;
+            }
+            return pattern == null || (username != null && pattern.matcher(username).find());
+        }
+
+        private boolean matchesPrefix(String lowerName) {
+            for (int length : prefixLengths) {
+                if (length > lowerName.length()) {
+                    return false;
+                }
+                if (prefixes.contains(lowerName.substring(0, length))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param usesSubnets   whether any rule lists subnets, i.e. whether the IP has to be parsed
+     * @param usesPrefixes  whether any rule lists username prefixes, i.e. whether the name has to be lower-cased
+     */
+    private record Compiled(Rule[] rules, boolean usesSubnets, boolean usesPrefixes) {
+        static final Compiled EMPTY = new Compiled(new Rule[0], false, false);
+    }
+
+    private final Path path;
+    private final Consumer<String> log;
+    private final ScheduledExecutorService executor; // null when hot reload is disabled
+    private volatile Compiled compiled = Compiled.EMPTY;
+
+    // File state of the last load, guarded by this
+    private FileTime loadedModified;
+    private long loadedSize = -1;
+
+    /**
+     * @param reloadIntervalMs how often to check the file for changes, 0 to only read it once
+     * @param log              receives a line for every load and every skipped rule
+     */
+    public ConnectRules(Path path, long reloadIntervalMs, Consumer<String> log) {
+        this.path = path;
+        this.log = log;
+        reloadIfChanged();
+
+        if (reloadIntervalMs > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Whitelist-Rules");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::reloadIfChanged, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the first rule matching the connect, or null if none does
+     */
+    public Rule match(UUID uuid, String username, String ip) {
+        Compiled current = compiled;
+        Rule[] rules = current.rules();
+        if (rules.length == 0) {
+            return null;
+        }
+
+        Subnet address = null;
+        if (current.usesSubnets()) {
+            byte[] bytes = Subnet.parseAddress(ip);
+            address = bytes != null ? Subnet.of(bytes, bytes.length * 8) : null;
+        }
+        String lowerName = current.usesPrefixes() && username != null ? username.toLowerCase(Locale.ROOT) : null;
+        for (Rule rule : rules) {
+            if (rule.matches(uuid, username, lowerName, address)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return compiled.rules().length;
+    }
+
+    /**
+     * Reads the file again if its modification time or size changed since the last load.
+     * A missing file means no rules.
+     */
+    public synchronized void reloadIfChanged() {
+        try {
+            FileTime modified;
+            long size;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                modified = attributes.lastModifiedTime();
+                size = attributes.size();
+            } catch (NoSuchFileException e) {
+                modified = null;
+                size = -1;
+            }
+            if (Objects.equals(modified, loadedModified) && size == loadedSize) {
+                return;
+            }
+            // Taken before reading, so a write during the read triggers another load
+            loadedModified = modified;
+            loadedSize = size;
+
+            if (modified == null) {
+                if (compiled.rules().length > 0) {
+                    log.accept(path + " was removed, connect rules cleared");
+                }
+                compiled = Compiled.EMPTY;
+                return;
+            }
+            compiled = read();
+            log.accept("Loaded " + compiled.rules().length + " connect rules from " + path);
+        } catch (Exception e) {
+            log.accept("Failed to load " + path + ", keeping the previous " + compiled.rules().length + " rules: " + e.getMessage());
+        }
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private Compiled read() throws IOException {
+        JsonObject root;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            root = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        JsonArray array = root.has("rules") ? root.getAsJsonArray("rules") : new JsonArray();
+
+        List<Rule> rules = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            JsonElement element = array.get(i);
+            if (!element.isJsonObject()) {
+                log.accept("Skipping rule " + (i + 1) + " in " + path + ": not an object");
+                continue;
+            }
+            // Anything wrong inside one rule only costs that rule, never the whole reload
+            try {
+                rules.add(compile(element.getAsJsonObject(), "#" + (i + 1)));
+            } catch (RuntimeException e) {
+                log.accept("Skipping rule " + (i + 1) + " in " + path + ": " + e.getMessage());
+            }
+        }
+
+        boolean usesSubnets = rules.stream().anyMatch(rule -> rule.subnets != null);
+        boolean usesPrefixes = rules.stream().anyMatch(rule -> rule.prefixes != null);
+        return new Compiled(rules.toArray(new Rule[0]), usesSubnets, usesPrefixes);
+    }
+
+    /**
+     * @throws IllegalArgumentException for an unknown action, a value of the wrong type, an invalid entry or a rule without conditions
+     */
+    private static Rule compile(JsonObject object, String defaultName) {
+        String name = string(object, "name", defaultName);
+        String actionText = string(object, "action", "");
+        Action action = switch (actionText.toLowerCase(Locale.ROOT)) {
+            case "approve" -> Action.APPROVE;
+            case "deny" -> Action.DENY;
+            default -> throw new IllegalArgumentException("action must be \"approve\" or \"deny\", not \"" + actionText + "\"");
+        };
+
+        List<String> subnetTexts = strings(object, "subnets");
+        List<String> uuidTexts = strings(object, "uuids");
+        List<String> prefixTexts = strings(object, "usernamePrefixes");
+        List<String> patternTexts = strings(object, "usernamePatterns");
+        if (subnetTexts == null && uuidTexts == null && prefixTexts == null && patternTexts == null) {
+            throw new IllegalArgumentException("no subnets, uuids, usernamePrefixes or usernamePatterns");
+        }
+
+        SubnetSet subnets = null;
+        if (subnetTexts != null) {
+            List<Subnet> parsed = new ArrayList<>(subnetTexts.size());
+            for (String text : subnetTexts) {
+                parsed.add(Subnet.parse(text));
+            }
+            subnets = SubnetSet.of(parsed);
+        }
+
+        UuidSet uuids = null;
+        if (uuidTexts != null) {
+            uuids = new UuidSet(uuidTexts.size());
+            for (String text : uuidTexts) {
+                uuids.add(UUID.fromString(text.trim()));
+            }
+        }
+
+        Set<String> prefixes = null;
+        if (prefixTexts != null) {
+            prefixes = new HashSet<>();
+            for (String text : prefixTexts) {
+                prefixes.add(text.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        Pattern pattern = null;
+        if (patternTexts != null) {
+            // One pattern for all alternatives - a single scan of the name
+            StringBuilder alternation = new StringBuilder();
+            for (String text : patternTexts) {
+                try {
+                    Pattern.compile(text);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("invalid pattern \"" + text + "\": " + e.getDescription());
+                }
+                if (!alternation.isEmpty()) {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(text).append(')');
+            }
+            pattern = Pattern.compile(alternation.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+        return new Rule(name, action, subnets, uuids, prefixes, pattern);
+    }
+
+    /**
+     * @return the value of a string (or number) property, or {@code defaultValue} if the key is missing
+     */
+    private static String string(JsonObject object, String key, String defaultValue) {
+        JsonElement element = object.get(key);
+        if (element == null || element.isJsonNull()) {
+            return defaultValue;
+        }
+        if (!element.isJsonPrimitive()) {
+            throw new IllegalArgumentException(key + " must be a string");
+        }
+        return element.getAsString();
+    }
+
+    /**
+     * @return the strings of an array, or null if the key is missing or the array is empty
+     */
+    private static List<String> strings(JsonObject object, String key) {
+        JsonElement element = object.get(key);
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (!element.isJsonArray()) {
+            throw new IllegalArgumentException(key + " must be an array of strings");
+        }
+        List<String> values = new ArrayList<>();
+        for (JsonElement value : element.getAsJsonArray()) {
+            if (!value.isJsonPrimitive()) {
+                throw new IllegalArgumentException(key + " must only contain strings, not " + value);
+            }
+            values.add(value.getAsString());
+        }
+        return values.isEmpty() ? null : values;
+    }
+}
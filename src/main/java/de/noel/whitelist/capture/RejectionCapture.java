@@ -0,0 +1,129 @@
+package de.noel.whitelist.capture;
+
+import de.noel.whitelist.audit.AuditLog;
+import de.noel.whitelist.data.ConnectionAttempt;
+import de.noel.whitelist.data.ConnectionAttemptManager;
+import de.noel.whitelist.metrics.Counter;
+import de.noel.whitelist.metrics.Histogram;
+import de.noel.whitelist.metrics.Metrics;
+
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Handles a connection that the whitelist rejected: applies the first matching connect rule, drops it if
+ * its subnet is blocked, rate limits it, records it as pending request and hands it to the rejection log
+ * and the audit log.
+ * Kept free of server types so it can be driven without a running server.
+ */
+public class RejectionCapture {
+    private final ConnectionAttemptManager attemptManager;
+    private final ConnectRules rules; // null when connect rules are disabled
+    private final BiConsumer<UUID, String> approver;
+    private final RejectionRateLimiter rateLimiter; // null when rate limiting is disabled
+    private final SubnetBlocklist blocklist;
+    private final RejectionLogger logger;
+    private final AuditLog auditLog; // null when the audit log is disabled
+    private final Counter captured;
+    private final Counter rateLimited;
+    private final Counter blocked;
+    private final Counter approved;
+    private final Counter denied;
+    private final Histogram captureTimer;
+
+    /**
+     * @param approver whitelists a player matched by an approve rule, given the UUID and the actor for the
+     *                 audit log ({@code "rule:<name>"}). Called on the connecting thread, so it should only queue the change.
+     */
+    public RejectionCapture(ConnectionAttemptManager attemptManager, ConnectRules rules, BiConsumer<UUID, String> approver,
+                            RejectionRateLimiter rateLimiter, SubnetBlocklist blocklist,
+                            RejectionLogger logger, AuditLog auditLog, Metrics metrics) {
+        this.attemptManager = attemptManager;
+        this.rules = rules;
+        this.approver = approver;
+        this.rateLimiter = rateLimiter;
+        this.blocklist = blocklist;
+        this.logger = logger;
+        this.auditLog = auditLog;
+        this.captured = metrics.counter("whitelist_rejections_captured_total", "Whitelist rejections stored as pending request");
+        this.rateLimited = metrics.counter("whitelist_rejections_rate_limited_total", "Whitelist rejections dropped by the rate limiter");
+        this.blocked = metrics.counter("whitelist_rejections_blocked_total", "Whitelist rejections dropped because their subnet is blocked");
+        this.approved = metrics.counter("whitelist_rules_approved_total", "Rejected players whitelisted by an approve rule");
+        this.denied = metrics.counter("whitelist_rules_denied_total", "Whitelist rejections dropped by a deny rule");
+        this.captureTimer = metrics.histogram("whitelist_rejection_capture_seconds", "Duration of handling one whitelist rejection");
+        metrics.counter("whitelist_rejection_log_overflow_total", "Rejection log records lost to a full queue", logger::getQueueOverflowCount);
+        if (rateLimiter != null) {
+            metrics.counter("whitelist_rate_limit_dropped_by_host_total", "Rejections dropped by the per-host limit", rateLimiter::getDroppedByHostCount);
+            metrics.counter("whitelist_rate_limit_dropped_by_uuid_total", "Rejections dropped by the per-UUID limit", rateLimiter::getDroppedByUuidCount);
+        }
+    }
+
+    /**
+     * @return true if the attempt was stored, false if a rule handled it or the blocklist or the rate limiter dropped it
+     */
+    public boolean capture(UUID uuid, String username, String ip) {
+        long start = System.nanoTime();
+        ConnectRules.Rule rule = rules != null ? rules.match(uuid, username, ip) : null;
+        if (rule != null) {
+            if (rule.getAction() == ConnectRules.Action.APPROVE) {
+                // The whitelist change is audited as ADDED with the rule as actor
+                approver.accept(uuid, "rule:" + rule.getName());
+                approved.increment();
+            } else {
+                // Dropped silently and only counted - a bot reconnecting in a loop must not fill the audit log
+                denied.increment();
+            }
+            captureTimer.recordSince(start);
+            return false;
+        }
+
+        if (blocklist.isBlocked(ip)) {
+            // Blocked subnets are bot farms - counted only, like rate-limited connects
+            blocked.increment();
+            captureTimer.recordSince(start);
+            return false;
+        }
+
+        if (rateLimiter != null && !rateLimiter.tryAcquire(ip, uuid)) {
+            // Floods are only counted - an audit entry per attempt would let them fill the audit queue and files
+            logger.recordRateLimited();
+            rateLimited.increment();
+            captureTimer.recordSince(start);
+            return false;
+        }
+
+        attemptManager.addAttempt(new ConnectionAttempt(uuid, username, ip));
+        logger.record(uuid, username, ip);
+        if (auditLog != null) {
+            auditLog.rejected(uuid, username, ip, AuditLog.Action.REJECTED);
+        }
+        captured.increment();
+        captureTimer.recordSince(start);
+        return true;
+    }
+
+    public void shutdown() {
+        if (rules != null) {
+            rules.shutdown();
+        }
+        logger.shutdown();
+    }
+
+    /**
+     * @return the connect rules, or null when they are disabled
+     */
+    public ConnectRules getRules() {
+        return rules;
+    }
+
+    public SubnetBlocklist getBlocklist() {
+        return blocklist;
+    }
+
+    /**
+     * @return the rate limiter, or null when rate limiting is disabled
+     */
+    public RejectionRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+}
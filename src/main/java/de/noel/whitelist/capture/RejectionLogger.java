@@ -0,0 +1,198 @@
+package de.noel.whitelist.capture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Logs captured rejections without blocking the connect handler.
+ * <p>
+ * {@link #record} only offers the rejection to a bounded queue; a background thread formats
+ * the output. In aggregate mode the thread writes one summary per interval
+ * ("N rejections from M distinct players, top offenders ...") and a configurable sample of
+ * individual lines. If the queue is full the rejection is counted but not logged.
+ */
+public class RejectionLogger {
+    private final Consumer<String> sink;
+    private final boolean aggregate;
+    private final double sampleRate;
+    private final long intervalNanos;
+    private final int topOffenders;
+    private final BlockingQueue<Rejection> queue;
+    private final Thread worker;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder queueOverflows = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private volatile boolean running = true;
+
+    // Only touched by the worker thread
+    private final Map<UUID, Offender> offenders = new HashMap<>();
+
+    /**
+     * @param aggregate    false logs every rejection on its own line (the classic behaviour, just async)
+     * @param sampleRate   share of individual lines written in aggregate mode, 0.0 - 1.0
+     * @param intervalSecs length of one aggregation interval
+     */
+    public RejectionLogger(Consumer<String> sink, boolean aggregate, double sampleRate,
+                           int intervalSecs, int topOffenders, int queueCapacity) {
+        this.sink = sink;
+        this.aggregate = aggregate;
+        this.sampleRate = aggregate ? Math.max(0.0, Math.min(1.0, sampleRate)) : 1.0;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(Math.max(1, intervalSecs));
+        this.topOffenders = Math.max(0, topOffenders);
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, queueCapacity));
+
+        this.worker = new Thread(this::run, "Whitelist-RejectionLog");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Hands a rejection to the log thread. Never blocks.
+     */
+    public void record(UUID uuid, String username, String ip) {
+        received.increment();
+        if (!queue.offer(new Rejection(uuid, username, ip))) {
+            queueOverflows.increment();
+        }
+    }
+
+    /**
+     * Counts an attempt dropped by the rate limiter, reported in the next summary.
+     */
+    public void recordRateLimited() {
+        rateLimited.increment();
+    }
+
+    /**
+     * Stops the log thread after it wrote everything queued plus a final summary.
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getQueueOverflowCount() {
+        return queueOverflows.sum();
+    }
+
+    private void run() {
+        long nextSummary = System.nanoTime() + intervalNanos;
+
+        while (running) {
+            try {
+                long wait = aggregate ? Math.max(0, nextSummary - System.nanoTime()) : intervalNanos;
+                Rejection rejection = queue.poll(wait, TimeUnit.NANOSECONDS);
+                if (rejection != null) {
+                    handle(rejection);
+                }
+            } catch (InterruptedException e) {
+                // shutdown() interrupts to wake us up; the loop condition decides
+            }
+
+            if (aggregate && System.nanoTime() >= nextSummary) {
+                writeSummary();
+                nextSummary = System.nanoTime() + intervalNanos;
+            }
+        }
+
+        Rejection rejection;
+        while ((rejection = queue.poll()) != null) {
+            handle(rejection);
+        }
+        if (aggregate) {
+            writeSummary();
+        }
+    }
+
+    private void handle(Rejection rejection) {
+        if (sampleRate >= 1.0 || (sampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+            sink.accept(String.format("Whitelist rejection logged: %s (%s) from %s",
+                rejection.username, rejection.uuid, rejection.ip));
+        }
+
+        if (aggregate) {
+            Offender offender = offenders.computeIfAbsent(rejection.uuid, k -> new Offender());
+            offender.username = rejection.username;
+            offender.ip = rejection.ip;
+            offender.count++;
+        }
+    }
+
+    private void writeSummary() {
+        // Totals are counted on the caller's side, so they stay exact even if the queue overflowed
+        long rejections = received.sumThenReset();
+        long limited = rateLimited.sumThenReset();
+        long overflows = queueOverflows.sumThenReset();
+        if (rejections == 0 && limited == 0) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder()
+            .append("Whitelist rejections in the last ").append(TimeUnit.NANOSECONDS.toSeconds(intervalNanos)).append("s: ")
+            .append(rejections).append(" from ").append(offenders.size()).append(" distinct players");
+        if (limited > 0) {
+            message.append(", ").append(limited).append(" rate-limited");
+        }
+        if (overflows > 0) {
+            message.append(", ").append(overflows).append(" not itemized (queue full)");
+        }
+
+        List<Map.Entry<UUID, Offender>> top = top(offenders, topOffenders);
+        if (!top.isEmpty()) {
+            message.append("; top offenders: ");
+            for (int i = 0; i < top.size(); i++) {
+                Offender offender = top.get(i).getValue();
+                if (i > 0) message.append(", ");
+                message.append(offender.username).append(" x").append(offender.count).append(" from ").append(offender.ip);
+            }
+        }
+
+        sink.accept(message.toString());
+        offenders.clear();
+    }
+
+    private static List<Map.Entry<UUID, Offender>> top(Map<UUID, Offender> offenders, int k) {
+        if (k == 0) {
+            return List.of();
+        }
+
+        // Min-heap of size k: O(n log k) instead of sorting everyone
+        PriorityQueue<Map.Entry<UUID, Offender>> heap =
+            new PriorityQueue<>((a, b) -> Long.compare(a.getValue().count, b.getValue().count));
+        for (Map.Entry<UUID, Offender> entry : offenders.entrySet()) {
+            heap.offer(entry);
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+
+        List<Map.Entry<UUID, Offender>> result = new ArrayList<>(heap);
+        result.sort((a, b) -> Long.compare(b.getValue().count, a.getValue().count));
+        return result;
+    }
+
+    private record Rejection(UUID uuid, String username, String ip) {
+    }
+
+    private static final class Offender {
+        String username;
+        String ip;
+        long count;
+    }
+}
@@ -0,0 +1,143 @@
+package de.noel.whitelist.capture;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket limiter for captured whitelist rejections, keyed by referral host and by UUID.
+ * <p>
+ * Buckets live in lock-striped maps: a key only ever contends with keys hashing to the same
+ * stripe. An attempt locks its host stripe, then its UUID stripe, and takes tokens only if both
+ * buckets have one, so a rejection by one bucket never drains the other. Each stripe is a small
+ * LRU map, so a flood of random UUIDs cannot grow memory beyond {@code maxTrackedKeys} per dimension.
+ */
+public class RejectionRateLimiter {
+    private static final int STRIPES = 64; // power of two
+
+    private final Stripe[] hostStripes = new Stripe[STRIPES];
+    private final Stripe[] uuidStripes = new Stripe[STRIPES];
+
+    private final double hostTokensPerNano;
+    private final double hostBurst;
+    private final double uuidTokensPerNano;
+    private final double uuidBurst;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder droppedByHost = new LongAdder();
+    private final LongAdder droppedByUuid = new LongAdder();
+
+    public RejectionRateLimiter(int hostPerMinute, int hostBurst, int uuidPerMinute, int uuidBurst, int maxTrackedKeys) {
+        this.hostTokensPerNano = hostPerMinute / 60_000_000_000.0;
+        this.hostBurst = Math.max(1, hostBurst);
+        this.uuidTokensPerNano = uuidPerMinute / 60_000_000_000.0;
+        this.uuidBurst = Math.max(1, uuidBurst);
+
+        int perStripe = Math.max(16, maxTrackedKeys / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            hostStripes[i] = new Stripe(perStripe);
+            uuidStripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Takes one token from the host bucket and one from the UUID bucket, or none if either is empty.
+     *
+     * @param host referral host, or null/"unknown" to only limit by UUID
+     * @return false if either bucket is empty - the attempt should be dropped
+     */
+    public boolean tryAcquire(String host, UUID uuid) {
+        boolean limitHost = host != null && !"unknown".equals(host);
+        Stripe hostStripe = limitHost ? stripe(hostStripes, host) : null;
+        Stripe uuidStripe = stripe(uuidStripes, uuid);
+
+        // Always host stripe before UUID stripe, so two attempts can't deadlock
+        synchronized (limitHost ? hostStripe : uuidStripe) {
+            synchronized (uuidStripe) {
+                long now = System.nanoTime();
+                Bucket hostBucket = limitHost ? hostStripe.refill(host, hostTokensPerNano, hostBurst, now) : null;
+                if (hostBucket != null && hostBucket.tokens < 1) {
+                    droppedByHost.increment();
+                    return false;
+                }
+                Bucket uuidBucket = uuidStripe.refill(uuid, uuidTokensPerNano, uuidBurst, now);
+                if (uuidBucket.tokens < 1) {
+                    droppedByUuid.increment();
+                    return false;
+                }
+
+                if (hostBucket != null) {
+                    hostBucket.tokens -= 1;
+                }
+                uuidBucket.tokens -= 1;
+            }
+        }
+
+        allowed.increment();
+        return true;
+    }
+
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    public long getDroppedByHostCount() {
+        return droppedByHost.sum();
+    }
+
+    public long getDroppedByUuidCount() {
+        return droppedByUuid.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedByHost.sum() + droppedByUuid.sum();
+    }
+
+    private static Stripe stripe(Stripe[] stripes, Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long lastRefill;
+
+        Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+    }
+
+    private static final class Stripe {
+        private final Map<Object, Bucket> buckets;
+
+        Stripe(int maxKeys) {
+            this.buckets = new LinkedHashMap<>(32, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Bucket> eldest) {
+                    return size() > maxKeys;
+                }
+            };
+        }
+
+        /**
+         * Caller holds this stripe's monitor.
+         *
+         * @return the key's bucket topped up to {@code now}, a full one if the key is new
+         */
+        Bucket refill(Object key, double tokensPerNano, double burst, long now) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(burst, now);
+                buckets.put(key, bucket);
+                return bucket;
+            }
+
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.lastRefill) * tokensPerNano);
+            bucket.lastRefill = now;
+            return bucket;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package de.noel.whitelist.capture;
+
+import de.noel.whitelist.data.AtomicFiles;
+import de.noel.whitelist.data.Subnet;
+import de.noel.whitelist.data.SubnetSet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Subnets whose rejected connects are dropped before they reach the pending list. Kept in a text
+ * file with one subnet per line ({@code 10.0.3.0/24}, {@code 2001:db8:0:1::/64}; {@code #} starts a comment).
+ * <p>
+ * The connect handler reads an immutable snapshot without locking: one parse of the IP and one set
+ * lookup per distinct prefix length. Changes copy the snapshot and rewrite the file.
+ */
+public class SubnetBlocklist {
+    private final Path path;
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot;
+
+    public SubnetBlocklist(Path path) {
+        this.path = path;
+        this.snapshot = Snapshot.of(read(path));
+    }
+
+    /**
+     * @return whether {@code ip} is an IP literal inside a blocked subnet of its address family
+     */
+    public boolean isBlocked(String ip) {
+        return snapshot.lookup().matches(ip);
+    }
+
+    public boolean contains(Subnet subnet) {
+        return snapshot.lookup().contains(subnet);
+    }
+
+    /**
+     * @return false if the subnet was already blocked
+     */
+    public boolean block(Subnet subnet) {
+        synchronized (writeLock) {
+            NavigableSet<Subnet> subnets = new TreeSet<>(snapshot.subnets());
+            if (!subnets.add(subnet)) {
+                return false;
+            }
+            publish(subnets);
+            return true;
+        }
+    }
+
+    /**
+     * @return false if the subnet was not blocked
+     */
+    public boolean unblock(Subnet subnet) {
+        synchronized (writeLock) {
+            NavigableSet<Subnet> subnets = new TreeSet<>(snapshot.subnets());
+            if (!subnets.remove(subnet)) {
+                return false;
+            }
+            publish(subnets);
+            return true;
+        }
+    }
+
+    /**
+     * @return the blocked subnets in address order
+     */
+    public List<Subnet> getSubnets() {
+        return new ArrayList<>(snapshot.subnets());
+    }
+
+    public int size() {
+        return snapshot.lookup().size();
+    }
+
+    /**
+     * Caller holds the write lock. The new set is used right away, even if the file can't be written.
+     */
+    private void publish(NavigableSet<Subnet> subnets) {
+        snapshot = Snapshot.of(subnets);
+
+        Path temp = AtomicFiles.tempFor(path);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Subnet subnet : subnets) {
+                    writer.write(subnet.toString());
+                    writer.newLine();
+                }
+            }
+            AtomicFiles.replace(temp, path);
+        } catch (IOException e) {
+            System.err.println("Failed to save " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static NavigableSet<Subnet> read(Path path) {
+        NavigableSet<Subnet> subnets = new TreeSet<>();
+        if (!Files.exists(path)) {
+            return subnets;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String text = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (text.isEmpty()) {
+                    continue;
+                }
+                try {
+                    subnets.add(Subnet.parse(text));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping invalid subnet in " + path + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load " + path + ": " + e.getMessage());
+        }
+        return subnets;
+    }
+
+    /**
+     * @param subnets the blocked subnets in address order, never modified once published
+     */
+    private record Snapshot(NavigableSet<Subnet> subnets, SubnetSet lookup) {
+
+        static Snapshot of(NavigableSet<Subnet> subnets) {
+            return new Snapshot(subnets, SubnetSet.of(subnets));
+        }
+    }
+}
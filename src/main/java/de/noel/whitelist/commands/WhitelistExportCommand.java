@@ -0,0 +1,53 @@
+package de.noel.whitelist.commands;
+
+import de.noel.whitelist.WhitelistPlugin;
+import de.noel.whitelist.data.WhitelistTransfer;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.arguments.system.RequiredArg;
+import com.hypixel.hytale.server.core.command.system.arguments.types.ArgTypes;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * /wl export &lt;file&gt; - writes all whitelisted UUIDs (and known names) to a CSV or JSON-lines file.
+ */
+public class WhitelistExportCommand extends CommandBase {
+
+    private final RequiredArg<String> fileArg;
+
+    public WhitelistExportCommand() {
+        super("export", "Exports the whitelist to a .csv, .txt or .jsonl file");
+        requirePermission("whitelist.manage");
+        fileArg = withRequiredArg("file", "File in the server directory", ArgTypes.STRING);
+    }
+
+    @Override
+    protected void executeSync(@Nonnull CommandContext context) {
+        WhitelistPlugin plugin = WhitelistPlugin.get();
+        WhitelistTransfer transfer = plugin.getWhitelistTransfer();
+
+        Path path;
+        try {
+            path = transfer.resolve(context.get(fileArg));
+        } catch (IllegalArgumentException | IOException e) {
+            context.sendMessage(Message.raw("Export failed: " + e.getMessage()));
+            return;
+        }
+
+        boolean started = transfer.start("Export", () -> {
+            try {
+                int count = transfer.exportFile(path, plugin.getWhitelist(), plugin.getNameDirectory());
+                context.sendMessage(Message.raw("Exported " + count + " entries to " + path.getFileName()));
+            } catch (IOException e) {
+                context.sendMessage(Message.raw("Export failed: " + e.getMessage()));
+            }
+        });
+
+        if (!started) {
+            context.sendMessage(Message.raw("Another import or export is still running"));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package de.noel.whitelist.commands;
+
+import de.noel.whitelist.WhitelistPlugin;
+import de.noel.whitelist.audit.AuditLog;
+import de.noel.whitelist.data.MutationExecutor;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.arguments.system.RequiredArg;
+import com.hypixel.hytale.server.core.command.system.arguments.types.ArgTypes;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /wl history &lt;player|uuid|ip&gt; - summarizes the audit log entries of a player or an IP address.
+ */
+public class WhitelistHistoryCommand extends CommandBase {
+
+    // Newest entries listed after the summary
+    private static final int RECENT_ENTRIES = 10;
+    private static final int RELATED_SHOWN = 5;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final RequiredArg<String> queryArg;
+
+    public WhitelistHistoryCommand() {
+        super("history", "Shows rejected connects and whitelist changes of a player or IP");
+        requirePermission("whitelist.manage");
+        queryArg = withRequiredArg("query", "Username, UUID or IP address", ArgTypes.STRING);
+    }
+
+    @Override
+    protected void executeSync(@Nonnull CommandContext context) {
+        AuditLog auditLog = WhitelistPlugin.get().getAuditLog();
+        if (auditLog == null) {
+            context.sendMessage(Message.raw("The audit log is disabled (audit.enabled in whitelist_config.json)"));
+            return;
+        }
+
+        long start = System.nanoTime();
+        // The files are read on the audit log's query thread, the reply is sent from there
+        auditLog.history(context.get(queryArg), RECENT_ENTRIES).whenComplete((history, error) -> {
+            if (error != null) {
+                context.sendMessage(Message.raw("History failed: " + MutationExecutor.causeOf(error).getMessage()));
+                return;
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            String searched = "searched " + history.getFiles() + " files (" + history.getBytes() / 1024 + " KB) in " + millis + " ms";
+            if (history.getMatches() == 0) {
+                context.sendMessage(Message.raw("No audit entries for " + history.getQuery() + ", " + searched));
+                return;
+            }
+
+            context.sendMessage(Message.raw("History of " + history.getQuery() + ": " + history.getMatches() + " entries ("
+                + history.getCount(AuditLog.Action.REJECTED) + " rejected, "
+                + history.getCount(AuditLog.Action.RATE_LIMITED) + " rate-limited, "
+                + history.getCount(AuditLog.Action.BLOCKED) + " blocked, "
+                + history.getCount(AuditLog.Action.DENIED) + " denied, "
+                + history.getCount(AuditLog.Action.ADDED) + " added, "
+                + history.getCount(AuditLog.Action.REMOVED) + " removed) between "
+                + TIME_FORMAT.format(Instant.ofEpochMilli(history.getFirst())) + " and "
+                + TIME_FORMAT.format(Instant.ofEpochMilli(history.getLast()))));
+
+            List<Map.Entry<String, Long>> related = history.getRelated();
+            if (!related.isEmpty()) {
+                StringBuilder line = new StringBuilder(history.isByIp() ? "  Players: " : "  From: ");
+                for (int i = 0; i < Math.min(RELATED_SHOWN, related.size()); i++) {
+                    if (i > 0) line.append(", ");
+                    line.append(related.get(i).getKey()).append(" x").append(related.get(i).getValue());
+                }
+                if (related.size() > RELATED_SHOWN) {
+                    line.append(" and ").append(related.size() - RELATED_SHOWN).append(" more");
+                }
+                context.sendMessage(Message.raw(line.toString()));
+            }
+
+            for (AuditLog.Entry entry : history.getRecent()) {
+                context.sendMessage(Message.raw("  " + describe(entry)));
+            }
+            context.sendMessage(Message.raw("(" + searched + ")"));
+        });
+    }
+
+    private static String describe(AuditLog.Entry entry) {
+        StringBuilder line = new StringBuilder()
+            .append(TIME_FORMAT.format(Instant.ofEpochMilli(entry.timestamp()))).append(' ')
+            .append(entry.action()).append(' ')
+            .append(entry.username() != null ? entry.username() : "?");
+        if (entry.uuid() != null) {
+            line.append(" (").append(entry.uuid().toString(), 0, 8).append("...)");
+        }
+        if (entry.ip() != null) {
+            line.append(" from ").append(entry.ip());
+        }
+        if (entry.actor() != null) {
+            line.append(" by ").append(entry.actor());
+        }
+        return line.toString();
+    }
+}
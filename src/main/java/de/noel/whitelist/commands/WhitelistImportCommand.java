@@ -0,0 +1,67 @@
+package de.noel.whitelist.commands;
+
+import de.noel.whitelist.WhitelistPlugin;
+import de.noel.whitelist.data.WhitelistTransfer;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.arguments.system.RequiredArg;
+import com.hypixel.hytale.server.core.command.system.arguments.types.ArgTypes;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * /wl import &lt;file&gt; - adds every UUID from a CSV or JSON-lines file in the server directory.
+ */
+public class WhitelistImportCommand extends CommandBase {
+
+    private final RequiredArg<String> fileArg;
+
+    public WhitelistImportCommand() {
+        super("import", "Imports whitelist UUIDs from a .csv, .txt or .jsonl file");
+        requirePermission("whitelist.manage");
+        fileArg = withRequiredArg("file", "File in the server directory", ArgTypes.STRING);
+    }
+
+    @Override
+    protected void executeSync(@Nonnull CommandContext context) {
+        WhitelistPlugin plugin = WhitelistPlugin.get();
+        WhitelistTransfer transfer = plugin.getWhitelistTransfer();
+
+        Path path;
+        try {
+            path = transfer.resolve(context.get(fileArg));
+        } catch (IllegalArgumentException | IOException e) {
+            context.sendMessage(Message.raw("Import failed: " + e.getMessage()));
+            return;
+        }
+
+        // Large files take a while - read and apply them off the command thread
+        boolean started = transfer.start("Import", () -> {
+            long start = System.currentTimeMillis();
+            try {
+                WhitelistTransfer.ImportResult result = transfer.importFile(path, plugin.getWhitelist(),
+                    context.sender().getDisplayName() + " (import " + path.getFileName() + ")",
+                    progress -> context.sendMessage(Message.raw(progress)));
+
+                context.sendMessage(Message.raw("Import of " + path.getFileName() + " done in "
+                    + (System.currentTimeMillis() - start) + " ms: " + result.getAdded() + " added, "
+                    + result.getAlreadyWhitelisted() + " already whitelisted, "
+                    + result.getDuplicatesInFile() + " duplicates in file, "
+                    + result.getInvalid() + " invalid lines (" + result.getLines() + " lines read)"));
+                if (result.getInvalid() > 0) {
+                    context.sendMessage(Message.raw("First invalid lines: " + result.getInvalidLines()));
+                }
+            } catch (IOException e) {
+                context.sendMessage(Message.raw("Import failed: " + e.getMessage()));
+            }
+        });
+
+        if (started) {
+            context.sendMessage(Message.raw("Importing " + path.getFileName() + "..."));
+        } else {
+            context.sendMessage(Message.raw("Another import or export is still running"));
+        }
+    }
+}
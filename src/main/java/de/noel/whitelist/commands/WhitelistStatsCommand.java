@@ -0,0 +1,33 @@
+package de.noel.whitelist.commands;
+
+import de.noel.whitelist.WhitelistPlugin;
+import de.noel.whitelist.metrics.Metric;
+import de.noel.whitelist.metrics.Metrics;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import javax.annotation.Nonnull;
+
+/**
+ * /wl stats - prints every counter, gauge and latency histogram of the plugin.
+ */
+public class WhitelistStatsCommand extends CommandBase {
+
+    public WhitelistStatsCommand() {
+        super("stats", "Shows whitelist plugin metrics");
+        requirePermission("whitelist.manage");
+    }
+
+    @Override
+    protected void executeSync(@Nonnull CommandContext context) {
+        Metrics metrics = WhitelistPlugin.get().getMetrics();
+        double uptime = metrics.getUptimeSeconds();
+
+        context.sendMessage(Message.raw("Whitelist stats (uptime " + (long) uptime + "s):"));
+        for (Metric metric : metrics.getAll()) {
+            // The prefix is the same everywhere, leave it out in chat
+            String name = metric.getName().replaceFirst("^whitelist_", "");
+            context.sendMessage(Message.raw("  " + name + ": " + metric.describe(uptime)));
+        }
+    }
+}
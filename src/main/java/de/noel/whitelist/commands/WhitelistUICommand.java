@@ -16,6 +16,10 @@ public class WhitelistUICommand extends AbstractPlayerCommand {
     public WhitelistUICommand() {
         super("wl", "Opens the whitelist management UI");
         requirePermission("whitelist.manage");  // Nur OPs oder Spieler mit dieser Permission
+        addSubCommand(new WhitelistImportCommand());
+        addSubCommand(new WhitelistExportCommand());
+        addSubCommand(new WhitelistStatsCommand());
+        addSubCommand(new WhitelistHistoryCommand());
     }
 
     @Override
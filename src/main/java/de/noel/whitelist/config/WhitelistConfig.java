@@ -0,0 +1,363 @@
+package de.noel.whitelist.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Plugin settings read from {@code whitelist_config.json} in the server directory.
+ * Every key is optional - missing keys (or a missing file) fall back to the defaults below.
+ * Features that change what happens to a rejected connect are off by default, so an upgrade behaves like before.
+ */
+public class WhitelistConfig {
+    private static final Path FILE_PATH = Paths.get("whitelist_config.json");
+
+    // "pending" section
+    private String pendingStorage = "json";             // "json", "journal" or "binary"
+    private String pendingPersistence = "write-behind"; // "write-behind" or "sync"
+    private long pendingFlushIntervalMs = 1000;
+    private int pendingJournalCompactThreshold = 1000;
+    private int pendingMaxEntries = 50;
+    private long pendingTtlMinutes = 0;                 // 0 = keep until evicted by maxEntries
+    private boolean pendingLoadInBackground = true;
+    private long pendingLoadWaitMs = 250;
+
+    // "rateLimit" section
+    private boolean rateLimitEnabled = false;
+    private int rateLimitPerHostPerMinute = 60;
+    private int rateLimitPerHostBurst = 20;
+    private int rateLimitPerUuidPerMinute = 10;
+    private int rateLimitPerUuidBurst = 5;
+    private int rateLimitMaxTrackedKeys = 10_000;
+
+    // "rules" section
+    private boolean rulesEnabled = false;
+    private String rulesFile = "whitelist_rules.json";
+    private long rulesReloadIntervalMs = 2000;         // 0 = only read at startup
+
+    // "logging" section
+    private String rejectionLogMode = "each";           // "each" or "aggregate"
+    private double rejectionLogSampleRate = 0.1;
+    private int rejectionLogIntervalSeconds = 60;
+    private int rejectionLogTopOffenders = 5;
+    private int rejectionLogQueueCapacity = 4096;
+
+    // "names" section
+    private int namesMaxEntries = 100_000;
+    private long namesFlushIntervalMs = 5000;
+
+    // "ui" section
+    private int uiPageSize = 25;
+    private long uiLiveUpdateMs = 500;                  // 0 = only refresh on button press
+
+    // "metrics" section
+    private boolean metricsPrometheusEnabled = false;
+    private int metricsPrometheusPort = 9464;
+
+    // "expiry" section
+    private long expiryCheckIntervalMs = 1000;          // resolution of time-limited entries
+
+    // "sync" section
+    private boolean syncEnabled = false;
+    private String syncDirectory = "";                  // shared by all servers, e.g. a network mount
+    private String syncServerId = "";                   // "" = derived from the server directory
+    private long syncPollIntervalMs = 2000;             // fallback when file events don't arrive (network file systems)
+    private int syncCompactMb = 64;                     // 0 = the shared log is never compacted
+    private int syncServerTimeoutDays = 7;              // servers not seen for longer don't hold back compaction
+
+    // "audit" section
+    private boolean auditEnabled = false;
+    private String auditDirectory = "whitelist_audit";
+    private int auditPartitionHours = 24;               // one file per day, more when a file reaches maxFileMb
+    private int auditMaxFileMb = 64;
+    private int auditMaxAgeDays = 90;
+    private int auditMaxTotalMb = 1024;
+    private int auditQueueCapacity = 8192;
+
+    public static WhitelistConfig load() {
+        return load(FILE_PATH);
+    }
+
+    public static WhitelistConfig load(Path path) {
+        WhitelistConfig config = new WhitelistConfig();
+        if (!Files.exists(path)) {
+            return config;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            JsonObject root = JsonParser.parseReader(reader).getAsJsonObject();
+
+            JsonObject pending = section(root, "pending");
+            config.pendingStorage = getString(pending, "storage", config.pendingStorage);
+            config.pendingPersistence = getString(pending, "persistence", config.pendingPersistence);
+            config.pendingFlushIntervalMs = Math.max(50, getLong(pending, "flushIntervalMs", config.pendingFlushIntervalMs));
+            config.pendingMaxEntries = Math.max(1, getInt(pending, "maxEntries", config.pendingMaxEntries));
+            config.pendingTtlMinutes = Math.max(0, getLong(pending, "ttlMinutes", config.pendingTtlMinutes));
+            config.pendingJournalCompactThreshold = Math.max(1, getInt(pending, "journalCompactThreshold", config.pendingJournalCompactThreshold));
+            config.pendingLoadInBackground = getBoolean(pending, "loadInBackground", config.pendingLoadInBackground);
+            config.pendingLoadWaitMs = Math.max(0, getLong(pending, "loadWaitMs", config.pendingLoadWaitMs));
+
+            JsonObject rateLimit = section(root, "rateLimit");
+            config.rateLimitEnabled = getBoolean(rateLimit, "enabled", config.rateLimitEnabled);
+            config.rateLimitPerHostPerMinute = Math.max(0, getInt(rateLimit, "perHostPerMinute", config.rateLimitPerHostPerMinute));
+            config.rateLimitPerHostBurst = Math.max(1, getInt(rateLimit, "perHostBurst", config.rateLimitPerHostBurst));
+            config.rateLimitPerUuidPerMinute = Math.max(0, getInt(rateLimit, "perUuidPerMinute", config.rateLimitPerUuidPerMinute));
+            config.rateLimitPerUuidBurst = Math.max(1, getInt(rateLimit, "perUuidBurst", config.rateLimitPerUuidBurst));
+            config.rateLimitMaxTrackedKeys = Math.max(64, getInt(rateLimit, "maxTrackedKeys", config.rateLimitMaxTrackedKeys));
+
+            JsonObject rules = section(root, "rules");
+            config.rulesEnabled = getBoolean(rules, "enabled", config.rulesEnabled);
+            config.rulesFile = getString(rules, "file", config.rulesFile);
+            config.rulesReloadIntervalMs = Math.max(0, getLong(rules, "reloadIntervalMs", config.rulesReloadIntervalMs));
+
+            JsonObject logging = section(root, "logging");
+            config.rejectionLogMode = getString(logging, "rejections", config.rejectionLogMode);
+            config.rejectionLogSampleRate = getDouble(logging, "sampleRate", config.rejectionLogSampleRate);
+            config.rejectionLogIntervalSeconds = Math.max(1, getInt(logging, "intervalSeconds", config.rejectionLogIntervalSeconds));
+            config.rejectionLogTopOffenders = Math.max(0, getInt(logging, "topOffenders", config.rejectionLogTopOffenders));
+            config.rejectionLogQueueCapacity = Math.max(16, getInt(logging, "queueCapacity", config.rejectionLogQueueCapacity));
+
+            JsonObject names = section(root, "names");
+            config.namesMaxEntries = Math.max(100, getInt(names, "maxEntries", config.namesMaxEntries));
+            config.namesFlushIntervalMs = Math.max(50, getLong(names, "flushIntervalMs", config.namesFlushIntervalMs));
+
+            JsonObject ui = section(root, "ui");
+            config.uiPageSize = Math.max(1, Math.min(200, getInt(ui, "pageSize", config.uiPageSize)));
+            config.uiLiveUpdateMs = Math.max(0, getLong(ui, "liveUpdateMs", config.uiLiveUpdateMs));
+
+            JsonObject metrics = section(root, "metrics");
+            config.metricsPrometheusEnabled = getBoolean(metrics, "prometheusEnabled", config.metricsPrometheusEnabled);
+            config.metricsPrometheusPort = Math.max(1, Math.min(65535, getInt(metrics, "prometheusPort", config.metricsPrometheusPort)));
+
+            JsonObject expiry = section(root, "expiry");
+            config.expiryCheckIntervalMs = Math.max(100, getLong(expiry, "checkIntervalMs", config.expiryCheckIntervalMs));
+
+            JsonObject sync = section(root, "sync");
+            config.syncEnabled = getBoolean(sync, "enabled", config.syncEnabled);
+            config.syncDirectory = getString(sync, "directory", config.syncDirectory);
+            config.syncServerId = getString(sync, "serverId", config.syncServerId);
+            config.syncPollIntervalMs = Math.max(100, getLong(sync, "pollIntervalMs", config.syncPollIntervalMs));
+            config.syncCompactMb = Math.max(0, getInt(sync, "compactMb", config.syncCompactMb));
+            config.syncServerTimeoutDays = Math.max(1, getInt(sync, "serverTimeoutDays", config.syncServerTimeoutDays));
+
+            JsonObject audit = section(root, "audit");
+            config.auditEnabled = getBoolean(audit, "enabled", config.auditEnabled);
+            config.auditDirectory = getString(audit, "directory", config.auditDirectory);
+            config.auditPartitionHours = Math.max(1, Math.min(24, getInt(audit, "partitionHours", config.auditPartitionHours)));
+            config.auditMaxFileMb = Math.max(1, getInt(audit, "maxFileMb", config.auditMaxFileMb));
+            config.auditMaxAgeDays = Math.max(1, getInt(audit, "maxAgeDays", config.auditMaxAgeDays));
+            config.auditMaxTotalMb = Math.max(1, getInt(audit, "maxTotalMb", config.auditMaxTotalMb));
+            config.auditQueueCapacity = Math.max(16, getInt(audit, "queueCapacity", config.auditQueueCapacity));
+        } catch (Exception e) {
+            System.err.println("Failed to load whitelist_config.json, using defaults: " + e.getMessage());
+        }
+        return config;
+    }
+
+    public boolean isPendingJournal() {
+        return "journal".equalsIgnoreCase(pendingStorage);
+    }
+
+    public boolean isPendingBinary() {
+        return "binary".equalsIgnoreCase(pendingStorage);
+    }
+
+    public boolean isPendingWriteBehind() {
+        return !"sync".equalsIgnoreCase(pendingPersistence);
+    }
+
+    public long getPendingFlushIntervalMs() {
+        return pendingFlushIntervalMs;
+    }
+
+    public int getPendingMaxEntries() {
+        return pendingMaxEntries;
+    }
+
+    public long getPendingTtlMillis() {
+        return pendingTtlMinutes * 60_000L;
+    }
+
+    public int getPendingJournalCompactThreshold() {
+        return pendingJournalCompactThreshold;
+    }
+
+    public boolean isPendingLoadInBackground() {
+        return pendingLoadInBackground;
+    }
+
+    public long getPendingLoadWaitMs() {
+        return pendingLoadWaitMs;
+    }
+
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
+    }
+
+    public int getRateLimitPerHostPerMinute() {
+        return rateLimitPerHostPerMinute;
+    }
+
+    public int getRateLimitPerHostBurst() {
+        return rateLimitPerHostBurst;
+    }
+
+    public int getRateLimitPerUuidPerMinute() {
+        return rateLimitPerUuidPerMinute;
+    }
+
+    public int getRateLimitPerUuidBurst() {
+        return rateLimitPerUuidBurst;
+    }
+
+    public int getRateLimitMaxTrackedKeys() {
+        return rateLimitMaxTrackedKeys;
+    }
+
+    public boolean isRulesEnabled() {
+        return rulesEnabled;
+    }
+
+    public String getRulesFile() {
+        return rulesFile;
+    }
+
+    public long getRulesReloadIntervalMs() {
+        return rulesReloadIntervalMs;
+    }
+
+    public boolean isRejectionLogAggregate() {
+        return !"each".equalsIgnoreCase(rejectionLogMode);
+    }
+
+    public double getRejectionLogSampleRate() {
+        return rejectionLogSampleRate;
+    }
+
+    public int getRejectionLogIntervalSeconds() {
+        return rejectionLogIntervalSeconds;
+    }
+
+    public int getRejectionLogTopOffenders() {
+        return rejectionLogTopOffenders;
+    }
+
+    public int getRejectionLogQueueCapacity() {
+        return rejectionLogQueueCapacity;
+    }
+
+    public int getNamesMaxEntries() {
+        return namesMaxEntries;
+    }
+
+    public long getNamesFlushIntervalMs() {
+        return namesFlushIntervalMs;
+    }
+
+    public int getUiPageSize() {
+        return uiPageSize;
+    }
+
+    public long getUiLiveUpdateMs() {
+        return uiLiveUpdateMs;
+    }
+
+    public boolean isPrometheusEnabled() {
+        return metricsPrometheusEnabled;
+    }
+
+    public int getPrometheusPort() {
+        return metricsPrometheusPort;
+    }
+
+    public long getExpiryCheckIntervalMs() {
+        return expiryCheckIntervalMs;
+    }
+
+    public boolean isSyncEnabled() {
+        return syncEnabled && !syncDirectory.isBlank();
+    }
+
+    public String getSyncDirectory() {
+        return syncDirectory;
+    }
+
+    public String getSyncServerId() {
+        return syncServerId;
+    }
+
+    public long getSyncPollIntervalMs() {
+        return syncPollIntervalMs;
+    }
+
+    public int getSyncCompactMb() {
+        return syncCompactMb;
+    }
+
+    public int getSyncServerTimeoutDays() {
+        return syncServerTimeoutDays;
+    }
+
+    public boolean isAuditEnabled() {
+        return auditEnabled && !auditDirectory.isBlank();
+    }
+
+    public String getAuditDirectory() {
+        return auditDirectory;
+    }
+
+    public int getAuditPartitionHours() {
+        return auditPartitionHours;
+    }
+
+    public int getAuditMaxFileMb() {
+        return auditMaxFileMb;
+    }
+
+    public int getAuditMaxAgeDays() {
+        return auditMaxAgeDays;
+    }
+
+    public int getAuditMaxTotalMb() {
+        return auditMaxTotalMb;
+    }
+
+    public int getAuditQueueCapacity() {
+        return auditQueueCapacity;
+    }
+
+    private static JsonObject section(JsonObject root, String name) {
+        JsonElement element = root.get(name);
+        return element != null && element.isJsonObject() ? element.getAsJsonObject() : new JsonObject();
+    }
+
+    private static String getString(JsonObject obj, String key, String fallback) {
+        JsonElement element = obj.get(key);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : fallback;
+    }
+
+    private static boolean getBoolean(JsonObject obj, String key, boolean fallback) {
+        JsonElement element = obj.get(key);
+        return element != null && element.isJsonPrimitive() ? element.getAsBoolean() : fallback;
+    }
+
+    private static int getInt(JsonObject obj, String key, int fallback) {
+        JsonElement element = obj.get(key);
+        return element != null && element.isJsonPrimitive() ? element.getAsInt() : fallback;
+    }
+
+    private static double getDouble(JsonObject obj, String key, double fallback) {
+        JsonElement element = obj.get(key);
+        return element != null && element.isJsonPrimitive() ? element.getAsDouble() : fallback;
+    }
+
+    private static long getLong(JsonObject obj, String key, long fallback) {
+        JsonElement element = obj.get(key);
+        return element != null && element.isJsonPrimitive() ? element.getAsLong() : fallback;
+    }
+}
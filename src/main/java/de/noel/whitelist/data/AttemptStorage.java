@@ -0,0 +1,39 @@
+package de.noel.whitelist.data;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Persistence backend for {@link ConnectionAttemptManager}. The manager keeps the live state in
+ * memory and reports every mutation here; the backend decides how (and when) it hits the disk.
+ */
+public interface AttemptStorage {
+
+    /**
+     * Replays the persisted state into {@code sink}. Called once, before any record method.
+     */
+    void load(Consumer<ConnectionAttempt> sink);
+
+    void recordAdd(ConnectionAttempt attempt);
+
+    void recordRemove(UUID uuid);
+
+    /**
+     * Removal of several attempts at once, written like a single change.
+     */
+    void recordRemoveAll(Collection<UUID> uuids);
+
+    void recordClear();
+
+    /**
+     * Writes everything that is still buffered and releases file handles.
+     */
+    void close();
+
+    /**
+     * @return the flusher writing (or, for a synchronous journal, compacting and repairing) in the background,
+     *         or null when every change is written synchronously
+     */
+    WriteBehindFlusher getFlusher();
+}
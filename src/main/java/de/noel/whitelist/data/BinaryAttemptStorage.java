@@ -0,0 +1,850 @@
+package de.noel.whitelist.data;
+
+import de.noel.whitelist.config.WhitelistConfig;
+import de.noel.whitelist.metrics.Histogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Stores the pending list as fixed-width binary records in a memory-mapped file, for long
+ * request histories (100k+ entries) that should load without parsing text.
+ * <p>
+ * A record holds the UUID as two longs, the timestamp, an interned username id and the address
+ * packed into 4 or 16 bytes. Usernames, and addresses that are not an IP literal in canonical form
+ * (e.g. host names), go to an append-only, also mapped string table, so a name that
+ * shows up in many records is stored and loaded once. Every change overwrites its record in place;
+ * the slot of a removed record is reused by the next add. The index from UUID to slot is a plain
+ * {@code int} hash table whose keys are read from the mapped records, so the heap holds no per-record objects
+ * beyond what the manager keeps.
+ * <p>
+ * Loading rewrites both files once free slots or unused strings make up most of them; so does an add
+ * while the string table has grown far past the records, e.g. under a flood of new names. Both rewritten
+ * files carry a new generation number and the record file is replaced first, so a string table left
+ * behind by a crash in between is recognised and put in place on the next start.
+ * <p>
+ * Record layout (48 bytes, big endian): {@code 0} UUID msb, {@code 8} UUID lsb, {@code 16} timestamp,
+ * {@code 24} username id (-1 = none), {@code 28} state, {@code 29} address kind, {@code 32} address.
+ */
+public class BinaryAttemptStorage implements AttemptStorage {
+    private static final int MAGIC = 0x574C5042; // "WLPB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 48;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int SCAN_CHUNK = 4096; // records copied out of the mapping at once on load
+
+    // Header fields
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_SLOTS = 12;
+    private static final int HEADER_GENERATION = 16;
+
+    // Record fields
+    private static final int UUID_MSB = 0;
+    private static final int UUID_LSB = 8;
+    private static final int TIMESTAMP = 16;
+    private static final int USERNAME = 24;
+    private static final int STATE = 28;
+    private static final int ADDRESS_KIND = 29;
+    private static final int ADDRESS = 32;
+
+    private static final byte FREE = 0;
+    private static final byte LIVE = 1;
+
+    // Address kinds; an IP literal is stored by its length
+    private static final byte ADDRESS_NONE = 0;
+    private static final byte ADDRESS_STRING = 1;
+    private static final byte ADDRESS_V4 = 4;
+    private static final byte ADDRESS_V6 = 16;
+
+    private static final byte[] NO_ADDRESS = new byte[16];
+
+    private final Path recordPath;
+    private final Path stringsPath;
+    private final Path basePath;
+    private final Histogram saveTimer;
+    private final Object lock = new Object();
+
+    // Null in "sync" mode - every record is then forced to disk immediately
+    private final WriteBehindFlusher flusher;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private StringTable strings;
+    private int capacity; // slots the current mapping holds
+    private int slots;    // slots in use or freed, mirrors the header
+
+    // Bucket -> record slot + 1 (0 = empty), linear probing; the keys live in the mapped records
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+    private int indexed;
+
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    // Set when a rewrite failed, so adds don't retry it until the next start
+    private boolean compactionFailed;
+
+    /**
+     * @param basePath  path without extension; the files are {@code <base>.bin} and {@code <base>.strings}
+     * @param saveTimer receives the duration of every force to disk
+     */
+    public BinaryAttemptStorage(Path basePath, WhitelistConfig config, Histogram saveTimer) {
+        this.basePath = basePath;
+        this.recordPath = basePath.resolveSibling(basePath.getFileName() + ".bin");
+        this.stringsPath = basePath.resolveSibling(basePath.getFileName() + ".strings");
+        this.saveTimer = saveTimer;
+        this.flusher = config.isPendingWriteBehind()
+            ? new WriteBehindFlusher("pending-binary", config.getPendingFlushIntervalMs(), this::force)
+            : null;
+    }
+
+    @Override
+    public void load(Consumer<ConnectionAttempt> sink) {
+        List<ConnectionAttempt> attempts = new ArrayList<>();
+        synchronized (lock) {
+            try {
+                finishRewrite();
+                if (!Files.exists(recordPath)) {
+                    // First start with the binary backend - take over what the other backends stored
+                    rewrite(importLegacy(), 0);
+                }
+
+                open();
+                if (scan(attempts)) {
+                    compact(attempts);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to load " + recordPath + ", starting empty: " + e.getMessage());
+                attempts.clear();
+                startEmpty();
+            }
+        }
+        attempts.forEach(sink);
+    }
+
+    @Override
+    public void recordAdd(ConnectionAttempt attempt) {
+        synchronized (lock) {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                long msb = attempt.getUuid().getMostSignificantBits();
+                long lsb = attempt.getUuid().getLeastSignificantBits();
+                int bucket = findBucket(msb, lsb);
+                int slot = bucket >= 0 ? index[bucket] - 1 : allocateSlot();
+                encode(buffer, offsetOf(slot), attempt, strings);
+                if (bucket < 0) {
+                    indexPut(msb, lsb, slot);
+                }
+                persist(slot);
+
+                // Every record refers to at most two strings
+                if (!compactionFailed && strings.size() > 4 * (indexed + INITIAL_CAPACITY)) {
+                    List<ConnectionAttempt> live = new ArrayList<>(indexed);
+                    scan(live);
+                    compact(live);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to write to " + recordPath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void recordRemove(UUID uuid) {
+        synchronized (lock) {
+            if (buffer == null) {
+                return;
+            }
+            int slot = indexRemove(uuid);
+            if (slot >= 0) {
+                release(slot);
+                persist(slot);
+            }
+        }
+    }
+
+    @Override
+    public void recordRemoveAll(Collection<UUID> uuids) {
+        synchronized (lock) {
+            if (buffer == null) {
+                return;
+            }
+            boolean removed = false;
+            for (UUID uuid : uuids) {
+                int slot = indexRemove(uuid);
+                if (slot >= 0) {
+                    release(slot);
+                    removed = true;
+                }
+            }
+            if (removed) {
+                persist(-1);
+            }
+        }
+    }
+
+    @Override
+    public void recordClear() {
+        synchronized (lock) {
+            if (buffer == null) {
+                return;
+            }
+            // Slots past the high-water mark are never read, so this drops every record at once
+            slots = 0;
+            buffer.putInt(HEADER_SLOTS, 0);
+            Arrays.fill(index, 0);
+            indexed = 0;
+            freeCount = 0;
+            persist(-1);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        synchronized (lock) {
+            close(true);
+        }
+    }
+
+    @Override
+    public WriteBehindFlusher getFlusher() {
+        return flusher;
+    }
+
+    public int getSlots() {
+        synchronized (lock) {
+            return slots;
+        }
+    }
+
+    private void persist(int slot) {
+        if (flusher != null) {
+            flusher.markDirty();
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            strings.force();
+            if (slot >= 0) {
+                buffer.force(offsetOf(slot), RECORD_SIZE);
+                buffer.force(0, HEADER_SIZE);
+            } else {
+                buffer.force();
+            }
+        } catch (UncheckedIOException e) {
+            System.err.println("Failed to force " + recordPath + ": " + e.getMessage());
+        }
+        saveTimer.recordSince(start);
+    }
+
+    /**
+     * Write-behind flush: the records are already in the page cache, this only forces them to disk.
+     */
+    private void force() {
+        long start = System.nanoTime();
+        synchronized (lock) {
+            if (buffer == null) {
+                return;
+            }
+            strings.force();
+            buffer.force();
+        }
+        saveTimer.recordSince(start);
+    }
+
+    private int allocateSlot() throws IOException {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slots == capacity) {
+            // Mapping a larger region grows the file; the old mapping is dropped by the GC
+            capacity *= 2;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+        }
+        int slot = slots++;
+        buffer.putInt(HEADER_SLOTS, slots);
+        return slot;
+    }
+
+    private int findBucket(long msb, long lsb) {
+        int mask = index.length - 1;
+        int bucket = bucketFor(msb, lsb, mask);
+        while (index[bucket] != 0) {
+            int base = offsetOf(index[bucket] - 1);
+            if (buffer.getLong(base + UUID_MSB) == msb && buffer.getLong(base + UUID_LSB) == lsb) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void indexPut(long msb, long lsb, int slot) {
+        if ((indexed + 1) * 4L > index.length * 3L) {
+            int[] old = index;
+            index = new int[old.length * 2];
+            for (int entry : old) {
+                if (entry != 0) {
+                    int base = offsetOf(entry - 1);
+                    insert(buffer.getLong(base + UUID_MSB), buffer.getLong(base + UUID_LSB), entry);
+                }
+            }
+        }
+        insert(msb, lsb, slot + 1);
+        indexed++;
+    }
+
+    private void insert(long msb, long lsb, int entry) {
+        int mask = index.length - 1;
+        int bucket = bucketFor(msb, lsb, mask);
+        while (index[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        index[bucket] = entry;
+    }
+
+    /**
+     * @return the slot {@code uuid} was stored in, or -1
+     */
+    private int indexRemove(UUID uuid) {
+        int bucket = findBucket(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        if (bucket < 0) {
+            return -1;
+        }
+        int slot = index[bucket] - 1;
+        indexed--;
+
+        // Move later entries of the same probe run back, so lookups need no tombstones
+        int mask = index.length - 1;
+        int gap = bucket;
+        int next = (gap + 1) & mask;
+        while (index[next] != 0) {
+            int base = offsetOf(index[next] - 1);
+            int home = bucketFor(buffer.getLong(base + UUID_MSB), buffer.getLong(base + UUID_LSB), mask);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                index[gap] = index[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index[gap] = 0;
+        return slot;
+    }
+
+    private static int bucketFor(long msb, long lsb, int mask) {
+        // Same mix as UuidSet - name-based or sequential UUIDs are not well distributed on their own
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void release(int slot) {
+        buffer.put(offsetOf(slot) + STATE, FREE);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Maps the record file and opens the string table that belongs to it.
+     */
+    private void open() throws IOException {
+        strings = StringTable.open(stringsPath);
+        channel = FileChannel.open(recordPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            throw new IOException("file is truncated");
+        }
+
+        capacity = (int) Math.min(Integer.MAX_VALUE / RECORD_SIZE - 1, (size - HEADER_SIZE) / RECORD_SIZE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+        if (buffer.getInt(HEADER_MAGIC) != MAGIC || buffer.getInt(HEADER_VERSION) != VERSION
+            || buffer.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE) {
+            throw new IOException("not a pending record file of version " + VERSION);
+        }
+        slots = Math.max(0, Math.min(buffer.getInt(HEADER_SLOTS), capacity));
+
+        long generation = buffer.getLong(HEADER_GENERATION);
+        if (strings.generation != generation) {
+            // The records can't be matched to their names any more; keep them without
+            System.err.println(stringsPath + " does not belong to " + recordPath + ", usernames are lost");
+            strings.close();
+            strings = StringTable.create(stringsPath, generation);
+        }
+    }
+
+    /**
+     * Reads every live record into {@code attempts} and rebuilds the slot index and free list.
+     *
+     * @return whether the files are worth compacting
+     */
+    private boolean scan(List<ConnectionAttempt> attempts) {
+        index = new int[Math.max(INITIAL_CAPACITY * 2, Integer.highestOneBit(Math.max(1, slots)) * 4)];
+        indexed = 0;
+        freeCount = 0;
+        BitSet usedStrings = new BitSet(strings.size());
+
+        // Decoded from bulk copies - single reads from the mapping are slow until the JIT has warmed up
+        int words = RECORD_SIZE / Long.BYTES;
+        LongBuffer records = buffer.slice(HEADER_SIZE, slots * RECORD_SIZE).asLongBuffer();
+        long[] chunk = new long[Math.min(slots, SCAN_CHUNK) * words];
+
+        for (int first = 0; first < slots; first += SCAN_CHUNK) {
+            int count = Math.min(SCAN_CHUNK, slots - first);
+            records.get(chunk, 0, count * words);
+
+            for (int i = 0; i < count; i++) {
+                int slot = first + i;
+                int word = i * words;
+                long flags = chunk[word + USERNAME / Long.BYTES];
+                if ((byte) (flags >>> 24) != LIVE) {
+                    release(slot);
+                    continue;
+                }
+
+                long msb = chunk[word + UUID_MSB / Long.BYTES];
+                long lsb = chunk[word + UUID_LSB / Long.BYTES];
+                UUID uuid = new UUID(msb, lsb);
+                int bucket = findBucket(msb, lsb);
+                if (bucket >= 0) {
+                    // Only after a torn write; the later slot wins
+                    release(index[bucket] - 1);
+                    index[bucket] = slot + 1;
+                    attempts.removeIf(attempt -> attempt.getUuid().equals(uuid));
+                } else {
+                    indexPut(msb, lsb, slot);
+                }
+
+                int usernameId = (int) (flags >>> 32);
+                byte kind = (byte) (flags >>> 16);
+                long high = chunk[word + ADDRESS / Long.BYTES];
+                long low = chunk[word + ADDRESS / Long.BYTES + 1];
+                if (usernameId >= 0) {
+                    usedStrings.set(usernameId);
+                }
+                if (kind == ADDRESS_STRING) {
+                    usedStrings.set((int) (high >>> 32));
+                }
+                attempts.add(new ConnectionAttempt(uuid, strings.get(usernameId), chunk[word + TIMESTAMP / Long.BYTES],
+                    decodeAddress(kind, high, low)));
+            }
+        }
+
+        boolean manyFree = slots > INITIAL_CAPACITY && freeCount > slots / 2;
+        boolean manyUnused = strings.size() > INITIAL_CAPACITY && usedStrings.cardinality() < strings.size() / 2;
+        return manyFree || manyUnused;
+    }
+
+    /**
+     * Rewrites the files from the records just scanned, then maps the new ones.
+     */
+    private void compact(List<ConnectionAttempt> attempts) throws IOException {
+        long generation = strings.generation;
+        close(false);
+        try {
+            rewrite(attempts, generation);
+        } catch (IOException e) {
+            // E.g. a file system that can't replace a file that is still mapped - keep the old files
+            System.err.println("Failed to compact " + recordPath + ": " + e.getMessage());
+            compactionFailed = true;
+            finishRewrite();
+        }
+        attempts.clear();
+        open();
+        scan(attempts);
+    }
+
+    /**
+     * Writes {@code attempts} into fresh files of the next generation and puts them in place -
+     * the records first, the string table last.
+     */
+    private void rewrite(Collection<ConnectionAttempt> attempts, long generation) throws IOException {
+        Path recordTemp = AtomicFiles.tempFor(recordPath);
+        Path stringsTemp = AtomicFiles.tempFor(stringsPath);
+        int newCapacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, attempts.size())) * 2);
+
+        StringTable table = StringTable.create(stringsTemp, generation + 1);
+        try {
+            // Written through a heap buffer rather than a mapping, so the file can be renamed right away
+            ByteBuffer records = ByteBuffer.allocate((int) fileSize(newCapacity));
+            writeHeader(records, attempts.size(), generation + 1);
+            int slot = 0;
+            for (ConnectionAttempt attempt : attempts) {
+                encode(records, offsetOf(slot++), attempt, table);
+            }
+            table.force();
+
+            try (FileChannel out = FileChannel.open(recordTemp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (records.hasRemaining()) {
+                    out.write(records);
+                }
+                out.force(true);
+            }
+        } finally {
+            table.close();
+        }
+
+        AtomicFiles.replace(recordTemp, recordPath);
+        AtomicFiles.replace(stringsTemp, stringsPath);
+    }
+
+    /**
+     * Completes or discards a rewrite that was interrupted. A record temp file was never put in place,
+     * so it is incomplete; a string table temp file belongs to the records if their generations match.
+     */
+    private void finishRewrite() throws IOException {
+        Files.deleteIfExists(AtomicFiles.tempFor(recordPath));
+
+        Path stringsTemp = AtomicFiles.tempFor(stringsPath);
+        if (!Files.exists(stringsTemp)) {
+            return;
+        }
+        if (Files.exists(recordPath) && StringTable.readGeneration(stringsTemp) == readGeneration(recordPath)) {
+            AtomicFiles.replace(stringsTemp, stringsPath);
+        } else {
+            Files.delete(stringsTemp);
+        }
+    }
+
+    private static long readGeneration(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            return file.read(header, 0) == HEADER_SIZE ? header.getLong(HEADER_GENERATION) : -1;
+        }
+    }
+
+    /**
+     * The journal's snapshot and tail if there are any, otherwise the classic JSON file.
+     */
+    private Collection<ConnectionAttempt> importLegacy() {
+        Map<UUID, ConnectionAttempt> state = new LinkedHashMap<>();
+        Path snapshotPath = basePath.resolveSibling(basePath.getFileName() + ".snapshot");
+        Path journalPath = basePath.resolveSibling(basePath.getFileName() + ".journal");
+        Path jsonPath = basePath.resolveSibling(basePath.getFileName() + ".json");
+
+        if (Files.exists(snapshotPath) || Files.exists(journalPath)) {
+            JournalAttemptStorage.replay(snapshotPath, state);
+            JournalAttemptStorage.replay(journalPath, state);
+        } else if (Files.exists(jsonPath)) {
+            try {
+                int skipped = PendingJsonFormat.read(jsonPath, attempt -> state.put(attempt.getUuid(), attempt));
+                if (skipped > 0) {
+                    System.err.println("Skipped " + skipped + " malformed records in " + jsonPath);
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to import " + jsonPath + ": " + e.getMessage());
+            }
+        }
+        return state.values();
+    }
+
+    private void startEmpty() {
+        close(false);
+        try {
+            if (Files.exists(recordPath)) {
+                Path aside = recordPath.resolveSibling(recordPath.getFileName() + ".corrupt");
+                AtomicFiles.replace(recordPath, aside);
+                System.err.println("Moved the unreadable file to " + aside);
+            }
+            rewrite(List.of(), 0);
+            open();
+        } catch (IOException e) {
+            System.err.println("Failed to create " + recordPath + ", pending requests are not stored: " + e.getMessage());
+            close(false);
+        }
+    }
+
+    private void close(boolean force) {
+        if (buffer != null && force) {
+            buffer.force();
+        }
+        buffer = null;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to close " + recordPath + ": " + e.getMessage());
+        }
+        channel = null;
+        if (strings != null) {
+            strings.close();
+            strings = null;
+        }
+    }
+
+    private static void writeHeader(ByteBuffer target, int slots, long generation) {
+        target.putInt(HEADER_MAGIC, MAGIC);
+        target.putInt(HEADER_VERSION, VERSION);
+        target.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+        target.putInt(HEADER_SLOTS, slots);
+        target.putLong(HEADER_GENERATION, generation);
+    }
+
+    /**
+     * Writes one record at {@code base}. The state byte goes last, so a torn write leaves a free slot.
+     */
+    private static void encode(ByteBuffer target, int base, ConnectionAttempt attempt, StringTable table) throws IOException {
+        target.putLong(base + UUID_MSB, attempt.getUuid().getMostSignificantBits());
+        target.putLong(base + UUID_LSB, attempt.getUuid().getLeastSignificantBits());
+        target.putLong(base + TIMESTAMP, attempt.getTimestamp());
+        target.putInt(base + USERNAME, attempt.getUsername() != null ? table.intern(attempt.getUsername()) : -1);
+
+        String address = attempt.getIpAddress();
+        byte[] packed = packAddress(address);
+        target.put(base + ADDRESS, NO_ADDRESS);
+        if (packed != null) {
+            target.put(base + ADDRESS_KIND, (byte) packed.length);
+            target.put(base + ADDRESS, packed);
+        } else if (address != null) {
+            target.put(base + ADDRESS_KIND, ADDRESS_STRING);
+            target.putInt(base + ADDRESS, table.intern(address));
+        } else {
+            target.put(base + ADDRESS_KIND, ADDRESS_NONE);
+        }
+        target.put(base + STATE, LIVE);
+    }
+
+    /**
+     * @param high the first 8 address bytes as a big endian long, {@code low} the last 8
+     */
+    private String decodeAddress(byte kind, long high, long low) {
+        if (kind == ADDRESS_STRING) {
+            return strings.get((int) (high >>> 32));
+        }
+        if (kind == ADDRESS_V4) {
+            int ip = (int) (high >>> 32);
+            return (ip >>> 24) + "." + ((ip >>> 16) & 0xff) + "." + ((ip >>> 8) & 0xff) + "." + (ip & 0xff);
+        }
+        if (kind == ADDRESS_V6) {
+            try {
+                return InetAddress.getByAddress(ByteBuffer.allocate(16).putLong(high).putLong(low).array()).getHostAddress();
+            } catch (UnknownHostException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Packs an IP literal that is written exactly the way it would be decoded again; anything else
+     * (host names, shortened IPv6 forms, "unknown") returns null and is kept as a string.
+     */
+    static byte[] packAddress(String address) {
+        byte[] bytes = Subnet.parseAddress(address);
+        if (bytes == null || address.indexOf(':') < 0) {
+            return bytes;
+        }
+        try {
+            return bytes.length == 16 && InetAddress.getByAddress(bytes).getHostAddress().equals(address) ? bytes : null;
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static int offsetOf(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private static long fileSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    }
+
+    /**
+     * Append-only list of strings in a second mapped file: a header with the generation and the end of
+     * the used area, then one entry per string (2-byte length, UTF-8 bytes). A string's id is its position;
+     * ids are only reassigned by a rewrite, which bumps the generation.
+     * <p>
+     * New strings are written into the mapping like records, so a record never outlives the string it
+     * refers to in a process crash, and interning a new name costs no system call.
+     */
+    private static final class StringTable {
+        private static final int HEADER_SIZE = 16;
+        private static final int TABLE_GENERATION = 0;
+        private static final int TABLE_END = 8;
+        private static final int INITIAL_BYTES = 64 * 1024;
+
+        private final List<String> values = new ArrayList<>();
+        private int[] buckets = new int[64]; // id + 1 by string hash, 0 = empty
+        private final Path path;
+        private final long generation;
+        private FileChannel channel;
+        private MappedByteBuffer buffer;
+        private int end;
+        private boolean dirty;
+
+        private StringTable(Path path, long generation) {
+            this.path = path;
+            this.generation = generation;
+        }
+
+        static StringTable create(Path path, long generation) throws IOException {
+            StringTable table = new StringTable(path, generation);
+            table.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            table.buffer = table.channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_BYTES);
+            table.buffer.putLong(TABLE_GENERATION, generation);
+            table.end = HEADER_SIZE;
+            table.buffer.putInt(TABLE_END, HEADER_SIZE);
+            table.dirty = true;
+            return table;
+        }
+
+        static StringTable open(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return create(path, -1);
+            }
+
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                channel.close();
+                throw new IOException(path.getFileName() + " is not a string table");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            StringTable table = new StringTable(path, buffer.getLong(TABLE_GENERATION));
+            table.channel = channel;
+            table.buffer = buffer;
+
+            // One bulk copy; entries past the recorded end were not complete
+            int end = Math.max(HEADER_SIZE, Math.min(buffer.getInt(TABLE_END), (int) size));
+            byte[] bytes = new byte[end];
+            buffer.get(0, bytes);
+            int position = HEADER_SIZE;
+            while (position + 2 <= end) {
+                int length = ((bytes[position] & 0xff) << 8) | (bytes[position + 1] & 0xff);
+                if (position + 2 + length > end) {
+                    break;
+                }
+                table.add(new String(bytes, position + 2, length, StandardCharsets.UTF_8));
+                position += 2 + length;
+            }
+            table.end = position;
+            return table;
+        }
+
+        static long readGeneration(Path path) throws IOException {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                return file.read(header, 0) == HEADER_SIZE ? header.getLong(TABLE_GENERATION) : -1;
+            }
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        String get(int id) {
+            return id >= 0 && id < values.size() ? values.get(id) : null;
+        }
+
+        /**
+         * @return the id of {@code value}, appending it to the file first if it is new
+         */
+        int intern(String value) throws IOException {
+            int mask = buckets.length - 1;
+            for (int bucket = bucketFor(value, mask); buckets[bucket] != 0; bucket = (bucket + 1) & mask) {
+                if (values.get(buckets[bucket] - 1).equals(value)) {
+                    return buckets[bucket] - 1;
+                }
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xffff) {
+                // Far beyond any name or address; store what fits rather than fail the record
+                value = new String(bytes, 0, 0xffff, StandardCharsets.UTF_8);
+                bytes = value.getBytes(StandardCharsets.UTF_8);
+            }
+            if (end + 2 + bytes.length > buffer.capacity()) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(buffer.capacity() * 2L, end + 2L + bytes.length));
+            }
+            buffer.put(end, (byte) (bytes.length >>> 8));
+            buffer.put(end + 1, (byte) bytes.length);
+            buffer.put(end + 2, bytes);
+            end += 2 + bytes.length;
+            // The end moves last, so a torn entry is never read
+            buffer.putInt(TABLE_END, end);
+            dirty = true;
+            return add(value);
+        }
+
+        /**
+         * Appends {@code value} to the in-memory table; a duplicate (only from a torn write) keeps its first id for lookups.
+         */
+        private int add(String value) {
+            int id = values.size();
+            values.add(value);
+            if ((id + 1) * 4L > buckets.length * 3L) {
+                buckets = new int[buckets.length * 2];
+                for (int i = 0; i < id; i++) {
+                    insert(values.get(i), i);
+                }
+            }
+            insert(value, id);
+            return id;
+        }
+
+        private static int bucketFor(String value, int mask) {
+            // Names like "Player1", "Player2" have neighbouring hash codes, which would form long probe runs
+            int h = value.hashCode() * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void insert(String value, int id) {
+            int mask = buckets.length - 1;
+            int bucket = bucketFor(value, mask);
+            while (buckets[bucket] != 0) {
+                if (values.get(buckets[bucket] - 1).equals(value)) {
+                    return;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            buckets[bucket] = id + 1;
+        }
+
+        void force() {
+            if (dirty) {
+                buffer.force();
+                dirty = false;
+            }
+        }
+
+        void close() {
+            buffer = null;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package de.noel.whitelist.data;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Receives changes made on this server so they can be passed on, e.g. to other servers.
+ * Only local changes are reported - never changes that were themselves applied from elsewhere,
+ * and never pending entries dropped by this server's own cap or TTL.
+ */
+public interface ChangePublisher {
+
+    void whitelistChanged(Set<UUID> added, Set<UUID> removed);
+
+    void pendingAdded(ConnectionAttempt attempt);
+
+    void pendingRemoved(UUID uuid);
+}
@@ -39,6 +39,10 @@ public class ConnectionAttempt {
     }
 
     public String getFormattedTime() {
+        return formatAgo(timestamp);
+    }
+
+    public static String formatAgo(long timestamp) {
         long seconds = (System.currentTimeMillis() - timestamp) / 1000;
         if (seconds < 60) return seconds + "s ago";
         long minutes = seconds / 60;
@@ -1,119 +1,671 @@
 package de.noel.whitelist.data;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-
-import java.io.*;
-import java.nio.file.Files;
+import de.noel.whitelist.config.WhitelistConfig;
+import de.noel.whitelist.metrics.Histogram;
+import de.noel.whitelist.metrics.Metrics;
+
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class ConnectionAttemptManager {
+    private static final Path BASE_PATH = Paths.get("whitelist_pending");
     private static final Path FILE_PATH = Paths.get("whitelist_pending.json");
-    private static final int MAX_ENTRIES = 50; // Keep last 50 attempts
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
-    // Store by UUID to avoid duplicates - keeps most recent attempt per player
-    private final Map<UUID, ConnectionAttempt> pendingAttempts = new ConcurrentHashMap<>();
+    // Newest first; the UUID breaks ties so two attempts in the same millisecond both fit in the set
+    private static final Comparator<ConnectionAttempt> NEWEST_FIRST = Comparator
+        .comparingLong(ConnectionAttempt::getTimestamp).reversed()
+        .thenComparing(ConnectionAttempt::getUuid);
+
+    // Pending requests are grouped by these subnets for bulk dismissal
+    public static final int GROUP_PREFIX_V4 = 24;
+    public static final int GROUP_PREFIX_V6 = 64;
+
+    // Records indexed per write lock during a load, so readers can get in between
+    private static final int LOAD_BATCH = 1024;
+
+    // Store by UUID to avoid duplicates - keeps most recent attempt per player.
+    // byTime and byAddress index the same attempts by timestamp and IP; all are only touched under the lock.
+    private final Map<UUID, ConnectionAttempt> pendingAttempts = new HashMap<>();
+    private final NavigableSet<ConnectionAttempt> byTime = new TreeSet<>(NEWEST_FIRST);
+    private final SubnetIndex byAddress = new SubnetIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final AttemptStorage storage;
+
+    // Completed once the store is loaded. Reads wait up to loadWaitMillis and then see the part loaded
+    // so far. The storage takes no record before load() returned, so changes made meanwhile are queued
+    // in deferred and replayed in order on top of the loaded state - a connect never waits for the load.
+    // Batch and subnet removals report what they removed, so they wait; callers run them off the world thread.
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private final long loadWaitMillis;
+    private volatile long loadMillis = -1;
+    private final Object deferLock = new Object();
+    private volatile List<Runnable> deferred; // non-null until the background load has replayed it
+
+    // Bumped under the write lock on every change; a cached snapshot is valid while its version matches
+    private volatile long version;
+    private volatile Snapshot cached;
+    private volatile Groups cachedGroups;
+
+    // Notified after every change, outside the lock - e.g. open /wl pages
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // Null unless changes are shared with other servers
+    private volatile ChangePublisher publisher;
 
-    public ConnectionAttemptManager() {
-        load();
+    /**
+     * @param directory where the pending files live - the server directory outside of benchmarks
+     */
+    public ConnectionAttemptManager(WhitelistConfig config, Path directory, Metrics metrics) {
+        this.maxEntries = config.getPendingMaxEntries();
+        this.ttlMillis = config.getPendingTtlMillis();
+        this.loadWaitMillis = config.getPendingLoadWaitMs();
+
+        Histogram saveTimer = metrics.histogram("whitelist_pending_save_seconds", "Duration of pending store writes (file rewrite or journal flush)");
+        Histogram loadTimer = metrics.histogram("whitelist_pending_load_seconds", "Duration of loading the pending store");
+        if (config.isPendingBinary()) {
+            this.storage = new BinaryAttemptStorage(directory.resolve(BASE_PATH), config, saveTimer);
+        } else if (config.isPendingJournal()) {
+            this.storage = new JournalAttemptStorage(directory.resolve(BASE_PATH), config, this::snapshot, lock.readLock(), saveTimer);
+        } else {
+            this.storage = new JsonAttemptStorage(directory.resolve(FILE_PATH), config, this::snapshot, saveTimer);
+        }
+
+        if (config.isPendingLoadInBackground()) {
+            deferred = new ArrayList<>();
+            Thread loader = new Thread(() -> load(loadTimer), "Whitelist-PendingLoad");
+            loader.setDaemon(true);
+            loader.start();
+        } else {
+            load(loadTimer);
+        }
+
+        metrics.gauge("whitelist_pending_requests", "Pending requests currently stored", this::getCount);
+        WriteBehindFlusher flusher = storage.getFlusher();
+        if (flusher != null) {
+            metrics.counter("whitelist_pending_flushes_total", "Write-behind flushes of the pending store", flusher::getFlushCount);
+            metrics.counter("whitelist_pending_flush_failures_total", "Failed write-behind flushes of the pending store", flusher::getFailedCount);
+            metrics.gauge("whitelist_pending_unflushed_changes", "Pending store changes not yet written", flusher::getPendingDirtyCount);
+        }
     }
 
     public void addAttempt(ConnectionAttempt attempt) {
-        // Update or add the attempt (overwrites old attempt from same player)
-        pendingAttempts.put(attempt.getUuid(), attempt);
+        if (!deferWhileLoading(() -> add(attempt))) {
+            add(attempt);
+        }
+    }
 
-        // Trim if too many entries
-        if (pendingAttempts.size() > MAX_ENTRIES) {
-            trimOldest();
+    public void removeAttempt(UUID uuid) {
+        if (!deferWhileLoading(() -> remove(uuid))) {
+            remove(uuid);
         }
+    }
 
-        save();
+    /**
+     * Removes several attempts under one lock, with one store write and one listener notification.
+     *
+     * Waits for a running load, so call it off the world thread.
+     *
+     * @return the attempts that were actually removed
+     */
+    public List<ConnectionAttempt> removeAttempts(Collection<UUID> uuids) {
+        awaitLoaded();
+        return removeAll(uuids);
     }
 
-    public void removeAttempt(UUID uuid) {
-        pendingAttempts.remove(uuid);
-        save();
+    /**
+     * Applies pending changes that came from another server, under one lock and without publishing them again.
+     * An added attempt only replaces an existing one of the same player if it is newer.
+     *
+     * @return whether anything changed; false while the store is still loading, the changes are then
+     *         applied once it is loaded
+     */
+    public boolean applyRemote(Collection<ConnectionAttempt> added, Collection<UUID> removed) {
+        if (deferWhileLoading(() -> applyRemoteChanges(added, removed))) {
+            return false;
+        }
+        return applyRemoteChanges(added, removed);
+    }
+
+    public void clear() {
+        if (!deferWhileLoading(this::clearAll)) {
+            clearAll();
+        }
+    }
+
+    private void add(ConnectionAttempt attempt) {
+        lock.writeLock().lock();
+        try {
+            // Update or add the attempt (overwrites old attempt from same player)
+            index(attempt);
+            storage.recordAdd(attempt);
+
+            // Drop the oldest entries beyond the cap or older than the TTL
+            evict(System.currentTimeMillis());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ChangePublisher current = publisher;
+        if (current != null) {
+            current.pendingAdded(attempt);
+        }
+        notifyListeners();
+    }
+
+    private void remove(UUID uuid) {
+        ConnectionAttempt removed;
+        lock.writeLock().lock();
+        try {
+            removed = unindex(uuid);
+            if (removed != null) {
+                version++;
+                storage.recordRemove(uuid);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (removed != null) {
+            ChangePublisher current = publisher;
+            if (current != null) {
+                current.pendingRemoved(uuid);
+            }
+            notifyListeners();
+        }
     }
 
-    public Collection<ConnectionAttempt> getPendingAttempts() {
-        // Return sorted by timestamp (newest first)
-        List<ConnectionAttempt> sorted = new ArrayList<>(pendingAttempts.values());
-        sorted.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
-        return sorted;
+    private List<ConnectionAttempt> removeAll(Collection<UUID> uuids) {
+        List<ConnectionAttempt> removed = new ArrayList<>(uuids.size());
+        lock.writeLock().lock();
+        try {
+            for (UUID uuid : uuids) {
+                ConnectionAttempt previous = unindex(uuid);
+                if (previous != null) {
+                    removed.add(previous);
+                }
+            }
+            if (!removed.isEmpty()) {
+                version++;
+                List<UUID> removedUuids = new ArrayList<>(removed.size());
+                for (ConnectionAttempt attempt : removed) {
+                    removedUuids.add(attempt.getUuid());
+                }
+                storage.recordRemoveAll(removedUuids);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!removed.isEmpty()) {
+            ChangePublisher current = publisher;
+            if (current != null) {
+                for (ConnectionAttempt attempt : removed) {
+                    current.pendingRemoved(attempt.getUuid());
+                }
+            }
+            notifyListeners();
+        }
+        return removed;
+    }
+
+    private boolean applyRemoteChanges(Collection<ConnectionAttempt> added, Collection<UUID> removed) {
+        boolean changed;
+        lock.writeLock().lock();
+        try {
+            long before = version;
+            for (UUID uuid : removed) {
+                if (unindex(uuid) != null) {
+                    version++;
+                    storage.recordRemove(uuid);
+                }
+            }
+            for (ConnectionAttempt attempt : added) {
+                ConnectionAttempt existing = pendingAttempts.get(attempt.getUuid());
+                if (existing == null || existing.getTimestamp() < attempt.getTimestamp()) {
+                    index(attempt);
+                    storage.recordAdd(attempt);
+                }
+            }
+            evict(System.currentTimeMillis());
+            changed = version != before;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (changed) {
+            notifyListeners();
+        }
+        return changed;
+    }
+
+    private void clearAll() {
+        lock.writeLock().lock();
+        try {
+            pendingAttempts.clear();
+            byTime.clear();
+            byAddress.clear();
+            version++;
+            storage.recordClear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Sets where local additions and removals are reported. Evictions by cap or TTL and
+     * {@link #clear()} are not reported - every server applies its own limits.
+     */
+    public void setPublisher(ChangePublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * @return all pending attempts, newest first. The list is immutable and shared between callers
+     *         until the next change, so repeated reads of an unchanged store don't allocate.
+     */
+    public List<ConnectionAttempt> getPendingAttempts() {
+        awaitLoadBriefly();
+        expireStale();
+        return snapshot();
     }
 
     public ConnectionAttempt getAttempt(UUID uuid) {
-        return pendingAttempts.get(uuid);
+        awaitLoadBriefly();
+        lock.readLock().lock();
+        try {
+            return pendingAttempts.get(uuid);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public int getCount() {
-        return pendingAttempts.size();
+        awaitLoadBriefly();
+        lock.readLock().lock();
+        try {
+            return pendingAttempts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public void clear() {
-        pendingAttempts.clear();
-        save();
+    /**
+     * Registers {@code listener} to run after every change. It is called on the thread that made
+     * the change, outside of any lock, so it should only hand off work (e.g. schedule a UI update).
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
     }
 
-    private void trimOldest() {
-        if (pendingAttempts.size() <= MAX_ENTRIES) return;
+    /**
+     * @return the pending attempts counted per IPv4 /24 and IPv6 /64, largest group first. Attempts without
+     *         an IP literal are not included. Cached like {@link #getPendingAttempts()} until the next change.
+     */
+    public List<SubnetIndex.Group> getSubnetGroups() {
+        awaitLoadBriefly();
+        expireStale();
+        Groups current = cachedGroups;
+        if (current != null && current.version() == version) {
+            return current.groups();
+        }
+
+        long groupedVersion;
+        List<SubnetIndex.Group> groups;
+        lock.readLock().lock();
+        try {
+            groupedVersion = version;
+            groups = byAddress.groups(GROUP_PREFIX_V4, GROUP_PREFIX_V6);
+        } finally {
+            lock.readLock().unlock();
+        }
+        groups.sort(Comparator.comparingInt(SubnetIndex.Group::count).reversed().thenComparing(SubnetIndex.Group::subnet));
+        current = new Groups(groupedVersion, List.copyOf(groups));
+        cachedGroups = current;
+        return current.groups();
+    }
 
-        // Find and remove oldest entries
-        List<Map.Entry<UUID, ConnectionAttempt>> sorted = new ArrayList<>(pendingAttempts.entrySet());
-        sorted.sort((a, b) -> Long.compare(a.getValue().getTimestamp(), b.getValue().getTimestamp()));
+    /**
+     * @return the pending attempts with an IP in {@code subnet}, newest first
+     */
+    public List<ConnectionAttempt> getAttemptsIn(Subnet subnet) {
+        awaitLoadBriefly();
+        List<ConnectionAttempt> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (UUID uuid : byAddress.collect(subnet)) {
+                result.add(pendingAttempts.get(uuid));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
 
-        int toRemove = pendingAttempts.size() - MAX_ENTRIES;
-        for (int i = 0; i < toRemove && i < sorted.size(); i++) {
-            pendingAttempts.remove(sorted.get(i).getKey());
+    /**
+     * Removes all attempts with an IP in {@code subnet}, with one store write like {@link #removeAttempts(Collection)}.
+     *
+     * @return the attempts that were removed
+     */
+    public List<ConnectionAttempt> removeSubnet(Subnet subnet) {
+        awaitLoaded();
+        List<UUID> uuids;
+        lock.readLock().lock();
+        try {
+            uuids = byAddress.collect(subnet);
+        } finally {
+            lock.readLock().unlock();
         }
+        return uuids.isEmpty() ? List.of() : removeAll(uuids);
     }
 
-    private void load() {
-        File file = FILE_PATH.toFile();
-        if (!file.exists()) {
+    /**
+     * Flushes outstanding changes and closes the storage backend. Called on plugin shutdown.
+     */
+    public void shutdown() {
+        awaitLoaded();
+        storage.close();
+    }
+
+    /**
+     * @return completed once the startup load has finished; dependent actions run on the loading
+     *         thread, or right away if it already has
+     */
+    public CompletableFuture<Void> whenLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return how long the startup load took, or -1 while it is still running
+     */
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    /**
+     * @return the background flusher, or null when the storage has none ("sync" mode, except for the journal)
+     */
+    public WriteBehindFlusher getFlusher() {
+        return storage.getFlusher();
+    }
+
+    /**
+     * Replays the storage into the indexes in batches, then applies the cap and TTL once.
+     * Runs in the constructor or on the loading thread.
+     */
+    private void load(Histogram loadTimer) {
+        long start = System.nanoTime();
+        List<ConnectionAttempt> batch = new ArrayList<>(LOAD_BATCH);
+        try {
+            storage.load(attempt -> {
+                batch.add(attempt);
+                if (batch.size() == LOAD_BATCH) {
+                    indexAll(batch);
+                }
+            });
+            indexAll(batch);
+
+            lock.writeLock().lock();
+            try {
+                evict(System.currentTimeMillis());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to load the pending store: " + e.getMessage());
+        } finally {
+            loadTimer.recordSince(start);
+            loadMillis = (System.nanoTime() - start) / 1_000_000;
+            replayDeferred();
+            loaded.complete(null);
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Queues {@code change} while the background load is running.
+     *
+     * @return false if the store is loaded and the caller applies the change itself
+     */
+    private boolean deferWhileLoading(Runnable change) {
+        if (deferred == null) {
+            return false;
+        }
+        synchronized (deferLock) {
+            if (deferred == null) {
+                return false;
+            }
+            deferred.add(change);
+            return true;
+        }
+    }
+
+    /**
+     * Applies the changes queued during the load, including those queued while replaying, then lets
+     * later changes through directly. Runs on the loading thread before {@link #loaded} completes.
+     */
+    private void replayDeferred() {
+        while (true) {
+            List<Runnable> changes;
+            synchronized (deferLock) {
+                if (deferred == null || deferred.isEmpty()) {
+                    deferred = null;
+                    return;
+                }
+                changes = deferred;
+                deferred = new ArrayList<>();
+            }
+            for (Runnable change : changes) {
+                try {
+                    change.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Failed to apply a pending change made during the load: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void indexAll(List<ConnectionAttempt> batch) {
+        lock.writeLock().lock();
+        try {
+            for (ConnectionAttempt attempt : batch) {
+                index(attempt);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        batch.clear();
+    }
+
+    /**
+     * Gives a running load up to {@code loadWaitMillis} to finish; after that the caller reads what is loaded so far.
+     */
+    private void awaitLoadBriefly() {
+        if (loaded.isDone()) {
             return;
         }
+        try {
+            loaded.get(loadWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Partial view
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        try (BufferedReader reader = Files.newBufferedReader(FILE_PATH)) {
-            JsonArray array = JsonParser.parseReader(reader).getAsJsonArray();
+    private void awaitLoaded() {
+        if (!loaded.isDone()) {
+            loaded.join();
+        }
+    }
 
-            for (int i = 0; i < array.size(); i++) {
-                JsonObject obj = array.get(i).getAsJsonObject();
-                UUID uuid = UUID.fromString(obj.get("uuid").getAsString());
-                String username = obj.get("username").getAsString();
-                long timestamp = obj.get("timestamp").getAsLong();
-                String ipAddress = obj.has("ip") ? obj.get("ip").getAsString() : "unknown";
+    /**
+     * Immutable copy of all attempts, sorted by timestamp (newest first), rebuilt only after a change.
+     * Used by the storage backends, so it must not call {@link #expireStale()} - a read lock cannot be upgraded.
+     */
+    private List<ConnectionAttempt> snapshot() {
+        Snapshot current = cached;
+        if (current != null && current.version() == version) {
+            return current.attempts();
+        }
 
-                pendingAttempts.put(uuid, new ConnectionAttempt(uuid, username, timestamp, ipAddress));
+        lock.readLock().lock();
+        try {
+            // No writer can run while we hold the read lock, so version and contents match
+            current = new Snapshot(version, List.copyOf(byTime));
+        } finally {
+            lock.readLock().unlock();
+        }
+        // A change after the unlock leaves this stale, which the version check above catches
+        cached = current;
+        return current.attempts();
+    }
+
+    /**
+     * Puts the attempt into both indexes, moving an older attempt of the same player. Caller holds the write lock.
+     */
+    private void index(ConnectionAttempt attempt) {
+        ConnectionAttempt previous = pendingAttempts.put(attempt.getUuid(), attempt);
+        if (previous != null) {
+            byTime.remove(previous);
+            Subnet address = addressOf(previous);
+            if (address != null) {
+                byAddress.remove(address, previous.getUuid());
+            }
+        }
+        byTime.add(attempt);
+        Subnet address = addressOf(attempt);
+        if (address != null) {
+            byAddress.add(address, attempt.getUuid());
+        }
+        version++;
+    }
+
+    /**
+     * Takes the attempt out of all indexes, without bumping the version. Caller holds the write lock.
+     *
+     * @return the removed attempt, or null if there was none
+     */
+    private ConnectionAttempt unindex(UUID uuid) {
+        ConnectionAttempt removed = pendingAttempts.remove(uuid);
+        if (removed != null) {
+            byTime.remove(removed);
+            Subnet address = addressOf(removed);
+            if (address != null) {
+                byAddress.remove(address, uuid);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the attempt's IP as a full-length subnet, or null if it is no IP literal (e.g. "unknown")
+     */
+    private static Subnet addressOf(ConnectionAttempt attempt) {
+        byte[] address = Subnet.parseAddress(attempt.getIpAddress());
+        return address != null ? Subnet.of(address, address.length * 8) : null;
+    }
+
+    /**
+     * Removes the oldest attempts while over the cap or past the TTL. Caller holds the write lock.
+     */
+    private void evict(long now) {
+        long cutoff = ttlMillis > 0 ? now - ttlMillis : Long.MIN_VALUE;
+        UUID first = null; // the usual single eviction per add needs no list
+        List<UUID> evicted = null;
+        while (!byTime.isEmpty()) {
+            ConnectionAttempt oldest = byTime.last();
+            if (byTime.size() <= maxEntries && oldest.getTimestamp() >= cutoff) {
+                break;
+            }
+            unindex(oldest.getUuid());
+            version++;
+            if (first == null) {
+                first = oldest.getUuid();
+            } else {
+                if (evicted == null) {
+                    evicted = new ArrayList<>();
+                    evicted.add(first);
+                }
+                evicted.add(oldest.getUuid());
             }
-        } catch (Exception e) {
-            System.err.println("Failed to load whitelist_pending.json: " + e.getMessage());
+        }
+
+        // One store write, also when a lowered cap or TTL drops a large part of the list at once
+        if (evicted != null) {
+            storage.recordRemoveAll(evicted);
+        } else if (first != null) {
+            storage.recordRemove(first);
         }
     }
 
-    private void save() {
-        JsonArray array = new JsonArray();
+    /**
+     * Applies the TTL on read, so entries also expire while no new attempts come in.
+     */
+    private void expireStale() {
+        if (ttlMillis <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        // Common case: the cached snapshot is current and its oldest entry is still fresh - no lock needed
+        Snapshot current = cached;
+        if (current != null && current.version() == version) {
+            List<ConnectionAttempt> attempts = current.attempts();
+            if (attempts.isEmpty() || attempts.get(attempts.size() - 1).getTimestamp() >= now - ttlMillis) {
+                return;
+            }
+        }
+
+        lock.readLock().lock();
+        try {
+            if (byTime.isEmpty() || byTime.last().getTimestamp() >= now - ttlMillis) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
 
-        for (ConnectionAttempt attempt : pendingAttempts.values()) {
-            JsonObject obj = new JsonObject();
-            obj.addProperty("uuid", attempt.getUuid().toString());
-            obj.addProperty("username", attempt.getUsername());
-            obj.addProperty("timestamp", attempt.getTimestamp());
-            obj.addProperty("ip", attempt.getIpAddress());
-            array.add(obj);
+        boolean changed;
+        lock.writeLock().lock();
+        try {
+            long before = version;
+            evict(now);
+            changed = version != before;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (changed) {
+            notifyListeners();
         }
+    }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(FILE_PATH)) {
-            writer.write(GSON.toJson(array));
-        } catch (Exception e) {
-            System.err.println("Failed to save whitelist_pending.json: " + e.getMessage());
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                System.err.println("Pending list listener failed: " + e.getMessage());
+            }
         }
     }
+
+    private record Snapshot(long version, List<ConnectionAttempt> attempts) {
+    }
+
+    private record Groups(long version, List<SubnetIndex.Group> groups) {
+    }
 }
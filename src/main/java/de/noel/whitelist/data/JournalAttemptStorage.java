@@ -0,0 +1,387 @@
+package de.noel.whitelist.data;
+
+import de.noel.whitelist.config.WhitelistConfig;
+import de.noel.whitelist.metrics.Histogram;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Stores the pending list as a snapshot plus an append-only journal of changes.
+ * <p>
+ * Every mutation appends one short line to the journal; once the journal holds
+ * {@code compactThreshold} records it is folded into a fresh snapshot and truncated.
+ * Startup replays the snapshot and then the journal tail. Replaying a journal over a
+ * snapshot that already contains its effects yields the same state, so a crash between
+ * writing the snapshot and truncating the journal is harmless.
+ * <p>
+ * Compaction takes its cut while holding the manager's state lock (so no record can slip
+ * in between copying the state and marking the journal position), then writes the snapshot
+ * without holding any lock. Records appended meanwhile are carried over into the new journal.
+ * It always runs on the flusher thread, also in "sync" mode, never on the thread that made the change.
+ * <p>
+ * A failed append or flush never reaches the caller: the journal is marked broken, later records are
+ * kept only in memory, and the flusher repairs it by compacting - retried (and counted as failed flush)
+ * until the snapshot is written.
+ * <p>
+ * Line format (tab separated): {@code A uuid timestamp ip username}, {@code R uuid}, {@code C}.
+ */
+public class JournalAttemptStorage implements AttemptStorage {
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final Path legacyJsonPath;
+    private final int compactThreshold;
+    private final Supplier<Collection<ConnectionAttempt>> snapshot;
+    private final Lock stateLock;
+    private final Histogram saveTimer;
+    private final Object lock = new Object();
+
+    // In "sync" mode every record is flushed to the OS right away and the flusher only compacts and repairs
+    private final boolean writeBehind;
+    private final WriteBehindFlusher flusher;
+
+    private BufferedWriter journal;
+    private int journalRecords;
+    private List<String> compactionTail; // non-null while a compaction is writing its snapshot
+    private boolean broken;              // an append or flush failed, the files miss changes until the next compaction
+    private boolean closed;
+
+    /**
+     * @param stateLock read lock of the owning manager; all record calls happen under its write lock
+     * @param saveTimer receives the duration of every journal flush, including compactions
+     */
+    public JournalAttemptStorage(Path basePath, WhitelistConfig config,
+                                 Supplier<Collection<ConnectionAttempt>> snapshot, Lock stateLock, Histogram saveTimer) {
+        this.snapshotPath = basePath.resolveSibling(basePath.getFileName() + ".snapshot");
+        this.journalPath = basePath.resolveSibling(basePath.getFileName() + ".journal");
+        this.legacyJsonPath = basePath.resolveSibling(basePath.getFileName() + ".json");
+        this.compactThreshold = config.getPendingJournalCompactThreshold();
+        this.snapshot = snapshot;
+        this.stateLock = stateLock;
+        this.saveTimer = saveTimer;
+        this.writeBehind = config.isPendingWriteBehind();
+        this.flusher = new WriteBehindFlusher("pending-journal", config.getPendingFlushIntervalMs(), this::flushJournal);
+    }
+
+    @Override
+    public void load(Consumer<ConnectionAttempt> sink) {
+        Map<UUID, ConnectionAttempt> state = new LinkedHashMap<>();
+        boolean haveJournalFiles = Files.exists(snapshotPath) || Files.exists(journalPath);
+
+        if (haveJournalFiles) {
+            replay(snapshotPath, state);
+            journalRecords = replay(journalPath, state);
+        } else if (Files.exists(legacyJsonPath)) {
+            // First start with the journal backend - import the old JSON file once
+            try {
+                int skipped = PendingJsonFormat.read(legacyJsonPath, attempt -> state.put(attempt.getUuid(), attempt));
+                if (skipped > 0) {
+                    System.err.println("Skipped " + skipped + " malformed records in " + legacyJsonPath);
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to import " + legacyJsonPath + ": " + e.getMessage());
+            }
+        }
+
+        state.values().forEach(sink);
+
+        synchronized (lock) {
+            if (!haveJournalFiles && !state.isEmpty()) {
+                IOException failure = writeSnapshot(state.values());
+                if (failure != null) {
+                    // Kept in memory, the first flush retries
+                    markBroken("import into", failure);
+                }
+            }
+            try {
+                openJournal(false);
+            } catch (IOException e) {
+                markBroken("open", e);
+            }
+        }
+        if (broken) {
+            flusher.markDirty();
+        }
+    }
+
+    @Override
+    public void recordAdd(ConnectionAttempt attempt) {
+        append("A\t" + attempt.getUuid() + "\t" + attempt.getTimestamp() + "\t"
+            + clean(attempt.getIpAddress()) + "\t" + clean(attempt.getUsername()));
+    }
+
+    @Override
+    public void recordRemove(UUID uuid) {
+        append("R\t" + uuid);
+    }
+
+    @Override
+    public void recordRemoveAll(Collection<UUID> uuids) {
+        List<String> lines = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) {
+            lines.add("R\t" + uuid);
+        }
+        append(lines);
+    }
+
+    @Override
+    public void recordClear() {
+        append("C");
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        synchronized (lock) {
+            closed = true;
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close " + journalPath + ": " + e.getMessage());
+                }
+                journal = null;
+            }
+        }
+    }
+
+    @Override
+    public WriteBehindFlusher getFlusher() {
+        return flusher;
+    }
+
+    public int getJournalRecords() {
+        return journalRecords;
+    }
+
+    private void append(String line) {
+        append(List.of(line));
+    }
+
+    /**
+     * Appends all {@code lines} and flushes (or marks dirty) once for the lot.
+     */
+    private void append(List<String> lines) {
+        boolean repair = false;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (compactionTail != null) {
+                compactionTail.addAll(lines);
+            }
+            if (!broken) {
+                try {
+                    write(lines);
+                    if (!writeBehind) {
+                        journal.flush();
+                    }
+                } catch (IOException e) {
+                    markBroken("append to", e);
+                }
+            }
+            repair = broken || journalRecords >= compactThreshold;
+        }
+
+        if (writeBehind || repair) {
+            flusher.markDirty();
+        }
+    }
+
+    /**
+     * Flusher action: flushes the journal, and compacts it when it is long enough or broken.
+     *
+     * @throws UncheckedIOException if the compaction failed, so the flusher retries on its next tick
+     */
+    private void flushJournal() {
+        long start = System.nanoTime();
+        boolean compact;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (!broken) {
+                try {
+                    journal.flush();
+                } catch (IOException e) {
+                    markBroken("flush", e);
+                }
+            }
+            compact = (broken || journalRecords >= compactThreshold) && compactionTail == null;
+        }
+
+        try {
+            if (compact) {
+                compact();
+            }
+        } finally {
+            saveTimer.recordSince(start);
+        }
+    }
+
+    /**
+     * Folds the current state into a new snapshot and starts a journal holding only the
+     * records appended while the snapshot was being written. Also repairs a broken journal,
+     * the snapshot covers whatever it is missing.
+     *
+     * @throws UncheckedIOException if a file could not be written; the journal is broken afterwards
+     */
+    private void compact() {
+        Collection<ConnectionAttempt> state;
+        boolean repairing;
+        stateLock.lock();
+        try {
+            state = snapshot.get();
+            synchronized (lock) {
+                compactionTail = new ArrayList<>();
+                repairing = broken;
+                broken = false;
+            }
+        } finally {
+            stateLock.unlock();
+        }
+
+        IOException failure = writeSnapshot(state);
+
+        synchronized (lock) {
+            List<String> tail = compactionTail;
+            compactionTail = null;
+            if (failure != null) {
+                // The old journal is still complete unless it was broken before or since the cut
+                broken |= repairing;
+                throw new UncheckedIOException("Failed to write " + snapshotPath, failure);
+            }
+
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close " + journalPath + ": " + e.getMessage());
+                }
+            }
+            journalRecords = 0;
+            broken = false;
+            try {
+                openJournal(true);
+                write(tail);
+                journal.flush();
+            } catch (IOException e) {
+                markBroken("rewrite", e);
+                throw new UncheckedIOException("Failed to rewrite " + journalPath, e);
+            }
+        }
+    }
+
+    /**
+     * Caller holds {@link #lock}.
+     */
+    private void write(List<String> lines) throws IOException {
+        if (journal == null) {
+            throw new IOException(journalPath + " is not open");
+        }
+        for (String line : lines) {
+            journal.write(line);
+            journal.newLine();
+            journalRecords++;
+        }
+    }
+
+    /**
+     * Caller holds {@link #lock}. Further records are only kept in memory until a compaction succeeds.
+     */
+    private void markBroken(String operation, IOException e) {
+        if (!broken) {
+            System.err.println("Failed to " + operation + " " + journalPath + ", rewriting the snapshot: " + e.getMessage());
+        }
+        broken = true;
+    }
+
+    /**
+     * @return null on success, else the error
+     */
+    private IOException writeSnapshot(Collection<ConnectionAttempt> attempts) {
+        Path temp = AtomicFiles.tempFor(snapshotPath);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (ConnectionAttempt attempt : attempts) {
+                    writer.write("A\t" + attempt.getUuid() + "\t" + attempt.getTimestamp() + "\t"
+                        + clean(attempt.getIpAddress()) + "\t" + clean(attempt.getUsername()));
+                    writer.newLine();
+                }
+            }
+            AtomicFiles.replace(temp, snapshotPath);
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Caller holds {@link #lock}. On failure the journal stays closed.
+     */
+    private void openJournal(boolean truncate) throws IOException {
+        journal = null;
+        journal = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            truncate ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Applies every record in {@code file} to {@code state}. Malformed lines (e.g. a torn last
+     * line after a crash) are skipped.
+     *
+     * @return number of records read
+     */
+    static int replay(Path file, Map<UUID, ConnectionAttempt> state) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        int records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 5);
+                try {
+                    switch (parts[0]) {
+                        case "A" -> {
+                            UUID uuid = UUID.fromString(parts[1]);
+                            state.remove(uuid); // re-insert so iteration order follows the journal
+                            state.put(uuid, new ConnectionAttempt(uuid, parts[4], Long.parseLong(parts[2]), parts[3]));
+                        }
+                        case "R" -> state.remove(UUID.fromString(parts[1]));
+                        case "C" -> state.clear();
+                        default -> {
+                            continue;
+                        }
+                    }
+                    records++;
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping malformed record in " + file + ": " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read " + file + ": " + e.getMessage());
+        }
+        return records;
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,113 @@
+package de.noel.whitelist.data;
+
+import de.noel.whitelist.config.WhitelistConfig;
+import de.noel.whitelist.metrics.Histogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Stores the pending list as one JSON array that is rewritten after changes.
+ */
+public class JsonAttemptStorage implements AttemptStorage {
+    private final Path path;
+    private final Supplier<Collection<ConnectionAttempt>> snapshot;
+    private final Object saveLock = new Object();
+    private final Histogram saveTimer;
+
+    // Null in "sync" mode - every mutation then writes the file directly
+    private final WriteBehindFlusher flusher;
+
+    public JsonAttemptStorage(Path path, WhitelistConfig config, Supplier<Collection<ConnectionAttempt>> snapshot, Histogram saveTimer) {
+        this.path = path;
+        this.snapshot = snapshot;
+        this.saveTimer = saveTimer;
+        this.flusher = config.isPendingWriteBehind()
+            ? new WriteBehindFlusher("pending", config.getPendingFlushIntervalMs(), this::save)
+            : null;
+    }
+
+    @Override
+    public void load(Consumer<ConnectionAttempt> sink) {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try {
+            int skipped = PendingJsonFormat.read(path, sink);
+            if (skipped > 0) {
+                System.err.println("Skipped " + skipped + " malformed records in " + path);
+            }
+        } catch (Exception e) {
+            // The records in front of the error have been loaded
+            System.err.println("Failed to load the rest of " + path + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void recordAdd(ConnectionAttempt attempt) {
+        persist();
+    }
+
+    @Override
+    public void recordRemove(UUID uuid) {
+        persist();
+    }
+
+    @Override
+    public void recordRemoveAll(Collection<UUID> uuids) {
+        persist();
+    }
+
+    @Override
+    public void recordClear() {
+        persist();
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+    }
+
+    @Override
+    public WriteBehindFlusher getFlusher() {
+        return flusher;
+    }
+
+    private void persist() {
+        if (flusher != null) {
+            flusher.markDirty();
+            return;
+        }
+        try {
+            save();
+        } catch (UncheckedIOException e) {
+            // The next change writes the whole list again
+            System.err.println("Failed to save " + path + ": " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException if the file can't be written, so the flusher keeps the store dirty and retries
+     */
+    private void save() {
+        synchronized (saveLock) {
+            long start = System.nanoTime();
+            try {
+                PendingJsonFormat.write(path, snapshot.get());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                saveTimer.recordSince(start);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.noel.whitelist.data;
+
+import de.noel.whitelist.metrics.Histogram;
+import de.noel.whitelist.metrics.Metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs whitelist and pending store writes one after another on a virtual thread, so UI handlers
+ * on the world thread never wait for disk I/O. Mutations keep the order they were submitted in;
+ * callers continue on the world thread with e.g. {@code thenAcceptAsync(..., world)}.
+ */
+public class MutationExecutor {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+        Thread.ofVirtual().name("Whitelist-Mutations").factory());
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Histogram waitTimer;
+    private final Histogram runTimer;
+
+    public MutationExecutor(Metrics metrics) {
+        this.waitTimer = metrics.histogram("whitelist_mutation_wait_seconds", "Time UI mutations spent queued before running");
+        this.runTimer = metrics.histogram("whitelist_mutation_seconds", "Duration of UI mutations, including the writes they cause");
+        metrics.gauge("whitelist_mutations_queued", "UI mutations waiting or running", queued::get);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> mutation) {
+        long submitted = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                waitTimer.record(start - submitted);
+                try {
+                    return mutation.get();
+                } finally {
+                    runTimer.recordSince(start);
+                    queued.decrementAndGet();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public CompletableFuture<Void> run(Runnable mutation) {
+        return submit(() -> {
+            mutation.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return the exception thrown by the mutation itself, without the {@link CompletionException} around it
+     */
+    public static Throwable causeOf(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Runs what is already queued, then stops. Called before the stores shut down.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("Whitelist mutations still running at shutdown: " + queued.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
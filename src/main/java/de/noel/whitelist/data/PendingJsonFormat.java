@@ -0,0 +1,122 @@
+package de.noel.whitelist.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * The original {@code whitelist_pending.json} format: a pretty-printed JSON array of attempts.
+ * Used by the JSON storage backend and as import/export format for the other backends.
+ */
+public final class PendingJsonFormat {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private PendingJsonFormat() {
+    }
+
+    /**
+     * Streams the array record by record, so the file is never held in memory as a whole.
+     * A record with a missing or invalid field is skipped on its own; a syntax error ends the
+     * read with an exception, after everything in front of it has been passed to {@code sink}.
+     *
+     * @return number of skipped records
+     */
+    public static int read(Path path, Consumer<ConnectionAttempt> sink) throws IOException {
+        int skipped = 0;
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(path))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                ConnectionAttempt attempt = readAttempt(reader);
+                if (attempt != null) {
+                    sink.accept(attempt);
+                } else {
+                    skipped++;
+                }
+            }
+            reader.endArray();
+        }
+        return skipped;
+    }
+
+    /**
+     * @return the attempt, or null if the value is not a valid record (it is consumed either way)
+     */
+    private static ConnectionAttempt readAttempt(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String uuid = null;
+        String username = null;
+        String timestamp = null;
+        String ipAddress = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "uuid" -> uuid = nextScalar(reader);
+                case "username" -> username = nextScalar(reader);
+                case "timestamp" -> timestamp = nextScalar(reader);
+                case "ip" -> ipAddress = nextScalar(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (uuid == null || username == null || timestamp == null) {
+            return null;
+        }
+        try {
+            return new ConnectionAttempt(UUID.fromString(uuid), username, Long.parseLong(timestamp),
+                ipAddress != null ? ipAddress : "unknown");
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the string or number at the reader's position as text, or null (skipping the value) for anything else
+     */
+    private static String nextScalar(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * Writes all attempts to a temp file next to {@code path} and renames it into place,
+     * so a crash never leaves a half-written file behind.
+     */
+    public static void write(Path path, Collection<ConnectionAttempt> attempts) throws IOException {
+        JsonArray array = new JsonArray();
+
+        for (ConnectionAttempt attempt : attempts) {
+            JsonObject obj = new JsonObject();
+            obj.addProperty("uuid", attempt.getUuid().toString());
+            obj.addProperty("username", attempt.getUsername());
+            obj.addProperty("timestamp", attempt.getTimestamp());
+            obj.addProperty("ip", attempt.getIpAddress());
+            array.add(obj);
+        }
+
+        Path temp = AtomicFiles.tempFor(path);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write(GSON.toJson(array));
+        }
+        AtomicFiles.replace(temp, path);
+    }
+}
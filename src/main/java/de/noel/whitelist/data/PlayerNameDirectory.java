@@ -0,0 +1,240 @@
+package de.noel.whitelist.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Remembers the last known username of every player seen connecting or being added, so offline
+ * whitelist members can be shown by name.
+ * <p>
+ * Stored as one {@code uuid<TAB>username<TAB>lastSeen} line per player, loaded on first use and
+ * rewritten by a write-behind flusher. The map is kept in last-seen order and capped; the players
+ * not seen for the longest time are forgotten first. Every known name is mirrored into a
+ * {@link UsernameIndex} for prefix search.
+ */
+public class PlayerNameDirectory {
+    // Seeing the same player again within this window does not count as change
+    private static final long TOUCH_INTERVAL_MS = 60_000;
+
+    private final Path path;
+    private final int maxEntries;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final WriteBehindFlusher flusher;
+    private final UsernameIndex index;
+
+    // Insertion order == last-seen order, as record() re-inserts
+    private final LinkedHashMap<UUID, Entry> byUuid = new LinkedHashMap<>();
+    private final Map<String, UUID> byName = new HashMap<>();
+    private volatile boolean loaded;
+
+    public PlayerNameDirectory(Path path, int maxEntries, long flushIntervalMs, UsernameIndex index) {
+        this.path = path;
+        this.maxEntries = maxEntries;
+        this.index = index;
+        this.flusher = new WriteBehindFlusher("names", flushIntervalMs, this::save);
+    }
+
+    /**
+     * Records that {@code uuid} was seen using {@code username} just now.
+     */
+    public void record(UUID uuid, String username) {
+        if (uuid == null || username == null || username.isEmpty() || username.indexOf('\t') >= 0 || username.indexOf('\n') >= 0) {
+            return;
+        }
+        ensureLoaded();
+
+        long now = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            Entry previous = byUuid.get(uuid);
+            if (previous != null && previous.username().equals(username) && now - previous.lastSeen() < TOUCH_INTERVAL_MS) {
+                return;
+            }
+            put(uuid, new Entry(username, now));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        flusher.markDirty();
+    }
+
+    /**
+     * @return last known username, or null if the player was never seen
+     */
+    public String getName(UUID uuid) {
+        Entry entry = getEntry(uuid);
+        return entry != null ? entry.username() : null;
+    }
+
+    public Entry getEntry(UUID uuid) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return byUuid.get(uuid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Case-insensitive exact lookup of the UUID last seen with {@code username}.
+     */
+    public UUID findByName(String username) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return byName.get(username.toLowerCase(Locale.ROOT));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Prefix search over known usernames, see {@link UsernameIndex#search}.
+     */
+    public List<UsernameIndex.Match> search(String prefix, int limit) {
+        ensureLoaded();
+        return index.search(prefix, limit);
+    }
+
+    /**
+     * @return UUIDs of all known players whose name starts with {@code prefix}
+     */
+    public Set<UUID> searchUuids(String prefix) {
+        ensureLoaded();
+        return index.searchUuids(prefix);
+    }
+
+    public int size() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return byUuid.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return how often the file has been written
+     */
+    public long getFlushCount() {
+        return flusher.getFlushCount();
+    }
+
+    public void shutdown() {
+        flusher.shutdown();
+    }
+
+    /**
+     * Puts an entry at the most-recent end and evicts beyond the cap. Caller holds the write lock.
+     */
+    private void put(UUID uuid, Entry entry) {
+        Entry previous = byUuid.remove(uuid);
+        if (previous != null) {
+            byName.remove(previous.username().toLowerCase(Locale.ROOT), uuid);
+            index.remove(uuid, previous.username());
+        }
+        byUuid.put(uuid, entry);
+        byName.put(entry.username().toLowerCase(Locale.ROOT), uuid);
+        index.add(uuid, entry.username());
+
+        Iterator<Map.Entry<UUID, Entry>> oldest = byUuid.entrySet().iterator();
+        while (byUuid.size() > maxEntries && oldest.hasNext()) {
+            Map.Entry<UUID, Entry> evicted = oldest.next();
+            oldest.remove();
+            byName.remove(evicted.getValue().username().toLowerCase(Locale.ROOT), evicted.getKey());
+            index.remove(evicted.getKey(), evicted.getValue().username());
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                load();
+                loaded = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        List<Map.Entry<UUID, Entry>> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length < 3) {
+                    continue;
+                }
+                try {
+                    entries.add(Map.entry(UUID.fromString(parts[0]), new Entry(parts[1], Long.parseLong(parts[2]))));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping malformed entry in " + path + ": " + line);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to load " + path + ": " + e.getMessage());
+        }
+
+        // The file is written in last-seen order, but don't rely on hand-edited files being sorted
+        entries.sort((a, b) -> Long.compare(a.getValue().lastSeen(), b.getValue().lastSeen()));
+        for (Map.Entry<UUID, Entry> entry : entries) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException if the file can't be written, so the flusher keeps it dirty and retries
+     */
+    private void save() {
+        List<Map.Entry<UUID, Entry>> entries;
+        lock.readLock().lock();
+        try {
+            entries = new ArrayList<>(byUuid.entrySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Path temp = AtomicFiles.tempFor(path);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<UUID, Entry> entry : entries) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue().username() + "\t" + entry.getValue().lastSeen());
+                    writer.newLine();
+                }
+            }
+            AtomicFiles.replace(temp, path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public record Entry(String username, long lastSeen) {
+    }
+}
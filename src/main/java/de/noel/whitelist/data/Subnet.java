@@ -0,0 +1,216 @@
+package de.noel.whitelist.data;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * An IPv4 or IPv6 address prefix. Both families share one 128-bit space - IPv4 addresses are
+ * stored as IPv4-mapped IPv6 addresses ({@code ::ffff:a.b.c.d}) - so a single index covers both.
+ * Bits past {@code length} are always zero.
+ *
+ * @param high   first 64 address bits
+ * @param low    last 64 address bits
+ * @param length prefix length in the 128-bit space, i.e. 96 more than the IPv4 prefix length
+ */
+public record Subnet(long high, long low, int length) implements Comparable<Subnet> {
+    // Bits 64-95 of an IPv4-mapped address; an IPv4 prefix has high == 0 and these bits in low
+    static final long V4_MAPPED = 0xFFFFL << 32;
+    static final int V4_OFFSET = 96;
+
+    public Subnet {
+        if (length < 0 || length > 128) {
+            throw new IllegalArgumentException("Prefix length out of range: " + length);
+        }
+        high = maskHigh(high, length);
+        low = maskLow(low, length);
+    }
+
+    /**
+     * @param address 4 or 16 bytes as returned by {@link #parseAddress(String)}
+     * @param length  prefix length within the address family, e.g. 24 for an IPv4 /24
+     */
+    public static Subnet of(byte[] address, int length) {
+        if (address.length == 4) {
+            long v4 = ((address[0] & 0xffL) << 24) | ((address[1] & 0xffL) << 16) | ((address[2] & 0xffL) << 8) | (address[3] & 0xffL);
+            return new Subnet(0, V4_MAPPED | v4, V4_OFFSET + length);
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (address[i] & 0xff);
+            low = (low << 8) | (address[i + 8] & 0xff);
+        }
+        return new Subnet(high, low, length);
+    }
+
+    /**
+     * Parses {@code 10.0.3.0/24}, {@code 2001:db8::/32} or a single address (a /32 or /128).
+     *
+     * @throws IllegalArgumentException if it is not an IP literal with a valid prefix length
+     */
+    public static Subnet parse(String text) {
+        String trimmed = text.trim();
+        int slash = trimmed.indexOf('/');
+        byte[] address = parseAddress(slash < 0 ? trimmed : trimmed.substring(0, slash));
+        if (address == null) {
+            throw new IllegalArgumentException("Not an IP address: " + text);
+        }
+        int bits = address.length * 8;
+        int length = bits;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(trimmed.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + text);
+            }
+            if (length < 0 || length > bits) {
+                throw new IllegalArgumentException("Invalid prefix length: " + text);
+            }
+        }
+        return of(address, length);
+    }
+
+    /**
+     * Parses an IPv4 or IPv6 literal without ever resolving a host name.
+     *
+     * @return 4 or 16 bytes, or null for anything else (host names, "unknown", IPv4 with leading zeros)
+     */
+    public static byte[] parseAddress(String address) {
+        if (address == null || address.isEmpty()) {
+            return null;
+        }
+
+        if (address.indexOf(':') < 0) {
+            String[] parts = address.split("\\.", -1);
+            if (parts.length != 4) {
+                return null;
+            }
+            byte[] bytes = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                String part = parts[i];
+                if (part.isEmpty() || part.length() > 3 || (part.length() > 1 && part.charAt(0) == '0')) {
+                    return null;
+                }
+                int value = 0;
+                for (int c = 0; c < part.length(); c++) {
+                    char ch = part.charAt(c);
+                    if (ch < '0' || ch > '9') {
+                        return null;
+                    }
+                    value = value * 10 + (ch - '0');
+                }
+                if (value > 255) {
+                    return null;
+                }
+                bytes[i] = (byte) value;
+            }
+            return bytes;
+        }
+
+        // Only hex digits and colons - InetAddress then parses a literal and never resolves a name
+        for (int i = 0; i < address.length(); i++) {
+            char ch = address.charAt(i);
+            if (ch != ':' && Character.digit(ch, 16) < 0) {
+                return null;
+            }
+        }
+        try {
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    public boolean isV4() {
+        return length >= V4_OFFSET && high == 0 && (low & 0xFFFFFFFF00000000L) == V4_MAPPED;
+    }
+
+    /**
+     * @return the prefix length within the address family, e.g. 24 for an IPv4 /24
+     */
+    public int prefixLength() {
+        return isV4() ? length - V4_OFFSET : length;
+    }
+
+    public boolean contains(long high, long low) {
+        return maskHigh(high, length) == this.high && maskLow(low, length) == this.low;
+    }
+
+    public boolean contains(Subnet other) {
+        return other.length >= length && contains(other.high, other.low);
+    }
+
+    /**
+     * @return this prefix cut to {@code length} bits of the 128-bit space
+     */
+    public Subnet truncate(int length) {
+        return length >= this.length ? this : new Subnet(high, low, length);
+    }
+
+    @Override
+    public int compareTo(Subnet other) {
+        int result = Long.compareUnsigned(high, other.high);
+        if (result == 0) {
+            result = Long.compareUnsigned(low, other.low);
+        }
+        return result != 0 ? result : Integer.compare(length, other.length);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(43);
+        if (isV4()) {
+            int v4 = (int) low;
+            text.append(v4 >>> 24).append('.').append((v4 >>> 16) & 0xff).append('.')
+                .append((v4 >>> 8) & 0xff).append('.').append(v4 & 0xff);
+        } else {
+            int[] groups = new int[8];
+            for (int i = 0; i < 4; i++) {
+                groups[i] = (int) (high >>> (48 - i * 16)) & 0xffff;
+                groups[i + 4] = (int) (low >>> (48 - i * 16)) & 0xffff;
+            }
+
+            // The longest run of at least two zero groups becomes "::"
+            int bestStart = -1;
+            int bestLength = 1;
+            for (int i = 0; i < 8; i++) {
+                int end = i;
+                while (end < 8 && groups[end] == 0) {
+                    end++;
+                }
+                if (end - i > bestLength) {
+                    bestStart = i;
+                    bestLength = end - i;
+                }
+                i = end > i ? end - 1 : i;
+            }
+
+            for (int i = 0; i < 8; i++) {
+                if (i == bestStart) {
+                    text.append("::");
+                    i += bestLength - 1;
+                    continue;
+                }
+                if (i > 0 && i != bestStart + bestLength) {
+                    text.append(':');
+                }
+                text.append(Integer.toHexString(groups[i]));
+            }
+        }
+        return text.append('/').append(prefixLength()).toString();
+    }
+
+    static long maskHigh(long high, int length) {
+        if (length >= 64) {
+            return high;
+        }
+        return length <= 0 ? 0 : high & (-1L << (64 - length));
+    }
+
+    static long maskLow(long low, int length) {
+        if (length <= 64) {
+            return 0;
+        }
+        return length >= 128 ? low : low & (-1L << (128 - length));
+    }
+}
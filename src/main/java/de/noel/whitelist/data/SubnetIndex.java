@@ -0,0 +1,250 @@
+package de.noel.whitelist.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Path-compressed binary trie (radix trie) of UUIDs by IP address, in the 128-bit space of
+ * {@link Subnet}. Every node keeps the number of entries below it, so grouping by /24 or /64
+ * stops at the first node of that depth instead of visiting the entries, and a subnet's entries
+ * are one descent plus a walk over just that subtree.
+ * <p>
+ * Not thread-safe; {@link ConnectionAttemptManager} only touches it under its lock.
+ */
+public class SubnetIndex {
+
+    /**
+     * @param count entries whose address lies in {@code subnet}
+     */
+    public record Group(Subnet subnet, int count) {
+    }
+
+    private static final class Node {
+        final long high;
+        final long low;
+        final int length;
+        // Inner nodes always have both children, leaves (length 128) neither
+        Node zero;
+        Node one;
+        int count;
+        Set<UUID> uuids; // leaves only
+
+        Node(long high, long low, int length) {
+            this.high = Subnet.maskHigh(high, length);
+            this.low = Subnet.maskLow(low, length);
+            this.length = length;
+        }
+    }
+
+    private Node root;
+
+    /**
+     * @param address a full address, i.e. a {@link Subnet} of length 128
+     */
+    public void add(Subnet address, UUID uuid) {
+        long high = address.high();
+        long low = address.low();
+        Node parent = null;
+        Node node = root;
+        while (node != null) {
+            int common = commonPrefix(node.high, node.low, high, low, node.length);
+            if (common < node.length) {
+                // Diverges inside this node's prefix - a new inner node takes its place
+                Node inner = new Node(high, low, common);
+                Node leaf = leaf(high, low, uuid);
+                if (bit(high, low, common) == 0) {
+                    inner.zero = leaf;
+                    inner.one = node;
+                } else {
+                    inner.zero = node;
+                    inner.one = leaf;
+                }
+                inner.count = node.count + 1;
+                replace(parent, node, inner);
+                return;
+            }
+
+            node.count++;
+            if (node.length == 128) {
+                node.uuids.add(uuid);
+                return;
+            }
+            parent = node;
+            node = bit(high, low, node.length) == 0 ? node.zero : node.one;
+        }
+        root = leaf(high, low, uuid);
+    }
+
+    /**
+     * @return whether {@code uuid} was indexed under {@code address}
+     */
+    public boolean remove(Subnet address, UUID uuid) {
+        long high = address.high();
+        long low = address.low();
+        Node node = root;
+        while (node != null && node.length < 128) {
+            if (commonPrefix(node.high, node.low, high, low, node.length) < node.length) {
+                return false;
+            }
+            node = bit(high, low, node.length) == 0 ? node.zero : node.one;
+        }
+        if (node == null || node.high != high || node.low != low || !node.uuids.remove(uuid)) {
+            return false;
+        }
+
+        // Same path again, now that the entry is known to exist
+        Node grandparent = null;
+        Node parent = null;
+        node = root;
+        while (true) {
+            node.count--;
+            if (node.length == 128) {
+                break;
+            }
+            grandparent = parent;
+            parent = node;
+            node = bit(high, low, node.length) == 0 ? node.zero : node.one;
+        }
+
+        // An empty leaf goes, and its parent is left with one child - which then takes the parent's place
+        if (node.count == 0) {
+            if (parent == null) {
+                root = null;
+            } else {
+                replace(grandparent, parent, parent.zero == node ? parent.one : parent.zero);
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    public int size() {
+        return root != null ? root.count : 0;
+    }
+
+    /**
+     * @return all UUIDs with an address in {@code subnet}. An IPv6 subnet never includes IPv4 addresses,
+     *         even where it covers the IPv4-mapped range.
+     */
+    public List<UUID> collect(Subnet subnet) {
+        List<UUID> result = new ArrayList<>();
+        Node node = root;
+        while (node != null && node.length < subnet.length()) {
+            if (commonPrefix(node.high, node.low, subnet.high(), subnet.low(), node.length) < node.length) {
+                return result;
+            }
+            node = bit(subnet.high(), subnet.low(), node.length) == 0 ? node.zero : node.one;
+        }
+        if (node == null || !subnet.contains(node.high, node.low)) {
+            return result;
+        }
+
+        boolean skipV4 = !subnet.isV4();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            if (skipV4 && current.length >= Subnet.V4_OFFSET && isV4(current)) {
+                continue;
+            }
+            if (current.length == 128) {
+                result.addAll(current.uuids);
+            } else {
+                stack.push(current.one);
+                stack.push(current.zero);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the entries per IPv4 subnet of {@code v4Length} bits and IPv6 subnet of {@code v6Length} bits.
+     * Only subnets with entries are returned, in address order.
+     */
+    public List<Group> groups(int v4Length, int v6Length) {
+        List<Group> groups = new ArrayList<>();
+        if (root == null) {
+            return groups;
+        }
+
+        int v4Group = Subnet.V4_OFFSET + v4Length;
+        int lastV6 = -1;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            int groupLength = groupLength(node, v4Group, v6Length);
+            if (node.length >= groupLength) {
+                Subnet subnet = new Subnet(node.high, node.low, groupLength);
+                if (!subnet.isV4() && lastV6 >= 0 && groups.get(lastV6).subnet().equals(subnet)) {
+                    // The IPv6 subnet around the IPv4-mapped range has addresses on both sides of it
+                    groups.set(lastV6, new Group(subnet, groups.get(lastV6).count() + node.count));
+                    continue;
+                }
+                groups.add(new Group(subnet, node.count));
+                if (!subnet.isV4()) {
+                    lastV6 = groups.size() - 1;
+                }
+            } else {
+                stack.push(node.one);
+                stack.push(node.zero);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * @return the group length for the addresses below {@code node}, or 129 while that can't be told yet
+     *         (a short prefix that still covers both IPv6 and the IPv4-mapped range)
+     */
+    private static int groupLength(Node node, int v4Group, int v6Length) {
+        int checked = Math.min(node.length, Subnet.V4_OFFSET);
+        if (commonPrefix(node.high, node.low, 0, Subnet.V4_MAPPED, checked) < checked) {
+            return v6Length;
+        }
+        return node.length >= Subnet.V4_OFFSET ? v4Group : 129;
+    }
+
+    private static boolean isV4(Node node) {
+        return commonPrefix(node.high, node.low, 0, Subnet.V4_MAPPED, Subnet.V4_OFFSET) == Subnet.V4_OFFSET;
+    }
+
+    private static Node leaf(long high, long low, UUID uuid) {
+        Node leaf = new Node(high, low, 128);
+        leaf.uuids = new HashSet<>(2);
+        leaf.uuids.add(uuid);
+        leaf.count = 1;
+        return leaf;
+    }
+
+    private void replace(Node parent, Node node, Node replacement) {
+        if (parent == null) {
+            root = replacement;
+        } else if (parent.zero == node) {
+            parent.zero = replacement;
+        } else {
+            parent.one = replacement;
+        }
+    }
+
+    /**
+     * @return the number of leading bits two addresses share, at most {@code max}
+     */
+    private static int commonPrefix(long high1, long low1, long high2, long low2, int max) {
+        long diff = high1 ^ high2;
+        int common = diff != 0 ? Long.numberOfLeadingZeros(diff) : 64 + Long.numberOfLeadingZeros(low1 ^ low2);
+        return Math.min(common, max);
+    }
+
+    private static int bit(long high, long low, int index) {
+        return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+    }
+}
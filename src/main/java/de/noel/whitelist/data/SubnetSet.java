@@ -0,0 +1,70 @@
+package de.noel.whitelist.data;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Immutable set of subnets for address lookups. An address is checked with one hash lookup per
+ * distinct prefix length in its family, so a few thousand /24s cost the same as one.
+ */
+public final class SubnetSet {
+    public static final SubnetSet EMPTY = new SubnetSet(Set.of(), new int[0], new int[0]);
+
+    private final Set<Subnet> subnets;
+    // Distinct prefix lengths (in the 128-bit space) of the IPv4 and the IPv6 subnets
+    private final int[] v4Lengths;
+    private final int[] v6Lengths;
+
+    private SubnetSet(Set<Subnet> subnets, int[] v4Lengths, int[] v6Lengths) {
+        this.subnets = subnets;
+        this.v4Lengths = v4Lengths;
+        this.v6Lengths = v6Lengths;
+    }
+
+    public static SubnetSet of(Collection<Subnet> subnets) {
+        if (subnets.isEmpty()) {
+            return EMPTY;
+        }
+        return new SubnetSet(Set.copyOf(subnets), lengths(subnets, true), lengths(subnets, false));
+    }
+
+    /**
+     * @param address a full address, i.e. a {@link Subnet} of length 128
+     * @return whether a subnet of the address's family contains it
+     */
+    public boolean matches(Subnet address) {
+        for (int length : address.isV4() ? v4Lengths : v6Lengths) {
+            if (subnets.contains(address.truncate(length))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether {@code ip} is an IP literal inside one of the subnets
+     */
+    public boolean matches(String ip) {
+        if (subnets.isEmpty()) {
+            return false;
+        }
+        byte[] address = Subnet.parseAddress(ip);
+        return address != null && matches(Subnet.of(address, address.length * 8));
+    }
+
+    public boolean contains(Subnet subnet) {
+        return subnets.contains(subnet);
+    }
+
+    public boolean isEmpty() {
+        return subnets.isEmpty();
+    }
+
+    public int size() {
+        return subnets.size();
+    }
+
+    private static int[] lengths(Collection<Subnet> subnets, boolean v4) {
+        return subnets.stream().filter(subnet -> subnet.isV4() == v4).mapToInt(Subnet::length).distinct().sorted().toArray();
+    }
+}
@@ -0,0 +1,88 @@
+package de.noel.whitelist.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted index of known usernames for prefix search and type-ahead.
+ * <p>
+ * Keys are the lower-cased name followed by the UUID, so players sharing a name (or a name
+ * re-used after a rename) each keep their own entry. A prefix query is one O(log n) seek plus
+ * a walk over at most {@code limit} entries.
+ */
+public class UsernameIndex {
+    private static final char SEPARATOR = '\u0000';
+
+    private final ConcurrentSkipListMap<String, Match> entries = new ConcurrentSkipListMap<>();
+
+    public void add(UUID uuid, String username) {
+        if (uuid == null || username == null || username.isEmpty()) {
+            return;
+        }
+        entries.put(key(uuid, username), new Match(uuid, username));
+    }
+
+    public void remove(UUID uuid, String username) {
+        if (uuid == null || username == null) {
+            return;
+        }
+        entries.remove(key(uuid, username));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return up to {@code limit} names starting with {@code prefix} (case-insensitive), alphabetically
+     */
+    public List<Match> search(String prefix, int limit) {
+        if (prefix == null || prefix.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        List<Match> result = new ArrayList<>(Math.min(limit, 16));
+        for (Match match : range(prefix).values()) {
+            result.add(match);
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return UUIDs of every name starting with {@code prefix} (case-insensitive)
+     */
+    public Set<UUID> searchUuids(String prefix) {
+        Set<UUID> result = new HashSet<>();
+        if (prefix == null || prefix.isEmpty()) {
+            return result;
+        }
+        for (Map.Entry<String, Match> entry : range(prefix).entrySet()) {
+            result.add(entry.getValue().uuid());
+        }
+        return result;
+    }
+
+    private ConcurrentNavigableMap<String, Match> range(String prefix) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        // Every key with this prefix sorts before prefix + the highest char
+        return entries.subMap(from, true, from + Character.MAX_VALUE, false);
+    }
+
+    private static String key(UUID uuid, String username) {
+        return username.toLowerCase(Locale.ROOT) + SEPARATOR + uuid;
+    }
+
+    public record Match(UUID uuid, String username) {
+    }
+}
@@ -0,0 +1,398 @@
+package de.noel.whitelist.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Set of UUIDs stored as pairs of {@code long}s in one open-addressing table (linear probing),
+ * so membership checks don't allocate and a million entries take about 32 MB instead of the
+ * ~100 MB of a {@code HashSet<UUID>}.
+ * <p>
+ * {@link #sorted()} returns the members in {@link UUID#compareTo} order for paging. The sorted view is
+ * cached; after a few changes it is patched with one merge pass instead of being sorted again.
+ * <p>
+ * Not thread-safe - {@link WhitelistAccess} guards it with a lock.
+ */
+public class UuidSet {
+    private static final int MIN_CAPACITY = 16;
+
+    // Slot i holds msb at 2i and lsb at 2i + 1; all-zero marks an empty slot, so the nil UUID is kept aside
+    private long[] table;
+    private int mask;
+    private int size;
+    private boolean containsNil;
+
+    // Added or removed since the cached sorted view was built; a full rebuild is cheaper beyond a certain share
+    private long[] changed = new long[32];
+    private int changedCount;
+    private boolean rebuild = true;
+    private Sorted sorted;
+    private boolean sortedCurrent;
+
+    public UuidSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public UuidSet(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(UUID uuid) {
+        return contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean contains(long msb, long lsb) {
+        if (msb == 0 && lsb == 0) {
+            return containsNil;
+        }
+        return find(msb, lsb) >= 0;
+    }
+
+    public boolean containsAll(Iterable<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            if (!contains(uuid)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean add(UUID uuid) {
+        return add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean add(long msb, long lsb) {
+        if (msb == 0 && lsb == 0) {
+            if (containsNil) {
+                return false;
+            }
+            containsNil = true;
+        } else {
+            int slot = slotFor(msb, lsb);
+            while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                if (table[slot * 2] == msb && table[slot * 2 + 1] == lsb) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot * 2] = msb;
+            table[slot * 2 + 1] = lsb;
+        }
+        // Grow at 75% load
+        if (++size * 4L > (mask + 1) * 3L) {
+            allocate((mask + 1) * 2);
+        }
+        recordChange(msb, lsb);
+        return true;
+    }
+
+    public boolean remove(UUID uuid) {
+        return remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean remove(long msb, long lsb) {
+        if (msb == 0 && lsb == 0) {
+            if (!containsNil) {
+                return false;
+            }
+            containsNil = false;
+        } else {
+            int slot = find(msb, lsb);
+            if (slot < 0) {
+                return false;
+            }
+            shiftBack(slot);
+        }
+        size--;
+        recordChange(msb, lsb);
+        return true;
+    }
+
+    public void clear() {
+        table = null;
+        allocate(MIN_CAPACITY);
+        size = 0;
+        containsNil = false;
+        changedCount = 0;
+        rebuild = true;
+        sorted = null;
+        sortedCurrent = false;
+    }
+
+    /**
+     * @return all members in ascending {@link UUID#compareTo} order. The view is immutable and
+     *         shared until the next change.
+     */
+    public Sorted sorted() {
+        if (sortedCurrent) {
+            return sorted;
+        }
+
+        long[] pairs;
+        int count;
+        if (rebuild || sorted == null) {
+            pairs = new long[size * 2];
+            count = 0;
+            if (containsNil) {
+                count++;
+            }
+            for (int slot = 0; slot <= mask; slot++) {
+                if (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                    pairs[count * 2] = table[slot * 2];
+                    pairs[count * 2 + 1] = table[slot * 2 + 1];
+                    count++;
+                }
+            }
+            sortPairs(pairs, 0, count - 1);
+        } else {
+            sortPairs(changed, 0, changedCount - 1);
+            pairs = new long[size * 2];
+            count = merge(sorted, pairs);
+        }
+
+        changedCount = 0;
+        rebuild = false;
+        sorted = new Sorted(pairs, count);
+        sortedCurrent = true;
+        return sorted;
+    }
+
+    /**
+     * Merges the previous view with the sorted changes into {@code out}. Only entries that appear
+     * in the changes are looked up in the table, so this is a plain copy for everything else.
+     */
+    private int merge(Sorted previous, long[] out) {
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < previous.size || j < changedCount) {
+            long msb;
+            long lsb;
+            boolean keep;
+            if (j >= changedCount || (i < previous.size
+                && compare(previous.pairs[i * 2], previous.pairs[i * 2 + 1], changed[j * 2], changed[j * 2 + 1]) <= 0)) {
+                msb = previous.pairs[i * 2];
+                lsb = previous.pairs[i * 2 + 1];
+                i++;
+                // Untouched since the last view, or touched and possibly removed
+                keep = j >= changedCount || changed[j * 2] != msb || changed[j * 2 + 1] != lsb || contains(msb, lsb);
+            } else {
+                msb = changed[j * 2];
+                lsb = changed[j * 2 + 1];
+                j++;
+                keep = contains(msb, lsb);
+            }
+
+            // An entry can show up more than once - in the previous view and in the changes, or changed repeatedly
+            if (!keep || (count > 0 && out[count * 2 - 2] == msb && out[count * 2 - 1] == lsb)) {
+                continue;
+            }
+            out[count * 2] = msb;
+            out[count * 2 + 1] = lsb;
+            count++;
+        }
+        return count;
+    }
+
+    private void recordChange(long msb, long lsb) {
+        sortedCurrent = false;
+        if (rebuild) {
+            return;
+        }
+        // Beyond an eighth of the set, sorting everything again is about as cheap as merging
+        if (changedCount >= 64 && changedCount > size / 8) {
+            rebuild = true;
+            changedCount = 0;
+            return;
+        }
+        if (changedCount * 2 == changed.length) {
+            changed = Arrays.copyOf(changed, changed.length * 2);
+        }
+        changed[changedCount * 2] = msb;
+        changed[changedCount * 2 + 1] = lsb;
+        changedCount++;
+    }
+
+    private int find(long msb, long lsb) {
+        int slot = slotFor(msb, lsb);
+        while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+            if (table[slot * 2] == msb && table[slot * 2 + 1] == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Empties {@code slot} and moves later entries of the same probe run back, so lookups need no tombstones.
+     */
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (table[next * 2] != 0 || table[next * 2 + 1] != 0) {
+            int home = slotFor(table[next * 2], table[next * 2 + 1]);
+            // Move the entry unless its home lies cyclically in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap * 2] = table[next * 2];
+                table[gap * 2 + 1] = table[next * 2 + 1];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap * 2] = 0;
+        table[gap * 2 + 1] = 0;
+    }
+
+    private void allocate(int capacity) {
+        long[] old = table;
+        table = new long[capacity * 2];
+        mask = capacity - 1;
+        if (old == null) {
+            return;
+        }
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != 0 || old[i + 1] != 0) {
+                int slot = slotFor(old[i], old[i + 1]);
+                while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot * 2] = old[i];
+                table[slot * 2 + 1] = old[i + 1];
+            }
+        }
+    }
+
+    private int slotFor(long msb, long lsb) {
+        // Random UUIDs are well mixed already, but name-based or sequential ones are not
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static int capacityFor(int expected) {
+        long needed = Math.max(MIN_CAPACITY, (long) expected * 4 / 3 + 1);
+        return (int) Math.min(1 << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    /**
+     * Same order as {@link UUID#compareTo}: signed comparison of the high, then the low half.
+     */
+    static int compare(long msb1, long lsb1, long msb2, long lsb2) {
+        int result = Long.compare(msb1, msb2);
+        return result != 0 ? result : Long.compare(lsb1, lsb2);
+    }
+
+    /**
+     * Quicksort of the pairs {@code from..to} (inclusive), insertion sort for short ranges.
+     */
+    private static void sortPairs(long[] a, int from, int to) {
+        while (to - from > 16) {
+            int mid = (from + to) >>> 1;
+            // Median of three as pivot
+            if (compare(a, mid, from) < 0) swap(a, mid, from);
+            if (compare(a, to, from) < 0) swap(a, to, from);
+            if (compare(a, to, mid) < 0) swap(a, to, mid);
+            long pivotMsb = a[mid * 2];
+            long pivotLsb = a[mid * 2 + 1];
+
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (compare(a[i * 2], a[i * 2 + 1], pivotMsb, pivotLsb) < 0) i++;
+                while (compare(a[j * 2], a[j * 2 + 1], pivotMsb, pivotLsb) > 0) j--;
+                if (i <= j) {
+                    swap(a, i++, j--);
+                }
+            }
+
+            // Recurse into the smaller half, loop on the larger one
+            if (j - from < to - i) {
+                sortPairs(a, from, j);
+                from = i;
+            } else {
+                sortPairs(a, i, to);
+                to = j;
+            }
+        }
+
+        for (int i = from + 1; i <= to; i++) {
+            long msb = a[i * 2];
+            long lsb = a[i * 2 + 1];
+            int j = i - 1;
+            while (j >= from && compare(a[j * 2], a[j * 2 + 1], msb, lsb) > 0) {
+                a[j * 2 + 2] = a[j * 2];
+                a[j * 2 + 3] = a[j * 2 + 1];
+                j--;
+            }
+            a[j * 2 + 2] = msb;
+            a[j * 2 + 3] = lsb;
+        }
+    }
+
+    private static int compare(long[] a, int i, int j) {
+        return compare(a[i * 2], a[i * 2 + 1], a[j * 2], a[j * 2 + 1]);
+    }
+
+    private static void swap(long[] a, int i, int j) {
+        long msb = a[i * 2];
+        long lsb = a[i * 2 + 1];
+        a[i * 2] = a[j * 2];
+        a[i * 2 + 1] = a[j * 2 + 1];
+        a[j * 2] = msb;
+        a[j * 2 + 1] = lsb;
+    }
+
+    /**
+     * Immutable sorted members; {@link #get(int)} creates the {@code UUID} only for rows that are actually shown.
+     */
+    public static final class Sorted {
+        private final long[] pairs;
+        private final int size;
+
+        private Sorted(long[] pairs, int size) {
+            this.pairs = pairs;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public UUID get(int index) {
+            return new UUID(pairs[index * 2], pairs[index * 2 + 1]);
+        }
+
+        /**
+         * @return a read-only list view, creating each {@code UUID} on access
+         */
+        public List<UUID> asList() {
+            return new AbstractList<>() {
+                @Override
+                public UUID get(int index) {
+                    Objects.checkIndex(index, size);
+                    return Sorted.this.get(index);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        public long getMostSignificantBits(int index) {
+            return pairs[index * 2];
+        }
+
+        public long getLeastSignificantBits(int index) {
+            return pairs[index * 2 + 1];
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package de.noel.whitelist.data;
+
+import de.noel.whitelist.audit.AuditLog;
+import de.noel.whitelist.metrics.Counter;
+import de.noel.whitelist.metrics.Histogram;
+import de.noel.whitelist.metrics.Metrics;
+import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * All of the plugin's access to the server whitelist goes through here, so every
+ * {@code modify} and {@code syncSave} call is counted and timed.
+ * <p>
+ * Membership is mirrored in a {@link UuidSet}, updated with the delta of every {@code modify} while the
+ * provider still holds its lock, so the mirror sees changes in the provider's order. The UI reads the
+ * mirror instead of copying and sorting the provider's set on every render.
+ * Changes made past the plugin (e.g. the server's own whitelist command) are picked up by {@link #resync()}.
+ * Every change names its actor, which goes to the {@link AuditLog} together with the delta.
+ */
+public class WhitelistAccess {
+    private final HytaleWhitelistProvider provider;
+    private final Histogram modifyTimer;
+    private final Histogram saveTimer;
+    private final Counter changes;
+
+    // Guards the mirror; version is bumped under the write lock on every change
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private UuidSet members = new UuidSet();
+    private volatile long version;
+    private volatile Snapshot cached;
+
+    // Notified after every membership change, outside the lock - e.g. open /wl pages
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // Null unless changes are shared with other servers
+    private volatile ChangePublisher publisher;
+
+    // Null when the audit log is disabled
+    private volatile AuditLog auditLog;
+
+    public WhitelistAccess(HytaleWhitelistProvider provider, Metrics metrics) {
+        this.provider = provider;
+        this.modifyTimer = metrics.histogram("whitelist_modify_seconds", "Duration of whitelist modify calls, including the save they trigger");
+        this.saveTimer = metrics.histogram("whitelist_sync_save_seconds", "Duration of explicit whitelist syncSave calls");
+        this.changes = metrics.counter("whitelist_changes_total", "Whitelist modify calls that changed the list");
+        metrics.gauge("whitelist_members", "Number of whitelisted UUIDs", this::size);
+        resync();
+    }
+
+    public boolean isEnabled() {
+        return provider.isEnabled();
+    }
+
+    public void setEnabled(boolean enabled) {
+        provider.setEnabled(enabled);
+    }
+
+    public Set<UUID> getList() {
+        return provider.getList();
+    }
+
+    public boolean contains(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            return members.contains(uuid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return members.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return all members in UUID order. Immutable and shared between callers until the next change.
+     */
+    public UuidSet.Sorted sorted() {
+        Snapshot current = cached;
+        if (current != null && current.version() == version) {
+            return current.members();
+        }
+
+        // Building the view updates the set's internal cache, so it needs the write lock
+        lock.writeLock().lock();
+        try {
+            current = new Snapshot(version, members.sorted());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        cached = current;
+        return current.members();
+    }
+
+    /**
+     * Compares the mirror with the provider and rebuilds it if they differ.
+     *
+     * @return whether the mirror was out of date
+     */
+    public boolean resync() {
+        List<UUID> added = new ArrayList<>();
+        List<UUID> removed = new ArrayList<>();
+        boolean[] outdated = new boolean[1];
+        // Read inside modify for the provider's lock, so no other change can run between reading and swapping.
+        // Returning false leaves the list unsaved.
+        provider.modify(list -> {
+            lock.readLock().lock();
+            try {
+                if (list.size() == members.size() && members.containsAll(list)) {
+                    return false;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            UuidSet rebuilt = new UuidSet(list.size());
+            for (UUID uuid : list) {
+                rebuilt.add(uuid);
+            }
+            UuidSet previous;
+            lock.writeLock().lock();
+            try {
+                previous = members;
+                members = rebuilt;
+                version++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            for (UUID uuid : list) {
+                if (!previous.contains(uuid)) {
+                    added.add(uuid);
+                }
+            }
+            for (UUID uuid : previous.sorted().asList()) {
+                if (!rebuilt.contains(uuid)) {
+                    removed.add(uuid);
+                }
+            }
+            outdated[0] = true;
+            return false;
+        });
+        if (!outdated[0]) {
+            return false;
+        }
+
+        AuditLog audit = auditLog;
+        if (audit != null) {
+            // Nobody to attribute these to, but they still belong in the history
+            audit.whitelistChanged("external", added, removed);
+        }
+        notifyListeners();
+        return true;
+    }
+
+    /**
+     * Registers {@code listener} to run after every membership change, including changes from
+     * other servers and {@link #resync()}. It runs on the changing thread, outside of any lock.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    public void setPublisher(ChangePublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    /**
+     * @param actor who made the change, for the audit log - a player name, or e.g. {@code "expiry"}
+     * @see HytaleWhitelistProvider#modify
+     */
+    public boolean modify(String actor, Function<Set<UUID>, Boolean> change) {
+        return modify(actor, change, publisher);
+    }
+
+    /**
+     * Applies a change that came from another server - it is not published again.
+     */
+    public boolean modifyRemote(String actor, Function<Set<UUID>, Boolean> change) {
+        return modify(actor, change, null);
+    }
+
+    private boolean modify(String actor, Function<Set<UUID>, Boolean> change, ChangePublisher publishTo) {
+        // Record what the change actually added and removed, for the mirror and other servers
+        TrackingSet[] tracked = new TrackingSet[1];
+        long start = System.nanoTime();
+        boolean changed = provider.modify(list -> {
+            tracked[0] = new TrackingSet(list);
+            try {
+                return change.apply(tracked[0]);
+            } finally {
+                // Still under the provider's lock: two changes reach the mirror in the order they hit the list
+                updateMirror(tracked[0]);
+            }
+        });
+        modifyTimer.recordSince(start);
+        if (changed) {
+            changes.increment();
+        }
+
+        TrackingSet delta = tracked[0];
+        if (delta == null || (delta.added.isEmpty() && delta.removed.isEmpty())) {
+            return changed;
+        }
+
+        if (publishTo != null) {
+            publishTo.whitelistChanged(delta.added, delta.removed);
+        }
+        AuditLog audit = auditLog;
+        if (audit != null) {
+            audit.whitelistChanged(actor, delta.added, delta.removed);
+        }
+        notifyListeners();
+        return changed;
+    }
+
+    private void updateMirror(TrackingSet delta) {
+        if (delta.added.isEmpty() && delta.removed.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (UUID uuid : delta.removed) {
+                members.remove(uuid);
+            }
+            for (UUID uuid : delta.added) {
+                members.add(uuid);
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void syncSave() {
+        long start = System.nanoTime();
+        provider.syncSave();
+        saveTimer.recordSince(start);
+    }
+
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                System.err.println("Whitelist listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private record Snapshot(long version, UuidSet.Sorted members) {
+    }
+
+    /**
+     * View of the provider's set that remembers which UUIDs were really added or removed.
+     */
+    private static class TrackingSet extends AbstractSet<UUID> {
+        private final Set<UUID> delegate;
+        private final Set<UUID> added = new HashSet<>();
+        private final Set<UUID> removed = new HashSet<>();
+
+        TrackingSet(Set<UUID> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean add(UUID uuid) {
+            if (!delegate.add(uuid)) {
+                return false;
+            }
+            if (!removed.remove(uuid)) {
+                added.add(uuid);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof UUID uuid) || !delegate.remove(uuid)) {
+                return false;
+            }
+            if (!added.remove(uuid)) {
+                removed.add(uuid);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return delegate.contains(o);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public Iterator<UUID> iterator() {
+            Iterator<UUID> it = delegate.iterator();
+            return new Iterator<>() {
+                private UUID last;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public UUID next() {
+                    last = it.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                    if (!added.remove(last)) {
+                        removed.add(last);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package de.noel.whitelist.data;
+
+import de.noel.whitelist.metrics.Counter;
+import de.noel.whitelist.metrics.Metrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time-limited whitelist entries. All deadlines sit in one hashed timer wheel that a single
+ * background thread advances once per tick, so tens of thousands of entries cost one task,
+ * not one scheduled task each.
+ * <p>
+ * Entries due in the same tick are removed with a single {@code modify}, i.e. one whitelist save.
+ * Deadlines are stored as one {@code uuid<TAB>expiresAt} line per entry and rewritten by a
+ * write-behind flusher; entries that expired while the server was down are removed on the first tick.
+ */
+public class WhitelistExpiry {
+    // Power of two; with 1 s ticks one round of the wheel is about 8.5 minutes
+    private static final int WHEEL_SLOTS = 512;
+
+    private final Path path;
+    private final WhitelistAccess whitelist;
+    private final long tickMs;
+    private final WriteBehindFlusher flusher;
+    private final ScheduledExecutorService executor;
+    private final Counter expired;
+
+    // Everything below is guarded by this
+    private final Map<UUID, Deadline> deadlines = new HashMap<>();
+    private final List<Set<UUID>> wheel = new ArrayList<>(WHEEL_SLOTS);
+    private long lastTick;
+
+    public WhitelistExpiry(Path path, WhitelistAccess whitelist, long tickMs, Metrics metrics) {
+        this.path = path;
+        this.whitelist = whitelist;
+        this.tickMs = tickMs;
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel.add(new HashSet<>());
+        }
+
+        this.expired = metrics.counter("whitelist_expired_total", "Time-limited whitelist entries removed on expiry");
+        metrics.gauge("whitelist_expiring_entries", "Whitelist entries with an expiry date", this::size);
+
+        synchronized (this) {
+            lastTick = System.currentTimeMillis() / tickMs;
+            load();
+        }
+
+        this.flusher = new WriteBehindFlusher("expiry", tickMs, this::save);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Whitelist-Expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Makes {@code uuid}'s whitelist entry expire at {@code expiresAt}, replacing an earlier deadline.
+     * Does not add the player itself.
+     */
+    public void expireAt(UUID uuid, long expiresAt) {
+        synchronized (this) {
+            unschedule(uuid);
+            schedule(uuid, expiresAt);
+        }
+        flusher.markDirty();
+    }
+
+    /**
+     * Makes {@code uuid}'s entry permanent again, e.g. when it is re-added without a duration or removed by hand.
+     *
+     * @return whether the entry had an expiry
+     */
+    public boolean cancel(UUID uuid) {
+        boolean removed;
+        synchronized (this) {
+            removed = unschedule(uuid);
+        }
+        if (removed) {
+            flusher.markDirty();
+        }
+        return removed;
+    }
+
+    /**
+     * @return when {@code uuid}'s entry expires, or null if it doesn't
+     */
+    public synchronized Long getExpiry(UUID uuid) {
+        Deadline deadline = deadlines.get(uuid);
+        return deadline != null ? deadline.expiresAt() : null;
+    }
+
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher.shutdown();
+    }
+
+    /**
+     * Advances the wheel to now and removes every entry that came due, in one {@code modify}.
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        List<UUID> due = new ArrayList<>();
+        synchronized (this) {
+            long nowTick = now / tickMs;
+            // After a long pause, one pass over all slots covers everything
+            long from = Math.max(lastTick + 1, nowTick - WHEEL_SLOTS + 1);
+            for (long tick = from; tick <= nowTick; tick++) {
+                Iterator<UUID> it = wheel.get(slotOf(tick)).iterator();
+                while (it.hasNext()) {
+                    UUID uuid = it.next();
+                    // Entries of later rounds share the slot and stay
+                    if (deadlines.get(uuid).expiresAt() <= now) {
+                        it.remove();
+                        deadlines.remove(uuid);
+                        due.add(uuid);
+                    }
+                }
+            }
+            lastTick = nowTick;
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+
+        try {
+            whitelist.modify("expiry", list -> {
+                boolean changed = false;
+                for (UUID uuid : due) {
+                    changed |= list.remove(uuid);
+                }
+                return changed;
+            });
+            expired.add(due.size());
+        } catch (RuntimeException e) {
+            System.err.println("Failed to remove " + due.size() + " expired whitelist entries: " + e.getMessage());
+        }
+        flusher.markDirty();
+    }
+
+    /**
+     * Puts the entry into the slot of its deadline tick - or the next tick if that has passed. Caller holds the monitor.
+     */
+    private void schedule(UUID uuid, long expiresAt) {
+        int slot = slotOf(Math.max(expiresAt / tickMs, lastTick + 1));
+        deadlines.put(uuid, new Deadline(expiresAt, slot));
+        wheel.get(slot).add(uuid);
+    }
+
+    /**
+     * Caller holds the monitor.
+     */
+    private boolean unschedule(UUID uuid) {
+        Deadline previous = deadlines.remove(uuid);
+        if (previous == null) {
+            return false;
+        }
+        wheel.get(previous.slot()).remove(uuid);
+        return true;
+    }
+
+    private int slotOf(long tick) {
+        return (int) (tick & (WHEEL_SLOTS - 1));
+    }
+
+    private void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length < 2) {
+                    continue;
+                }
+                try {
+                    UUID uuid = UUID.fromString(parts[0]);
+                    schedule(uuid, Long.parseLong(parts[1]));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping malformed entry in " + path + ": " + line);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to load " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException if the file can't be written, so the flusher keeps it dirty and retries
+     */
+    private void save() {
+        List<Map.Entry<UUID, Deadline>> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(deadlines.entrySet());
+        }
+
+        Path temp = AtomicFiles.tempFor(path);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<UUID, Deadline> entry : entries) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue().expiresAt());
+                    writer.newLine();
+                }
+            }
+            AtomicFiles.replace(temp, path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses durations like {@code 30m}, {@code 12h}, {@code 7d}, {@code 2w} or combinations such as {@code 1d12h}.
+     *
+     * @return the duration in milliseconds, 0 for an empty string (= permanent), or -1 if invalid
+     */
+    public static long parseDuration(String text) {
+        String value = text == null ? "" : text.trim().toLowerCase(Locale.ROOT).replace(" ", "");
+        if (value.isEmpty()) {
+            return 0;
+        }
+
+        long total = 0;
+        long number = -1;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                number = (number < 0 ? 0 : number) * 10 + (c - '0');
+                if (number > 1_000_000) {
+                    return -1;
+                }
+                continue;
+            }
+
+            long unit = switch (c) {
+                case 'm' -> 60_000L;
+                case 'h' -> 3_600_000L;
+                case 'd' -> 86_400_000L;
+                case 'w' -> 604_800_000L;
+                default -> -1;
+            };
+            if (unit < 0 || number < 0) {
+                return -1;
+            }
+            total += number * unit;
+            number = -1;
+        }
+        // A trailing number without unit is not allowed
+        return number >= 0 || total == 0 ? -1 : total;
+    }
+
+    /**
+     * Counterpart of {@link ConnectionAttempt#formatAgo} for a point in the future.
+     */
+    public static String formatIn(long timestamp) {
+        long seconds = Math.max(0, (timestamp - System.currentTimeMillis()) / 1000);
+        if (seconds < 60) return "in " + seconds + "s";
+        long minutes = seconds / 60;
+        if (minutes < 60) return "in " + minutes + "m";
+        long hours = minutes / 60;
+        if (hours < 24) return "in " + hours + "h";
+        long days = hours / 24;
+        return "in " + days + "d";
+    }
+
+    private record Deadline(long expiresAt, int slot) {
+    }
+}
@@ -0,0 +1,271 @@
+package de.noel.whitelist.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Bulk import and export of whitelist UUIDs as CSV or JSON lines, for files in the server directory.
+ * <p>
+ * Imports are streamed line by line and applied in chunks. Every chunk is one {@code modify} call
+ * that reports "no change", so the provider only saves once - on the final call, if anything was added.
+ */
+public class WhitelistTransfer {
+    public static final int CHUNK_SIZE = 5000;
+
+    // Line numbers of invalid lines listed in the summary
+    private static final int MAX_REPORTED_INVALID = 5;
+
+    private final Path baseDir;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public WhitelistTransfer(Path baseDir) {
+        this.baseDir = baseDir.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Resolves a file name against the server directory.
+     *
+     * @throws IllegalArgumentException if the file lies outside of it or has an unsupported extension
+     */
+    public Path resolve(String fileName) throws IOException {
+        Path path = baseDir.resolve(fileName).normalize();
+        if (!path.startsWith(baseDir)) {
+            throw new IllegalArgumentException("File must be inside the server directory");
+        }
+        if (!isJsonLines(path) && !path.getFileName().toString().toLowerCase(Locale.ROOT).matches(".*\\.(csv|txt)")) {
+            throw new IllegalArgumentException("Unsupported file type, use .csv, .txt or .jsonl");
+        }
+
+        // Symlinks must not lead out of the server directory either
+        Path existing = Files.exists(path) ? path : path.getParent();
+        if (existing != null && Files.exists(existing) && !existing.toRealPath().startsWith(baseDir.toRealPath())) {
+            throw new IllegalArgumentException("File must be inside the server directory");
+        }
+        return path;
+    }
+
+    /**
+     * Runs {@code task} on a background thread unless another import or export is still running.
+     */
+    public boolean start(String name, Runnable task) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } finally {
+                running.set(false);
+            }
+        }, "Whitelist-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * @param actor who started the import, for the audit log
+     */
+    public ImportResult importFile(Path path, WhitelistAccess whitelist, String actor, Consumer<String> progress) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            throw new NoSuchFileException(path.getFileName().toString());
+        }
+
+        boolean jsonLines = isJsonLines(path);
+        ImportResult result = new ImportResult();
+        Set<UUID> seen = new HashSet<>();
+        List<UUID> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                result.lines++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                UUID uuid = jsonLines ? parseJsonLine(line) : parseCsvLine(line);
+                if (uuid == null) {
+                    // A CSV header is not an error
+                    if (!jsonLines && result.lines == 1 && line.toLowerCase(Locale.ROOT).startsWith("uuid")) {
+                        continue;
+                    }
+                    result.invalid++;
+                    if (result.invalidLines.size() < MAX_REPORTED_INVALID) {
+                        result.invalidLines.add(result.lines);
+                    }
+                    continue;
+                }
+
+                if (!seen.add(uuid)) {
+                    result.duplicatesInFile++;
+                    continue;
+                }
+
+                chunk.add(uuid);
+                if (chunk.size() >= CHUNK_SIZE) {
+                    apply(whitelist, actor, chunk, result, false);
+                    progress.accept("Processed " + result.lines + " lines, " + result.added + " added so far...");
+                }
+            }
+        }
+
+        // Last chunk (possibly empty) lets the provider save once for the whole import
+        apply(whitelist, actor, chunk, result, true);
+        return result;
+    }
+
+    private void apply(WhitelistAccess whitelist, String actor, List<UUID> chunk, ImportResult result, boolean last) {
+        whitelist.modify(actor, list -> {
+            for (UUID uuid : chunk) {
+                if (list.add(uuid)) {
+                    result.added++;
+                } else {
+                    result.alreadyWhitelisted++;
+                }
+            }
+            return last && result.added > 0;
+        });
+        chunk.clear();
+    }
+
+    /**
+     * Writes all whitelisted UUIDs, sorted, with their last known name where the directory has one.
+     *
+     * @return the number of entries written
+     */
+    public int exportFile(Path path, WhitelistAccess whitelist, PlayerNameDirectory names) throws IOException {
+        whitelist.resync();
+        List<UUID> uuids = whitelist.sorted().asList();
+
+        boolean jsonLines = isJsonLines(path);
+        Path temp = AtomicFiles.tempFor(path);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            if (!jsonLines) {
+                writer.write("uuid,name");
+                writer.newLine();
+            }
+
+            for (UUID uuid : uuids) {
+                String name = names.getName(uuid);
+                if (jsonLines) {
+                    JsonObject obj = new JsonObject();
+                    obj.addProperty("uuid", uuid.toString());
+                    if (name != null) {
+                        obj.addProperty("name", name);
+                    }
+                    writer.write(obj.toString());
+                } else {
+                    writer.write(uuid.toString());
+                    writer.write(',');
+                    writer.write(name != null ? name : "");
+                }
+                writer.newLine();
+            }
+        }
+        AtomicFiles.replace(temp, path);
+        return uuids.size();
+    }
+
+    /**
+     * First column is the UUID; anything after it (e.g. a name) is ignored.
+     */
+    private static UUID parseCsvLine(String line) {
+        int comma = line.indexOf(',');
+        String field = (comma >= 0 ? line.substring(0, comma) : line).trim();
+        if (field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")) {
+            field = field.substring(1, field.length() - 1);
+        }
+        return parseUuid(field);
+    }
+
+    /**
+     * Either an object with a {@code uuid} field or a bare JSON string.
+     */
+    private static UUID parseJsonLine(String line) {
+        try {
+            JsonElement element = JsonParser.parseString(line);
+            if (element.isJsonObject()) {
+                JsonElement uuid = element.getAsJsonObject().get("uuid");
+                return uuid != null && uuid.isJsonPrimitive() ? parseUuid(uuid.getAsString()) : null;
+            }
+            if (element.isJsonPrimitive()) {
+                return parseUuid(element.getAsString());
+            }
+        } catch (JsonParseException | IllegalStateException e) {
+            // Invalid line, counted by the caller
+        }
+        return null;
+    }
+
+    private static UUID parseUuid(String value) {
+        // UUID.fromString accepts shortened groups like "1-2-3-4-5", so require the canonical length
+        if (value.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isJsonLines(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".jsonl");
+    }
+
+    public static class ImportResult {
+        private int lines;
+        private int added;
+        private int alreadyWhitelisted;
+        private int duplicatesInFile;
+        private int invalid;
+        private final List<Integer> invalidLines = new ArrayList<>();
+
+        public int getLines() {
+            return lines;
+        }
+
+        public int getAdded() {
+            return added;
+        }
+
+        public int getAlreadyWhitelisted() {
+            return alreadyWhitelisted;
+        }
+
+        public int getDuplicatesInFile() {
+            return duplicatesInFile;
+        }
+
+        public int getInvalid() {
+            return invalid;
+        }
+
+        /**
+         * @return the first few invalid line numbers (1-based)
+         */
+        public List<Integer> getInvalidLines() {
+            return invalidLines;
+        }
+    }
+}
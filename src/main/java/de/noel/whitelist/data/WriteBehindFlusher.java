@@ -0,0 +1,117 @@
+package de.noel.whitelist.data;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces "something changed" signals into at most one flush per interval.
+ * Callers mark the store dirty after mutating it; a single background thread runs the
+ * flush action whenever the dirty flag is set. {@link #shutdown()} forces a final flush.
+ */
+public class WriteBehindFlusher {
+    private final String name;
+    private final Runnable flushAction;
+    private final ScheduledExecutorService executor;
+    private final Object flushLock = new Object();
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicLong pendingDirty = new AtomicLong();   // mutations not yet written
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong(); // mutations covered by all flushes
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong lastFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+
+    public WriteBehindFlusher(String name, long intervalMs, Runnable flushAction) {
+        this.name = name;
+        this.flushAction = flushAction;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Whitelist-Flusher-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void markDirty() {
+        pendingDirty.incrementAndGet();
+        dirty.set(true);
+    }
+
+    /**
+     * Runs the flush action now if anything changed since the last flush.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            if (!dirty.getAndSet(false)) {
+                return;
+            }
+            long mutations = pendingDirty.getAndSet(0);
+
+            long start = System.nanoTime();
+            try {
+                flushAction.run();
+            } catch (RuntimeException e) {
+                // Keep the changes marked so the next tick retries
+                pendingDirty.addAndGet(mutations);
+                dirty.set(true);
+                failedCount.incrementAndGet();
+                System.err.println("Write-behind flush of " + name + " failed: " + e.getMessage());
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            flushCount.incrementAndGet();
+            coalescedCount.addAndGet(mutations);
+            lastFlushNanos.set(elapsed);
+            totalFlushNanos.addAndGet(elapsed);
+            maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    /**
+     * Stops the background thread and writes any remaining changes.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public long getPendingDirtyCount() {
+        return pendingDirty.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getLastFlushNanos() {
+        return lastFlushNanos.get();
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos.get();
+    }
+
+    public long getAverageFlushNanos() {
+        long count = flushCount.get();
+        return count == 0 ? 0 : totalFlushNanos.get() / count;
+    }
+}
@@ -0,0 +1,46 @@
+package de.noel.whitelist.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Monotonic count. Either incremented directly or read from an existing counter elsewhere.
+ */
+public class Counter extends Metric {
+    private final LongAdder value = new LongAdder();
+    private final LongSupplier source;
+
+    Counter(String name, String help, LongSupplier source) {
+        super(name, help);
+        this.source = source;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return source != null ? source.getAsLong() : value.sum();
+    }
+
+    @Override
+    public String getType() {
+        return "counter";
+    }
+
+    @Override
+    public void writeSamples(StringBuilder out) {
+        out.append(getName()).append(' ').append(get()).append('\n');
+    }
+
+    @Override
+    public String describe(double uptimeSeconds) {
+        long count = get();
+        String rate = uptimeSeconds > 0 ? String.format("%.2f", count / uptimeSeconds) : "0";
+        return count + " (" + rate + "/s avg)";
+    }
+}
@@ -0,0 +1,34 @@
+package de.noel.whitelist.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Current value read on demand, e.g. the size of a list.
+ */
+public class Gauge extends Metric {
+    private final LongSupplier source;
+
+    Gauge(String name, String help, LongSupplier source) {
+        super(name, help);
+        this.source = source;
+    }
+
+    public long get() {
+        return source.getAsLong();
+    }
+
+    @Override
+    public String getType() {
+        return "gauge";
+    }
+
+    @Override
+    public void writeSamples(StringBuilder out) {
+        out.append(getName()).append(' ').append(get()).append('\n');
+    }
+
+    @Override
+    public String describe(double uptimeSeconds) {
+        return String.valueOf(get());
+    }
+}
@@ -0,0 +1,107 @@
+package de.noel.whitelist.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency distribution with fixed buckets from 10 µs to 10 s. Recording is lock-free;
+ * percentiles are estimated as the upper bound of the bucket they fall into.
+ */
+public class Histogram extends Metric {
+    private static final long[] BOUNDS_NANOS = {
+        10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+        1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+        100_000_000L, 250_000_000L, 500_000_000L,
+        1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    // One slot per bound plus +Inf
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    Histogram(String name, String help) {
+        super(name, help);
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int i = 0;
+        while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        count.increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} (from {@link System#nanoTime()}).
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return upper bound of the bucket holding the {@code quantile} (0..1), in nanoseconds
+     */
+    public long estimateNanos(double quantile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= target) {
+                return BOUNDS_NANOS[i];
+            }
+        }
+        return maxNanos.get();
+    }
+
+    @Override
+    public String getType() {
+        return "histogram";
+    }
+
+    @Override
+    public void writeSamples(StringBuilder out) {
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(getName()).append("_bucket{le=\"").append(formatDouble(BOUNDS_NANOS[i] / 1e9)).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+        cumulative += buckets[BOUNDS_NANOS.length].sum();
+        out.append(getName()).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(getName()).append("_sum ").append(formatDouble(sumNanos.sum() / 1e9)).append('\n');
+        out.append(getName()).append("_count ").append(cumulative).append('\n');
+    }
+
+    @Override
+    public String describe(double uptimeSeconds) {
+        long total = count.sum();
+        if (total == 0) {
+            return "no samples";
+        }
+        return total + "x, avg " + millis(sumNanos.sum() / total)
+            + ", p50 <" + millis(estimateNanos(0.5))
+            + ", p99 <" + millis(estimateNanos(0.99))
+            + ", max " + millis(maxNanos.get());
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f ms", nanos / 1e6);
+    }
+}
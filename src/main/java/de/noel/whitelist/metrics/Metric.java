@@ -0,0 +1,44 @@
+package de.noel.whitelist.metrics;
+
+/**
+ * A named value in the {@link Metrics} registry.
+ */
+public abstract class Metric {
+    private final String name;
+    private final String help;
+
+    protected Metric(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * @return the Prometheus type: counter, gauge or histogram
+     */
+    public abstract String getType();
+
+    /**
+     * Appends the sample lines (without HELP/TYPE) in Prometheus text format.
+     */
+    public abstract void writeSamples(StringBuilder out);
+
+    /**
+     * @return a short human-readable value for {@code /wl stats}
+     */
+    public abstract String describe(double uptimeSeconds);
+
+    static String formatDouble(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+}
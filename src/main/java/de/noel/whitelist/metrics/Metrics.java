@@ -0,0 +1,71 @@
+package de.noel.whitelist.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the plugin's counters, gauges and latency histograms.
+ * Registering a name twice returns the existing metric, so components can look up what they record into.
+ */
+public class Metrics {
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+    private final long startNanos = System.nanoTime();
+
+    public Counter counter(String name, String help) {
+        return register(name, Counter.class, () -> new Counter(name, help, null));
+    }
+
+    /**
+     * A counter whose value is kept elsewhere, e.g. in the rate limiter.
+     */
+    public Counter counter(String name, String help, LongSupplier source) {
+        return register(name, Counter.class, () -> new Counter(name, help, source));
+    }
+
+    public Gauge gauge(String name, String help, LongSupplier source) {
+        return register(name, Gauge.class, () -> new Gauge(name, help, source));
+    }
+
+    public Histogram histogram(String name, String help) {
+        return register(name, Histogram.class, () -> new Histogram(name, help));
+    }
+
+    public synchronized List<Metric> getAll() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    public double getUptimeSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format (version 0.0.4)
+     */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : getAll()) {
+            out.append("# HELP ").append(metric.getName()).append(' ').append(metric.getHelp()).append('\n');
+            out.append("# TYPE ").append(metric.getName()).append(' ').append(metric.getType()).append('\n');
+            metric.writeSamples(out);
+        }
+        return out.toString();
+    }
+
+    private synchronized <T extends Metric> T register(String name, Class<T> type, Supplier<T> factory) {
+        Metric existing = metrics.get(name);
+        if (existing != null) {
+            if (!type.isInstance(existing)) {
+                throw new IllegalArgumentException("Metric " + name + " is already registered as " + existing.getType());
+            }
+            return type.cast(existing);
+        }
+
+        T metric = factory.get();
+        metrics.put(name, metric);
+        return metric;
+    }
+}
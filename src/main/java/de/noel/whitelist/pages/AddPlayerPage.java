@@ -1,6 +1,10 @@
 package de.noel.whitelist.pages;
 
 import de.noel.whitelist.WhitelistPlugin;
+import de.noel.whitelist.data.MutationExecutor;
+import de.noel.whitelist.data.UsernameIndex;
+import de.noel.whitelist.data.WhitelistAccess;
+import de.noel.whitelist.data.WhitelistExpiry;
 import com.hypixel.hytale.codec.Codec;
 import com.hypixel.hytale.codec.KeyedCodec;
 import com.hypixel.hytale.codec.builder.BuilderCodec;
@@ -11,29 +15,39 @@ import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
 import com.hypixel.hytale.server.core.Message;
 import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.entity.entities.player.pages.InteractiveCustomUIPage;
-import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
 import com.hypixel.hytale.server.core.ui.builder.EventData;
 import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 import com.hypixel.hytale.server.core.NameMatching;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
 import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEventData> {
 
+    // Number of #SuggestionN buttons in AddPlayerPage.ui
+    private static final int SUGGESTION_SLOTS = 5;
+
     // Store references for async callback navigation
     private Ref<EntityStore> currentRef;
     private Store<EntityStore> currentStore;
 
+    // Suggestions currently shown, by slot
+    private List<UsernameIndex.Match> suggestions = Collections.emptyList();
+
     public static class AddEventData {
         public String action;
         public String playerName;
         public String playerUuid;
+        public String slot;
+        public String duration;
 
-        public static final BuilderCodec<AddEventData> CODEC = ((BuilderCodec.Builder<AddEventData>) ((BuilderCodec.Builder<AddEventData>) ((BuilderCodec.Builder<AddEventData>)
+        public static final BuilderCodec<AddEventData> CODEC = ((BuilderCodec.Builder<AddEventData>) ((BuilderCodec.Builder<AddEventData>) ((BuilderCodec.Builder<AddEventData>) ((BuilderCodec.Builder<AddEventData>) ((BuilderCodec.Builder<AddEventData>)
             BuilderCodec.builder(AddEventData.class, AddEventData::new)
                 .append(new KeyedCodec<>("Action", Codec.STRING), (AddEventData o, String v) -> o.action = v, (AddEventData o) -> o.action)
                 .add())
@@ -41,6 +55,10 @@ public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEven
                 .add())
                 .append(new KeyedCodec<>("@PlayerUUID", Codec.STRING), (AddEventData o, String v) -> o.playerUuid = v, (AddEventData o) -> o.playerUuid)
                 .add())
+                .append(new KeyedCodec<>("Slot", Codec.STRING), (AddEventData o, String v) -> o.slot = v, (AddEventData o) -> o.slot)
+                .add())
+                .append(new KeyedCodec<>("@Duration", Codec.STRING), (AddEventData o, String v) -> o.duration = v, (AddEventData o) -> o.duration)
+                .add())
             .build();
     }
 
@@ -57,7 +75,7 @@ public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEven
     ) {
         commandBuilder.append("Pages/AddPlayerPage.ui");
 
-        // Bind confirm button - capture both input values
+        // Bind confirm button - capture all input values
         eventBuilder.addEventBinding(
             CustomUIEventBindingType.Activating,
             "#ConfirmButton",
@@ -65,6 +83,7 @@ public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEven
                 .append("Action", "Confirm")
                 .append("@PlayerName", "#NameInput.Value")
                 .append("@PlayerUUID", "#UuidInput.Value")
+                .append("@Duration", "#DurationInput.Value")
         );
 
         // Bind cancel button
@@ -73,6 +92,22 @@ public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEven
             "#CancelButton",
             new EventData().append("Action", "Cancel")
         );
+
+        // Type-ahead: every keystroke in the name field asks for suggestions
+        eventBuilder.addEventBinding(
+            CustomUIEventBindingType.ValueChanged,
+            "#NameInput",
+            new EventData().append("Action", "Suggest").append("@PlayerName", "#NameInput.Value"),
+            false
+        );
+
+        for (int i = 0; i < SUGGESTION_SLOTS; i++) {
+            eventBuilder.addEventBinding(
+                CustomUIEventBindingType.Activating,
+                "#Suggestion" + i,
+                new EventData().append("Action", "PickSuggestion").append("Slot", String.valueOf(i))
+            );
+        }
     }
 
     @Override
@@ -87,6 +122,16 @@ public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEven
 
         Player player = (Player) store.getComponent(ref, Player.getComponentType());
 
+        if ("Suggest".equals(data.action)) {
+            showSuggestions(data.playerName != null ? data.playerName.trim() : "");
+            return;
+        }
+
+        if ("PickSuggestion".equals(data.action)) {
+            pickSuggestion(data.slot);
+            return;
+        }
+
         if ("Cancel".equals(data.action)) {
             // Go back to whitelist page
             navigateToWhitelistPage();
@@ -97,6 +142,13 @@ public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEven
             String username = data.playerName != null ? data.playerName.trim() : "";
             String uuidStr = data.playerUuid != null ? data.playerUuid.trim() : "";
 
+            // Empty = permanent
+            long durationMs = WhitelistExpiry.parseDuration(data.duration);
+            if (durationMs < 0) {
+                showError("Invalid duration! Use e.g. 2h, 3d or 1w.");
+                return;
+            }
+
             UUID uuid = null;
             String displayName = null;
 
@@ -110,16 +162,21 @@ public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEven
                     return;
                 }
             }
-            // Option 2: Username provided - check if player is online
+            // Option 2: Username provided - check if player is online, else if we saw them connect before
             else if (!username.isEmpty()) {
                 PlayerRef targetPlayer = Universe.get().getPlayerByUsername(username, NameMatching.EXACT);
+                UUID knownUuid = WhitelistPlugin.get().getNameDirectory().findByName(username);
 
                 if (targetPlayer != null) {
                     uuid = targetPlayer.getUuid();
                     displayName = username;
+                } else if (knownUuid != null) {
+                    // Real UUID captured from an earlier connect, not a generated offline one
+                    uuid = knownUuid;
+                    displayName = username;
                 } else {
-                    showError("Player not online! Use UUID instead.");
-                    playerRef.sendMessage(Message.raw("Tip: Player must be online OR enter their UUID directly."));
+                    showError("Player unknown! Use UUID instead.");
+                    playerRef.sendMessage(Message.raw("Tip: Player must be online, have connected before, OR enter their UUID directly."));
                     return;
                 }
             }
@@ -130,18 +187,35 @@ public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEven
             }
 
             // Add to whitelist
-            HytaleWhitelistProvider provider = WhitelistPlugin.get().getWhitelistProvider();
+            WhitelistAccess whitelist = WhitelistPlugin.get().getWhitelist();
             final UUID finalUuid = uuid;
             final String finalDisplayName = displayName;
 
-            if (provider.modify(list -> list.add(finalUuid))) {
-                playerRef.sendMessage(Message.raw("Added " + finalDisplayName + " (" + finalUuid + ") to whitelist"));
-            } else {
-                playerRef.sendMessage(Message.raw("Player is already whitelisted"));
+            // Added by name - remember it so the whitelist can show it while they are offline
+            if (uuidStr.isEmpty()) {
+                WhitelistPlugin.get().getNameDirectory().record(finalUuid, username);
             }
 
-            // Navigate back to whitelist page
-            navigateToWhitelistPage();
+            // Write on the mutation executor, then go back to the whitelist page on the world thread
+            World world = store.getExternalData().getWorld();
+            WhitelistPlugin.get().getMutations().submit(() -> {
+                // Set the expiry first, so a permanent re-add can't be removed by an old deadline in between
+                WhitelistExpiry expiry = WhitelistPlugin.get().getWhitelistExpiry();
+                String until = "";
+                if (durationMs > 0) {
+                    expiry.expireAt(finalUuid, System.currentTimeMillis() + durationMs);
+                    until = ", expires " + WhitelistExpiry.formatIn(System.currentTimeMillis() + durationMs);
+                } else if (expiry.cancel(finalUuid)) {
+                    until = ", no longer expires";
+                }
+
+                return whitelist.modify(playerRef.getUsername(), list -> list.add(finalUuid))
+                    ? "Added " + finalDisplayName + " (" + finalUuid + ") to whitelist" + until
+                    : "Player is already whitelisted" + until;
+            }).whenCompleteAsync((message, error) -> {
+                playerRef.sendMessage(Message.raw(error != null ? "Adding player failed: " + MutationExecutor.causeOf(error).getMessage() : message));
+                navigateToWhitelistPage();
+            }, world);
         }
     }
 
@@ -155,6 +229,46 @@ public class AddPlayerPage extends InteractiveCustomUIPage<AddPlayerPage.AddEven
         }
     }
 
+    private void showSuggestions(String prefix) {
+        suggestions = WhitelistPlugin.get().getNameDirectory().search(prefix, SUGGESTION_SLOTS);
+
+        UICommandBuilder commandBuilder = new UICommandBuilder();
+        for (int i = 0; i < SUGGESTION_SLOTS; i++) {
+            String selector = "#Suggestion" + i;
+            if (i < suggestions.size()) {
+                UsernameIndex.Match match = suggestions.get(i);
+                commandBuilder.set(selector + ".Text", match.username() + "  (" + match.uuid().toString().substring(0, 8) + "...)");
+                commandBuilder.set(selector + ".Visible", true);
+            } else {
+                commandBuilder.set(selector + ".Visible", false);
+            }
+        }
+        sendUpdate(commandBuilder);
+    }
+
+    private void pickSuggestion(String slot) {
+        int index;
+        try {
+            index = Integer.parseInt(slot);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (index < 0 || index >= suggestions.size()) {
+            return;
+        }
+
+        // Fill in both fields - the UUID wins on confirm, so the exact player is added
+        UsernameIndex.Match match = suggestions.get(index);
+        UICommandBuilder commandBuilder = new UICommandBuilder();
+        commandBuilder.set("#NameInput.Value", match.username());
+        commandBuilder.set("#UuidInput.Value", match.uuid().toString());
+        for (int i = 0; i < SUGGESTION_SLOTS; i++) {
+            commandBuilder.set("#Suggestion" + i + ".Visible", false);
+        }
+        sendUpdate(commandBuilder);
+        suggestions = Collections.emptyList();
+    }
+
     private void showError(String message) {
         UICommandBuilder commandBuilder = new UICommandBuilder();
         commandBuilder.set("#Error.Visible", true);
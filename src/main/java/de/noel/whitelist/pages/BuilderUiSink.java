@@ -0,0 +1,72 @@
+package de.noel.whitelist.pages;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
+import com.hypixel.hytale.server.core.ui.builder.EventData;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
+
+/**
+ * {@link UiSink} writing into a {@link UICommandBuilder} / {@link UIEventBuilder} pair.
+ */
+public class BuilderUiSink implements UiSink {
+    private final UICommandBuilder commandBuilder;
+    private final UIEventBuilder eventBuilder;
+    private int count;
+
+    public BuilderUiSink(UICommandBuilder commandBuilder, UIEventBuilder eventBuilder) {
+        this.commandBuilder = commandBuilder;
+        this.eventBuilder = eventBuilder;
+    }
+
+    @Override
+    public void clear(String selector) {
+        commandBuilder.clear(selector);
+        count++;
+    }
+
+    @Override
+    public void append(String listSelector, String document) {
+        commandBuilder.append(listSelector, document);
+        count++;
+    }
+
+    @Override
+    public void appendInline(String listSelector, String markup) {
+        commandBuilder.appendInline(listSelector, markup);
+        count++;
+    }
+
+    @Override
+    public void insertBefore(String selector, String document) {
+        commandBuilder.insertBefore(selector, document);
+        count++;
+    }
+
+    @Override
+    public void remove(String selector) {
+        commandBuilder.remove(selector);
+        count++;
+    }
+
+    @Override
+    public void set(String selector, String value) {
+        commandBuilder.set(selector, value);
+        count++;
+    }
+
+    @Override
+    public void bind(String selector, String action, String key) {
+        eventBuilder.addEventBinding(
+            CustomUIEventBindingType.Activating,
+            selector,
+            new EventData().append("Action", action).append("UUID", key),
+            false
+        );
+        count++;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+}
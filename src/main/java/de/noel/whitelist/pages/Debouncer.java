@@ -0,0 +1,51 @@
+package de.noel.whitelist.pages;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collapses bursts of {@link #trigger()} calls into one run of the action per delay.
+ * The first trigger after a quiet period schedules the action; triggers until it runs are absorbed.
+ */
+public class Debouncer {
+    private final ScheduledExecutorService scheduler;
+    private final long delayMs;
+    private final Runnable action;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile ScheduledFuture<?> future;
+    private volatile boolean cancelled;
+
+    public Debouncer(ScheduledExecutorService scheduler, long delayMs, Runnable action) {
+        this.scheduler = scheduler;
+        this.delayMs = delayMs;
+        this.action = action;
+    }
+
+    public void trigger() {
+        if (cancelled || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        future = scheduler.schedule(() -> {
+            // Clear first, so a change during the action schedules the next run
+            scheduled.set(false);
+            if (!cancelled) {
+                action.run();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drops a scheduled run and ignores all further triggers.
+     */
+    public void cancel() {
+        cancelled = true;
+        ScheduledFuture<?> current = future;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package de.noel.whitelist.pages;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Remembers which rows a viewer's list currently shows and turns a new row list into the
+ * minimal set of remove / insert / set commands.
+ * <p>
+ * Rows are identified by key. A row whose key stays at the same position only gets
+ * {@code set} commands for the fields that changed. Button bindings are addressed by row index,
+ * so a row is rebound when it is inserted or when it shifts to an index bound to another key.
+ * Removing or adding one row therefore costs O(1) set commands instead of a full rebuild.
+ */
+public class ListView {
+    private final String listSelector;
+    private final String document;
+    private final String[] fieldSelectors;
+    private final String[] bindSelectors;
+    private final String[] bindActions;
+
+    private final List<Row> rendered = new ArrayList<>();
+    private final List<String> boundKeys = new ArrayList<>(); // key the buttons at each index carry
+    private String placeholder; // text of the "empty" label while it is shown
+
+    /**
+     * @param fieldSelectors property selectors relative to a row, e.g. {@code " #PlayerName.Text"}
+     * @param bindings       pairs of button selector relative to a row and action name
+     */
+    public ListView(String listSelector, String document, String[] fieldSelectors, String... bindings) {
+        this.listSelector = listSelector;
+        this.document = document;
+        this.fieldSelectors = fieldSelectors;
+        this.bindSelectors = new String[bindings.length / 2];
+        this.bindActions = new String[bindings.length / 2];
+        for (int i = 0; i < bindSelectors.length; i++) {
+            bindSelectors[i] = bindings[i * 2];
+            bindActions[i] = bindings[i * 2 + 1];
+        }
+    }
+
+    /**
+     * Forgets the rendered state, e.g. after the page document was rebuilt from scratch.
+     */
+    public void reset() {
+        rendered.clear();
+        boundKeys.clear();
+        placeholder = null;
+    }
+
+    public int size() {
+        return rendered.size();
+    }
+
+    /**
+     * Brings the client's list in line with {@code rows}, or shows {@code emptyText} if there are none.
+     */
+    public void render(List<Row> rows, String emptyText, UiSink sink) {
+        if (rows.isEmpty()) {
+            if (emptyText.equals(placeholder)) {
+                return;
+            }
+            sink.clear(listSelector);
+            sink.appendInline(listSelector, "Label { Text: \"" + emptyText + "\"; Anchor: (Height: 40); Style: (FontSize: 14, TextColor: #6e7da1, HorizontalAlignment: Center, VerticalAlignment: Center); }");
+            rendered.clear();
+            boundKeys.clear();
+            placeholder = emptyText;
+            return;
+        }
+
+        if (placeholder != null) {
+            sink.clear(listSelector);
+            placeholder = null;
+        }
+
+        // Drop rows that are gone, from the back so earlier indices stay valid
+        Set<String> keys = new HashSet<>(rows.size() * 2);
+        for (Row row : rows) {
+            keys.add(row.key());
+        }
+        for (int i = rendered.size() - 1; i >= 0; i--) {
+            if (!keys.contains(rendered.get(i).key())) {
+                sink.remove(rowSelector(i));
+                rendered.remove(i);
+            }
+        }
+
+        // Walk the target order: keep matching rows, insert new ones, move displaced ones
+        boolean[] inserted = new boolean[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+
+            if (i < rendered.size() && rendered.get(i).key().equals(row.key())) {
+                Row previous = rendered.get(i);
+                for (int f = 0; f < fieldSelectors.length; f++) {
+                    if (!Objects.equals(previous.values()[f], row.values()[f])) {
+                        sink.set(rowSelector(i) + fieldSelectors[f], row.values()[f]);
+                    }
+                }
+                rendered.set(i, row);
+                continue;
+            }
+
+            int moved = indexOf(row.key(), i + 1);
+            if (moved >= 0) {
+                sink.remove(rowSelector(moved));
+                rendered.remove(moved);
+            }
+
+            if (i == rendered.size()) {
+                sink.append(listSelector, document);
+            } else {
+                sink.insertBefore(rowSelector(i), document);
+            }
+            rendered.add(i, row);
+            inserted[i] = true;
+
+            String selector = rowSelector(i);
+            for (int f = 0; f < fieldSelectors.length; f++) {
+                sink.set(selector + fieldSelectors[f], row.values()[f]);
+            }
+        }
+
+        for (int i = rendered.size() - 1; i >= rows.size(); i--) {
+            sink.remove(rowSelector(i));
+            rendered.remove(i);
+        }
+
+        // Bindings stay with the index: rebind inserted rows and every index that now shows another key
+        for (int i = 0; i < rows.size(); i++) {
+            String key = rows.get(i).key();
+            boolean current = i < boundKeys.size() && key.equals(boundKeys.get(i));
+            if (current && !inserted[i]) {
+                continue;
+            }
+            for (int b = 0; b < bindSelectors.length; b++) {
+                sink.bind(rowSelector(i) + bindSelectors[b], bindActions[b], key);
+            }
+            if (i < boundKeys.size()) {
+                boundKeys.set(i, key);
+            } else {
+                boundKeys.add(key);
+            }
+        }
+        boundKeys.subList(rows.size(), boundKeys.size()).clear();
+    }
+
+    private int indexOf(String key, int from) {
+        for (int i = from; i < rendered.size(); i++) {
+            if (rendered.get(i).key().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String rowSelector(int index) {
+        return listSelector + "[" + index + "]";
+    }
+
+    /**
+     * One rendered row: its key (carried by its button events) and the field values in selector order.
+     */
+    public record Row(String key, String... values) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Row other && key.equals(other.key) && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return key + Arrays.toString(values);
+        }
+    }
+}
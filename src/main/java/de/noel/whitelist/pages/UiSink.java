@@ -0,0 +1,30 @@
+package de.noel.whitelist.pages;
+
+/**
+ * The UI commands a {@link ListView} needs. Implemented by {@link BuilderUiSink} on top of the
+ * server's command/event builders; kept as interface so list rendering can be measured offline.
+ */
+public interface UiSink {
+
+    void clear(String selector);
+
+    void append(String listSelector, String document);
+
+    void appendInline(String listSelector, String markup);
+
+    void insertBefore(String selector, String document);
+
+    void remove(String selector);
+
+    void set(String selector, String value);
+
+    /**
+     * Binds an activation of {@code selector} to an event carrying {@code action} and the row key as UUID.
+     */
+    void bind(String selector, String action, String key);
+
+    /**
+     * @return number of commands and bindings emitted so far
+     */
+    int getCount();
+}
@@ -1,8 +1,19 @@
 package de.noel.whitelist.pages;
 
 import de.noel.whitelist.WhitelistPlugin;
+import de.noel.whitelist.capture.SubnetBlocklist;
 import de.noel.whitelist.data.ConnectionAttempt;
 import de.noel.whitelist.data.ConnectionAttemptManager;
+import de.noel.whitelist.data.MutationExecutor;
+import de.noel.whitelist.data.PlayerNameDirectory;
+import de.noel.whitelist.data.Subnet;
+import de.noel.whitelist.data.SubnetIndex;
+import de.noel.whitelist.data.UuidSet;
+import de.noel.whitelist.data.WhitelistAccess;
+import de.noel.whitelist.data.WhitelistExpiry;
+import de.noel.whitelist.metrics.Counter;
+import de.noel.whitelist.metrics.Histogram;
+import de.noel.whitelist.metrics.Metrics;
 import com.hypixel.hytale.codec.Codec;
 import com.hypixel.hytale.codec.KeyedCodec;
 import com.hypixel.hytale.codec.builder.BuilderCodec;
@@ -14,37 +25,107 @@ import com.hypixel.hytale.protocol.packets.interface_.Page;
 import com.hypixel.hytale.server.core.Message;
 import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.entity.entities.player.pages.InteractiveCustomUIPage;
-import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
 import com.hypixel.hytale.server.core.ui.builder.EventData;
 import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
-import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import javax.annotation.Nonnull;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
 public class WhitelistPage extends InteractiveCustomUIPage<WhitelistPage.WhitelistEventData> {
 
+    private static final String LIST_PLAYERS = "Players";
+    private static final String LIST_PENDING = "Pending";
+
     public static class WhitelistEventData {
         public String action;
         public String uuid;
+        public String list;
+        public String page;
+        public String search;
+        public String duration;
 
-        public static final BuilderCodec<WhitelistEventData> CODEC = ((BuilderCodec.Builder<WhitelistEventData>) ((BuilderCodec.Builder<WhitelistEventData>)
+        public static final BuilderCodec<WhitelistEventData> CODEC = ((BuilderCodec.Builder<WhitelistEventData>) ((BuilderCodec.Builder<WhitelistEventData>) ((BuilderCodec.Builder<WhitelistEventData>) ((BuilderCodec.Builder<WhitelistEventData>) ((BuilderCodec.Builder<WhitelistEventData>) ((BuilderCodec.Builder<WhitelistEventData>)
             BuilderCodec.builder(WhitelistEventData.class, WhitelistEventData::new)
                 .append(new KeyedCodec<>("Action", Codec.STRING), (WhitelistEventData o, String v) -> o.action = v, (WhitelistEventData o) -> o.action)
                 .add())
                 .append(new KeyedCodec<>("UUID", Codec.STRING), (WhitelistEventData o, String v) -> o.uuid = v, (WhitelistEventData o) -> o.uuid)
                 .add())
+                .append(new KeyedCodec<>("List", Codec.STRING), (WhitelistEventData o, String v) -> o.list = v, (WhitelistEventData o) -> o.list)
+                .add())
+                .append(new KeyedCodec<>("@Page", Codec.STRING), (WhitelistEventData o, String v) -> o.page = v, (WhitelistEventData o) -> o.page)
+                .add())
+                .append(new KeyedCodec<>("@Search", Codec.STRING), (WhitelistEventData o, String v) -> o.search = v, (WhitelistEventData o) -> o.search)
+                .add())
+                .append(new KeyedCodec<>("@Duration", Codec.STRING), (WhitelistEventData o, String v) -> o.duration = v, (WhitelistEventData o) -> o.duration)
+                .add())
             .build();
     }
 
+    // Per-viewer paging state - only the visible page of each list is sent to the client
+    private final int pageSize;
+    private int playerPage;
+    private int pendingPage;
+    private String search = "";
+    private String acceptDuration = ""; // applied to Accept, empty = permanent
+    private boolean groupBySubnet;      // pending list shows one row per /24 or /64 instead of per request
+
+    // Rows ticked for batch actions, kept across pages and searches until applied or cleared
+    private final Set<UUID> selectedPlayers = new LinkedHashSet<>();
+    private final Set<UUID> selectedPending = new LinkedHashSet<>();
+
+    // What this viewer's client currently shows, so refreshes only send the difference
+    private final ListView playerView = new ListView("#PlayerList", "Pages/WhitelistEntry.ui",
+        new String[]{" #PlayerName.Text", " #PlayerUUID.Text", " #SelectButton.Text"},
+        " #RemoveButton", "Remove",
+        " #SelectButton", "SelectPlayer");
+    private final ListView pendingView = new ListView("#PendingList", "Pages/PendingEntry.ui",
+        new String[]{" #PlayerName.Text", " #TimeAgo.Text", " #SelectButton.Text"},
+        " #AcceptButton", "Accept",
+        " #DismissButton", "Dismiss",
+        " #SelectButton", "SelectPending");
+    private final ListView subnetView = new ListView("#PendingList", "Pages/SubnetEntry.ui",
+        new String[]{" #Subnet.Text", " #Count.Text", " #BlockButton.Text"},
+        " #DismissButton", "DismissSubnet",
+        " #BlockButton", "BlockSubnet");
+    private final Map<String, String> renderedText = new HashMap<>();
+    private Boolean renderedGrouped; // which of the two views fills #PendingList, null right after a build
+
+    // Shared by all viewers - the registry hands out the same instances
+    private final Histogram buildTimer;
+    private final Histogram refreshTimer;
+    private final Counter uiCommands;
+    private final Counter livePushes;
+
+    // Subscription to whitelist and pending list changes while the page is open, null otherwise
+    private Debouncer liveUpdate;
+    private Runnable changeListener;
+
+    // Set once the viewer left the page; completions of queued mutations then skip the refresh
+    private boolean closed;
+
     public WhitelistPage(@Nonnull PlayerRef playerRef) {
         super(playerRef, CustomPageLifetime.CanDismissOrCloseThroughInteraction, WhitelistEventData.CODEC);
+        this.pageSize = WhitelistPlugin.get().getPluginConfig().getUiPageSize();
+
+        Metrics metrics = WhitelistPlugin.get().getMetrics();
+        this.buildTimer = metrics.histogram("whitelist_page_build_seconds", "Duration of building the /wl page");
+        this.refreshTimer = metrics.histogram("whitelist_page_refresh_seconds", "Duration of rendering and sending a /wl refresh");
+        this.uiCommands = metrics.counter("whitelist_page_ui_commands_total", "UI commands and bindings sent by /wl builds and refreshes");
+        this.livePushes = metrics.counter("whitelist_page_live_pushes_total", "Debounced /wl refreshes triggered by whitelist or pending list changes");
     }
 
     @Override
@@ -54,26 +135,21 @@ public class WhitelistPage extends InteractiveCustomUIPage<WhitelistPage.Whiteli
         @Nonnull UIEventBuilder eventBuilder,
         @Nonnull Store<EntityStore> store
     ) {
+        long start = System.nanoTime();
         commandBuilder.append("Pages/WhitelistPage.ui");
 
-        HytaleWhitelistProvider provider = WhitelistPlugin.get().getWhitelistProvider();
-        boolean isEnabled = provider.isEnabled();
-        Set<UUID> whitelist = provider.getList();
+        // Pick up changes made past the plugin, e.g. by the server's own whitelist command
+        resyncInBackground(ref, store);
 
-        // Set status
-        commandBuilder.set("#StatusLabel.Text", isEnabled ? "ENABLED" : "DISABLED");
-        commandBuilder.set("#StatusLabel.Style.TextColor", isEnabled ? "#4aff7f" : "#ff6b6b");
-        commandBuilder.set("#ToggleButton.Text", isEnabled ? "DISABLE" : "ENABLE");
-        commandBuilder.set("#PlayerCount.Text", "PLAYERS (" + whitelist.size() + ")");
-
-        // Build player list
-        buildPlayerList(commandBuilder, eventBuilder, whitelist);
-
-        // Build pending requests list
-        ConnectionAttemptManager attemptManager = WhitelistPlugin.get().getAttemptManager();
-        Collection<ConnectionAttempt> pending = attemptManager.getPendingAttempts();
-        commandBuilder.set("#PendingCount.Text", "PENDING REQUESTS (" + pending.size() + ")");
-        buildPendingList(commandBuilder, eventBuilder, pending);
+        // Fresh document - nothing has been rendered into it yet
+        playerView.reset();
+        pendingView.reset();
+        subnetView.reset();
+        renderedText.clear();
+        renderedGrouped = null;
+        BuilderUiSink sink = new BuilderUiSink(commandBuilder, eventBuilder);
+        renderLists(sink);
+        uiCommands.add(sink.getCount());
 
         // Bind action buttons
         eventBuilder.addEventBinding(
@@ -99,80 +175,284 @@ public class WhitelistPage extends InteractiveCustomUIPage<WhitelistPage.Whiteli
             "#CloseButton",
             new EventData().append("Action", "Close")
         );
-    }
 
-    private void buildPlayerList(UICommandBuilder commandBuilder, UIEventBuilder eventBuilder, Set<UUID> whitelist) {
-        commandBuilder.clear("#PlayerList");
+        // Batch actions on the ticked rows
+        String[][] batchButtons = {
+            {"#RemoveSelectedButton", "RemoveSelected"},
+            {"#ClearPlayerSelectionButton", "ClearPlayerSelection"},
+            {"#AcceptSelectedButton", "AcceptSelected"},
+            {"#DismissSelectedButton", "DismissSelected"},
+            {"#AcceptAllButton", "AcceptAll"},
+            {"#GroupPendingButton", "GroupPending"}
+        };
+        for (String[] button : batchButtons) {
+            eventBuilder.addEventBinding(
+                CustomUIEventBindingType.Activating,
+                button[0],
+                new EventData().append("Action", button[1])
+            );
+        }
+
+        // Search filters both lists on the server
+        eventBuilder.addEventBinding(
+            CustomUIEventBindingType.ValueChanged,
+            "#SearchInput",
+            new EventData().append("Action", "Search").append("@Search", "#SearchInput.Value"),
+            false
+        );
+
+        // Duration for accepted requests, kept on the server like the search
+        eventBuilder.addEventBinding(
+            CustomUIEventBindingType.ValueChanged,
+            "#AcceptDurationInput",
+            new EventData().append("Action", "AcceptDuration").append("@Duration", "#AcceptDurationInput.Value"),
+            false
+        );
+
+        bindPager(eventBuilder, LIST_PLAYERS, "#Player");
+        bindPager(eventBuilder, LIST_PENDING, "#Pending");
+        subscribe(ref, store);
+        buildTimer.recordSince(start);
+    }
 
-        if (whitelist.isEmpty()) {
-            commandBuilder.appendInline("#PlayerList", "Label { Text: \"No players whitelisted\"; Anchor: (Height: 40); Style: (FontSize: 14, TextColor: #6e7da1, HorizontalAlignment: Center, VerticalAlignment: Center); }");
+    /**
+     * Pushes whitelist and pending list changes to this viewer - at most one refresh per {@code ui.liveUpdateMs},
+     * covering every change since the previous one, and always on the world thread.
+     */
+    private void subscribe(Ref<EntityStore> ref, Store<EntityStore> store) {
+        long delayMs = WhitelistPlugin.get().getPluginConfig().getUiLiveUpdateMs();
+        if (liveUpdate != null || delayMs <= 0) {
             return;
         }
 
-        // Try to get usernames for all whitelisted players
-        Map<UUID, String> usernames = new HashMap<>();
-        for (UUID uuid : whitelist) {
-            PlayerRef onlinePlayer = Universe.get().getPlayer(uuid);
-            if (onlinePlayer != null) {
-                usernames.put(uuid, onlinePlayer.getUsername());
+        World world = store.getExternalData().getWorld();
+        liveUpdate = new Debouncer(WhitelistPlugin.get().getUiScheduler(), delayMs, () -> world.execute(() -> {
+            // Dismissed while the push was queued
+            if (liveUpdate != null) {
+                livePushes.increment();
+                refreshPage(ref, store);
             }
+        }));
+        changeListener = liveUpdate::trigger;
+        WhitelistPlugin.get().getWhitelist().addListener(changeListener);
+        WhitelistPlugin.get().getAttemptManager().addListener(changeListener);
+    }
+
+    private void unsubscribe() {
+        if (liveUpdate == null) {
+            return;
         }
+        WhitelistPlugin.get().getWhitelist().removeListener(changeListener);
+        WhitelistPlugin.get().getAttemptManager().removeListener(changeListener);
+        liveUpdate.cancel();
+        liveUpdate = null;
+        changeListener = null;
+    }
 
-        int i = 0;
-        for (UUID uuid : whitelist) {
-            String selector = "#PlayerList[" + i + "]";
-            commandBuilder.append("#PlayerList", "Pages/WhitelistEntry.ui");
+    @Override
+    public void onDismiss(@Nonnull Ref<EntityStore> ref, @Nonnull Store<EntityStore> store) {
+        closed = true;
+        unsubscribe();
+    }
 
-            // Show username if available, otherwise show shortened UUID
-            String displayName = usernames.getOrDefault(uuid, uuid.toString().substring(0, 8) + "...");
-            String statusText = usernames.containsKey(uuid) ? "(online)" : uuid.toString();
+    private void bindPager(UIEventBuilder eventBuilder, String list, String prefix) {
+        eventBuilder.addEventBinding(
+            CustomUIEventBindingType.Activating,
+            prefix + "PrevButton",
+            new EventData().append("Action", "PrevPage").append("List", list)
+        );
 
-            commandBuilder.set(selector + " #PlayerName.Text", displayName);
-            commandBuilder.set(selector + " #PlayerUUID.Text", statusText);
+        eventBuilder.addEventBinding(
+            CustomUIEventBindingType.Activating,
+            prefix + "NextButton",
+            new EventData().append("Action", "NextPage").append("List", list)
+        );
 
-            eventBuilder.addEventBinding(
-                CustomUIEventBindingType.Activating,
-                selector + " #RemoveButton",
-                new EventData().append("Action", "Remove").append("UUID", uuid.toString()),
-                false
-            );
-            i++;
-        }
+        eventBuilder.addEventBinding(
+            CustomUIEventBindingType.Activating,
+            prefix + "GoButton",
+            new EventData().append("Action", "GoToPage").append("List", list).append("@Page", prefix + "PageInput.Value")
+        );
     }
 
-    private void buildPendingList(UICommandBuilder commandBuilder, UIEventBuilder eventBuilder, Collection<ConnectionAttempt> pending) {
-        commandBuilder.clear("#PendingList");
+    /**
+     * Sets the status header and renders the visible page of both lists. Only values that differ
+     * from what the client already shows are sent.
+     */
+    private void renderLists(UiSink sink) {
+        WhitelistAccess whitelistAccess = WhitelistPlugin.get().getWhitelist();
+        boolean isEnabled = whitelistAccess.isEnabled();
+        UuidSet.Sorted whitelist = whitelistAccess.sorted();
+
+        // Set status
+        setText(sink, "#StatusLabel.Text", isEnabled ? "ENABLED" : "DISABLED");
+        setText(sink, "#StatusLabel.Style.TextColor", isEnabled ? "#4aff7f" : "#ff6b6b");
+        setText(sink, "#ToggleButton.Text", isEnabled ? "DISABLE" : "ENABLE");
+
+        // Build player list - rows removed in the meantime can't stay selected
+        selectedPlayers.removeIf(uuid -> !whitelistAccess.contains(uuid));
+        setText(sink, "#RemoveSelectedButton.Text", "REMOVE SELECTED (" + selectedPlayers.size() + ")");
+        List<UUID> players = filterPlayers(whitelist);
+        playerPage = clampPage(playerPage, players.size());
+        setText(sink, "#PlayerCount.Text", "PLAYERS (" + countText(players.size(), whitelist.size()) + ")");
+        setPager(sink, "#Player", playerPage, players.size());
+        buildPlayerList(sink, pageOf(players, playerPage));
 
-        if (pending.isEmpty()) {
-            commandBuilder.appendInline("#PendingList", "Label { Text: \"No pending requests\"; Anchor: (Height: 40); Style: (FontSize: 14, TextColor: #6e7da1, HorizontalAlignment: Center, VerticalAlignment: Center); }");
+        // Build pending requests list
+        ConnectionAttemptManager attemptManager = WhitelistPlugin.get().getAttemptManager();
+        List<ConnectionAttempt> allPending = attemptManager.getPendingAttempts();
+        selectedPending.removeIf(uuid -> attemptManager.getAttempt(uuid) == null);
+        setText(sink, "#AcceptSelectedButton.Text", "ACCEPT SELECTED (" + selectedPending.size() + ")");
+        setText(sink, "#DismissSelectedButton.Text", "DISMISS SELECTED (" + selectedPending.size() + ")");
+        setText(sink, "#GroupPendingButton.Text", groupBySubnet ? "BY REQUEST" : "BY SUBNET");
+
+        // Both views render into #PendingList - switching drops the other one's rows
+        if (renderedGrouped != null && renderedGrouped != groupBySubnet) {
+            sink.clear("#PendingList");
+            pendingView.reset();
+            subnetView.reset();
+        }
+        renderedGrouped = groupBySubnet;
+
+        if (groupBySubnet) {
+            List<ListView.Row> subnets = subnetRows(attemptManager.getSubnetGroups());
+            pendingPage = clampPage(pendingPage, subnets.size());
+            setText(sink, "#PendingCount.Text", "PENDING REQUESTS (" + allPending.size() + " IN " + subnets.size() + " SUBNETS)");
+            setPager(sink, "#Pending", pendingPage, subnets.size());
+            subnetView.render(pageOf(subnets, pendingPage), search.isEmpty() ? "No requests from an IP address" : "No matching subnets", sink);
             return;
         }
 
-        int i = 0;
+        List<ConnectionAttempt> pending = filterPending(allPending);
+        pendingPage = clampPage(pendingPage, pending.size());
+        setText(sink, "#PendingCount.Text", "PENDING REQUESTS (" + countText(pending.size(), allPending.size()) + ")");
+        setPager(sink, "#Pending", pendingPage, pending.size());
+        buildPendingList(sink, pageOf(pending, pendingPage));
+    }
+
+    /**
+     * One row per subnet with pending requests, largest first, then the blocked subnets without any -
+     * so they can be unblocked from here. The search filters by the subnet text.
+     */
+    private List<ListView.Row> subnetRows(List<SubnetIndex.Group> groups) {
+        SubnetBlocklist blocklist = WhitelistPlugin.get().getRejectionCapture().getBlocklist();
+        List<ListView.Row> rows = new ArrayList<>();
+        Set<Subnet> listed = new HashSet<>();
+        for (SubnetIndex.Group group : groups) {
+            String text = group.subnet().toString();
+            if (text.contains(search)) {
+                boolean blocked = blocklist.contains(group.subnet());
+                rows.add(new ListView.Row(text, text, group.count() + (group.count() == 1 ? " request" : " requests"), blocked ? "UNBLOCK" : "BLOCK"));
+                listed.add(group.subnet());
+            }
+        }
+        for (Subnet subnet : blocklist.getSubnets()) {
+            String text = subnet.toString();
+            if (!listed.contains(subnet) && text.contains(search)) {
+                rows.add(new ListView.Row(text, text, "blocked", "UNBLOCK"));
+            }
+        }
+        return rows;
+    }
+
+    private void setText(UiSink sink, String selector, String value) {
+        if (!Objects.equals(renderedText.put(selector, value), value)) {
+            sink.set(selector, value);
+        }
+    }
+
+    /**
+     * Whitelisted UUIDs matching the search, in UUID order so pages don't reshuffle between renders.
+     * Without a search this is a view of the shared sorted snapshot - only the visible page creates UUIDs.
+     */
+    private List<UUID> filterPlayers(UuidSet.Sorted whitelist) {
+        if (search.isEmpty()) {
+            return whitelist.asList();
+        }
+
+        // Names by prefix through the index, UUIDs by substring
+        Set<UUID> nameMatches = WhitelistPlugin.get().getNameDirectory().searchUuids(search);
+        List<UUID> result = new ArrayList<>();
+        for (UUID uuid : whitelist.asList()) {
+            if (nameMatches.contains(uuid) || uuid.toString().contains(search)) {
+                result.add(uuid);
+            }
+        }
+        return result;
+    }
+
+    private List<ConnectionAttempt> filterPending(List<ConnectionAttempt> pending) {
+        // The manager's snapshot is immutable and shared - page it directly when not searching
+        if (search.isEmpty()) {
+            return pending;
+        }
+
+        List<ConnectionAttempt> result = new ArrayList<>();
         for (ConnectionAttempt attempt : pending) {
-            String selector = "#PendingList[" + i + "]";
-            commandBuilder.append("#PendingList", "Pages/PendingEntry.ui");
+            if ((attempt.getUsername() != null && attempt.getUsername().toLowerCase(Locale.ROOT).contains(search))
+                || attempt.getUuid().toString().contains(search)
+                || (attempt.getIpAddress() != null && attempt.getIpAddress().contains(search))) {
+                result.add(attempt);
+            }
+        }
+        return result;
+    }
 
-            commandBuilder.set(selector + " #PlayerName.Text", attempt.getUsername());
-            commandBuilder.set(selector + " #TimeAgo.Text", attempt.getFormattedTime());
+    private <T> List<T> pageOf(List<T> entries, int page) {
+        int from = Math.min(entries.size(), page * pageSize);
+        int to = Math.min(entries.size(), from + pageSize);
+        return entries.subList(from, to);
+    }
 
-            // Accept button - adds to whitelist
-            eventBuilder.addEventBinding(
-                CustomUIEventBindingType.Activating,
-                selector + " #AcceptButton",
-                new EventData().append("Action", "Accept").append("UUID", attempt.getUuid().toString()),
-                false
-            );
+    private int pageCount(int size) {
+        return Math.max(1, (size + pageSize - 1) / pageSize);
+    }
 
-            // Dismiss button - removes from pending list
-            eventBuilder.addEventBinding(
-                CustomUIEventBindingType.Activating,
-                selector + " #DismissButton",
-                new EventData().append("Action", "Dismiss").append("UUID", attempt.getUuid().toString()),
-                false
-            );
-            i++;
+    private int clampPage(int page, int size) {
+        return Math.max(0, Math.min(page, pageCount(size) - 1));
+    }
+
+    private void setPager(UiSink sink, String prefix, int page, int size) {
+        setText(sink, prefix + "PageLabel.Text", "Page " + (page + 1) + " / " + pageCount(size));
+    }
+
+    private String countText(int shown, int total) {
+        return shown == total ? String.valueOf(total) : shown + " of " + total;
+    }
+
+    private void buildPlayerList(UiSink sink, List<UUID> players) {
+        PlayerNameDirectory names = WhitelistPlugin.get().getNameDirectory();
+        WhitelistExpiry expiry = WhitelistPlugin.get().getWhitelistExpiry();
+        List<ListView.Row> rows = new ArrayList<>(players.size());
+        for (UUID uuid : players) {
+            // Show last known username if available, otherwise show shortened UUID
+            PlayerNameDirectory.Entry known = names.getEntry(uuid);
+            String uuidText = uuid.toString();
+            String displayName = known != null ? known.username() : uuidText.substring(0, 8) + "...";
+            String statusText = known != null ? uuidText + "  (seen " + ConnectionAttempt.formatAgo(known.lastSeen()) + ")" : uuidText;
+            Long expiresAt = expiry.getExpiry(uuid);
+            if (expiresAt != null) {
+                statusText += "  (expires " + WhitelistExpiry.formatIn(expiresAt) + ")";
+            }
+            rows.add(new ListView.Row(uuidText, displayName, statusText, checkbox(selectedPlayers.contains(uuid))));
         }
+
+        playerView.render(rows, search.isEmpty() ? "No players whitelisted" : "No matching players", sink);
+    }
+
+    private static String checkbox(boolean checked) {
+        return checked ? "[x]" : "[ ]";
+    }
+
+    private void buildPendingList(UiSink sink, List<ConnectionAttempt> pending) {
+        List<ListView.Row> rows = new ArrayList<>(pending.size());
+        for (ConnectionAttempt attempt : pending) {
+            rows.add(new ListView.Row(attempt.getUuid().toString(), attempt.getUsername(), attempt.getFormattedTime(),
+                checkbox(selectedPending.contains(attempt.getUuid()))));
+        }
+
+        // Accept adds to whitelist, Dismiss removes from pending list
+        pendingView.render(rows, search.isEmpty() ? "No pending requests" : "No matching requests", sink);
     }
 
     @Override
@@ -182,23 +462,26 @@ public class WhitelistPage extends InteractiveCustomUIPage<WhitelistPage.Whiteli
         @Nonnull WhitelistEventData data
     ) {
         Player player = (Player) store.getComponent(ref, Player.getComponentType());
-        HytaleWhitelistProvider provider = WhitelistPlugin.get().getWhitelistProvider();
+        WhitelistAccess whitelist = WhitelistPlugin.get().getWhitelist();
 
         switch (data.action) {
             case "Toggle":
-                boolean newState = !provider.isEnabled();
-                provider.setEnabled(newState);
-                provider.syncSave();
-                playerRef.sendMessage(Message.raw("Whitelist " + (newState ? "enabled" : "disabled")));
-                refreshPage(ref, store);
+                boolean newState = !whitelist.isEnabled();
+                mutate(ref, store, () -> {
+                    whitelist.setEnabled(newState);
+                    whitelist.syncSave();
+                    return "Whitelist " + (newState ? "enabled" : "disabled");
+                });
                 break;
 
             case "Remove":
                 if (data.uuid != null) {
                     UUID uuidToRemove = UUID.fromString(data.uuid);
-                    provider.modify(list -> list.remove(uuidToRemove));
-                    playerRef.sendMessage(Message.raw("Removed player from whitelist"));
-                    refreshPage(ref, store);
+                    mutate(ref, store, () -> {
+                        WhitelistPlugin.get().getWhitelistExpiry().cancel(uuidToRemove);
+                        whitelist.modify(playerRef.getUsername(), list -> list.remove(uuidToRemove));
+                        return "Removed player from whitelist";
+                    });
                 }
                 break;
 
@@ -207,17 +490,32 @@ public class WhitelistPage extends InteractiveCustomUIPage<WhitelistPage.Whiteli
                     UUID uuidToAccept = UUID.fromString(data.uuid);
                     ConnectionAttemptManager attemptManager = WhitelistPlugin.get().getAttemptManager();
                     ConnectionAttempt attempt = attemptManager.getAttempt(uuidToAccept);
-                    if (attempt != null) {
-                        // Add to whitelist
-                        if (provider.modify(list -> list.add(uuidToAccept))) {
-                            playerRef.sendMessage(Message.raw("Added " + attempt.getUsername() + " to whitelist"));
-                        } else {
-                            playerRef.sendMessage(Message.raw(attempt.getUsername() + " is already whitelisted"));
-                        }
-                        // Remove from pending
-                        attemptManager.removeAttempt(uuidToAccept);
+                    long durationMs = WhitelistExpiry.parseDuration(acceptDuration);
+                    if (durationMs < 0) {
+                        playerRef.sendMessage(Message.raw("Invalid duration \"" + acceptDuration + "\" - use e.g. 2h, 3d or 1w, or leave it empty"));
+                    } else if (attempt != null) {
+                        mutate(ref, store, () -> {
+                            // Add to whitelist, time-limited if a duration is set
+                            WhitelistPlugin.get().getNameDirectory().record(uuidToAccept, attempt.getUsername());
+                            WhitelistExpiry expiry = WhitelistPlugin.get().getWhitelistExpiry();
+                            String until = "";
+                            if (durationMs > 0) {
+                                expiry.expireAt(uuidToAccept, System.currentTimeMillis() + durationMs);
+                                until = ", expires " + WhitelistExpiry.formatIn(System.currentTimeMillis() + durationMs);
+                            } else {
+                                expiry.cancel(uuidToAccept);
+                            }
+                            boolean added = whitelist.modify(playerRef.getUsername(), list -> list.add(uuidToAccept));
+                            // Remove from pending
+                            attemptManager.removeAttempt(uuidToAccept);
+                            return added
+                                ? "Added " + attempt.getUsername() + " to whitelist" + until
+                                : attempt.getUsername() + " is already whitelisted" + until;
+                        });
+                    } else {
+                        // Already gone, e.g. accepted by another admin
+                        refreshPage(ref, store);
                     }
-                    refreshPage(ref, store);
                 }
                 break;
 
@@ -225,23 +523,159 @@ public class WhitelistPage extends InteractiveCustomUIPage<WhitelistPage.Whiteli
                 if (data.uuid != null) {
                     UUID uuidToDismiss = UUID.fromString(data.uuid);
                     ConnectionAttemptManager attemptManager = WhitelistPlugin.get().getAttemptManager();
-                    attemptManager.removeAttempt(uuidToDismiss);
-                    playerRef.sendMessage(Message.raw("Dismissed pending request"));
+                    mutate(ref, store, () -> {
+                        attemptManager.removeAttempt(uuidToDismiss);
+                        return "Dismissed pending request";
+                    });
+                }
+                break;
+
+            case "DismissSubnet": {
+                Subnet subnet = parseSubnet(data.uuid);
+                if (subnet != null) {
+                    ConnectionAttemptManager attemptManager = WhitelistPlugin.get().getAttemptManager();
+                    mutate(ref, store, () -> "Dismissed " + attemptManager.removeSubnet(subnet).size() + " pending requests from " + subnet);
+                }
+                break;
+            }
+
+            case "BlockSubnet": {
+                Subnet subnet = parseSubnet(data.uuid);
+                if (subnet != null) {
+                    SubnetBlocklist blocklist = WhitelistPlugin.get().getRejectionCapture().getBlocklist();
+                    ConnectionAttemptManager attemptManager = WhitelistPlugin.get().getAttemptManager();
+                    mutate(ref, store, () -> {
+                        if (blocklist.unblock(subnet)) {
+                            return "Unblocked " + subnet;
+                        }
+                        // Block first, so no new request from the subnet slips in after the dismissal
+                        blocklist.block(subnet);
+                        return "Blocked " + subnet + " and dismissed " + attemptManager.removeSubnet(subnet).size() + " pending requests";
+                    });
+                }
+                break;
+            }
+
+            case "SelectPlayer":
+                if (data.uuid != null) {
+                    toggle(selectedPlayers, UUID.fromString(data.uuid));
+                    refreshPage(ref, store);
+                }
+                break;
+
+            case "SelectPending":
+                if (data.uuid != null) {
+                    toggle(selectedPending, UUID.fromString(data.uuid));
                     refreshPage(ref, store);
                 }
                 break;
 
+            case "ClearPlayerSelection":
+                selectedPlayers.clear();
+                refreshPage(ref, store);
+                break;
+
+            case "RemoveSelected":
+                if (selectedPlayers.isEmpty()) {
+                    playerRef.sendMessage(Message.raw("Select players to remove first"));
+                } else {
+                    removePlayers(ref, store, takeSelection(selectedPlayers));
+                }
+                break;
+
+            case "AcceptSelected":
+                if (selectedPending.isEmpty()) {
+                    playerRef.sendMessage(Message.raw("Select requests to accept first"));
+                } else {
+                    acceptRequests(ref, store, takeSelection(selectedPending));
+                }
+                break;
+
+            case "DismissSelected":
+                if (selectedPending.isEmpty()) {
+                    playerRef.sendMessage(Message.raw("Select requests to dismiss first"));
+                } else {
+                    List<UUID> batch = takeSelection(selectedPending);
+                    ConnectionAttemptManager attemptManager = WhitelistPlugin.get().getAttemptManager();
+                    mutate(ref, store, () -> "Dismissed " + attemptManager.removeAttempts(batch).size() + " pending requests");
+                }
+                break;
+
+            case "AcceptAll": {
+                // Everything the list shows, i.e. all requests matching the search
+                List<UUID> batch = new ArrayList<>();
+                for (ConnectionAttempt attempt : filterPending(WhitelistPlugin.get().getAttemptManager().getPendingAttempts())) {
+                    batch.add(attempt.getUuid());
+                }
+                if (batch.isEmpty()) {
+                    playerRef.sendMessage(Message.raw("No pending requests to accept"));
+                } else {
+                    selectedPending.removeAll(batch);
+                    acceptRequests(ref, store, batch);
+                }
+                break;
+            }
+
             case "Add":
                 // Open the add player page
+                closed = true;
+                unsubscribe();
                 AddPlayerPage addPage = new AddPlayerPage(playerRef);
                 player.getPageManager().openCustomPage(ref, store, addPage);
                 break;
 
+            case "GroupPending":
+                groupBySubnet = !groupBySubnet;
+                pendingPage = 0;
+                refreshPage(ref, store);
+                break;
+
             case "Refresh":
+                mutate(ref, store, () -> {
+                    whitelist.resync();
+                    return null;
+                });
+                break;
+
+            case "Search":
+                search = data.search != null ? data.search.trim().toLowerCase(Locale.ROOT) : "";
+                playerPage = 0;
+                pendingPage = 0;
+                refreshPage(ref, store);
+                break;
+
+            case "AcceptDuration":
+                acceptDuration = data.duration != null ? data.duration.trim() : "";
+                break;
+
+            case "PrevPage":
+                turnPage(data.list, -1);
+                refreshPage(ref, store);
+                break;
+
+            case "NextPage":
+                turnPage(data.list, 1);
+                refreshPage(ref, store);
+                break;
+
+            case "GoToPage":
+                try {
+                    // The input shows 1-based page numbers; out of range values are clamped on render
+                    int target = Integer.parseInt(data.page != null ? data.page.trim() : "") - 1;
+                    if (LIST_PENDING.equals(data.list)) {
+                        pendingPage = target;
+                    } else {
+                        playerPage = target;
+                    }
+                } catch (NumberFormatException e) {
+                    playerRef.sendMessage(Message.raw("Enter a page number"));
+                }
                 refreshPage(ref, store);
                 break;
 
             case "Close":
+                closed = true;
+                unsubscribe();
                 player.getPageManager().setPage(ref, store, Page.None);
                 break;
 
@@ -250,27 +684,167 @@ public class WhitelistPage extends InteractiveCustomUIPage<WhitelistPage.Whiteli
         }
     }
 
-    private void refreshPage(Ref<EntityStore> ref, Store<EntityStore> store) {
-        UICommandBuilder commandBuilder = new UICommandBuilder();
-        UIEventBuilder eventBuilder = new UIEventBuilder();
+    /**
+     * Runs {@code mutation} on the mutation executor, then - back on the world thread - sends the
+     * message it returns and refreshes the page, unless the viewer has left it in the meantime.
+     */
+    private void mutate(Ref<EntityStore> ref, Store<EntityStore> store, Supplier<String> mutation) {
+        World world = store.getExternalData().getWorld();
+        WhitelistPlugin.get().getMutations().submit(mutation).whenCompleteAsync((message, error) -> {
+            if (error != null) {
+                playerRef.sendMessage(Message.raw("Whitelist change failed: " + MutationExecutor.causeOf(error).getMessage()));
+            } else if (message != null) {
+                playerRef.sendMessage(Message.raw(message));
+            }
+            if (!closed) {
+                refreshPage(ref, store);
+            }
+        }, world);
+    }
 
-        HytaleWhitelistProvider provider = WhitelistPlugin.get().getWhitelistProvider();
-        boolean isEnabled = provider.isEnabled();
-        Set<UUID> whitelist = provider.getList();
+    /**
+     * Compares the whitelist mirror with the provider on the mutation executor - it walks every member under
+     * the provider's lock - and refreshes the page if members changed, unless live updates already do.
+     */
+    private void resyncInBackground(Ref<EntityStore> ref, Store<EntityStore> store) {
+        World world = store.getExternalData().getWorld();
+        WhitelistPlugin.get().getMutations().submit(() -> WhitelistPlugin.get().getWhitelist().resync()).whenCompleteAsync((changed, error) -> {
+            if (error != null) {
+                WhitelistPlugin.get().getLogger().at(Level.WARNING).log("Whitelist resync failed: " + MutationExecutor.causeOf(error).getMessage());
+            } else if (changed && !closed && liveUpdate == null) {
+                refreshPage(ref, store);
+            }
+        }, world);
+    }
+
+    /**
+     * Accepts a batch of pending requests with one whitelist change and one pending store write.
+     * Requests that are gone by the time the batch runs (e.g. accepted by another admin) are skipped.
+     */
+    private void acceptRequests(Ref<EntityStore> ref, Store<EntityStore> store, List<UUID> uuids) {
+        long durationMs = WhitelistExpiry.parseDuration(acceptDuration);
+        if (durationMs < 0) {
+            playerRef.sendMessage(Message.raw("Invalid duration \"" + acceptDuration + "\" - use e.g. 2h, 3d or 1w, or leave it empty"));
+            return;
+        }
 
-        commandBuilder.set("#StatusLabel.Text", isEnabled ? "ENABLED" : "DISABLED");
-        commandBuilder.set("#StatusLabel.Style.TextColor", isEnabled ? "#4aff7f" : "#ff6b6b");
-        commandBuilder.set("#ToggleButton.Text", isEnabled ? "DISABLE" : "ENABLE");
-        commandBuilder.set("#PlayerCount.Text", "PLAYERS (" + whitelist.size() + ")");
+        WhitelistAccess whitelist = WhitelistPlugin.get().getWhitelist();
+        mutate(ref, store, () -> {
+            ConnectionAttemptManager attemptManager = WhitelistPlugin.get().getAttemptManager();
+            List<ConnectionAttempt> attempts = new ArrayList<>(uuids.size());
+            for (UUID uuid : uuids) {
+                ConnectionAttempt attempt = attemptManager.getAttempt(uuid);
+                if (attempt != null) {
+                    attempts.add(attempt);
+                }
+            }
+            if (attempts.isEmpty()) {
+                return "The requests were already handled";
+            }
 
-        buildPlayerList(commandBuilder, eventBuilder, whitelist);
+            // Expiry first, like a single accept
+            PlayerNameDirectory names = WhitelistPlugin.get().getNameDirectory();
+            WhitelistExpiry expiry = WhitelistPlugin.get().getWhitelistExpiry();
+            long expiresAt = durationMs > 0 ? System.currentTimeMillis() + durationMs : 0;
+            List<UUID> accepted = new ArrayList<>(attempts.size());
+            for (ConnectionAttempt attempt : attempts) {
+                names.record(attempt.getUuid(), attempt.getUsername());
+                if (expiresAt > 0) {
+                    expiry.expireAt(attempt.getUuid(), expiresAt);
+                } else {
+                    expiry.cancel(attempt.getUuid());
+                }
+                accepted.add(attempt.getUuid());
+            }
 
-        // Refresh pending list
-        ConnectionAttemptManager attemptManager = WhitelistPlugin.get().getAttemptManager();
-        Collection<ConnectionAttempt> pending = attemptManager.getPendingAttempts();
-        commandBuilder.set("#PendingCount.Text", "PENDING REQUESTS (" + pending.size() + ")");
-        buildPendingList(commandBuilder, eventBuilder, pending);
+            int[] added = {0};
+            whitelist.modify(playerRef.getUsername(), list -> {
+                for (UUID uuid : accepted) {
+                    if (list.add(uuid)) {
+                        added[0]++;
+                    }
+                }
+                return added[0] > 0;
+            });
+            attemptManager.removeAttempts(accepted);
+
+            String already = added[0] < accepted.size() ? " (" + (accepted.size() - added[0]) + " already whitelisted)" : "";
+            String until = expiresAt > 0 ? ", expires " + WhitelistExpiry.formatIn(expiresAt) : "";
+            return "Accepted " + accepted.size() + " pending requests" + already + until;
+        });
+    }
+
+    /**
+     * Removes a batch of players with one whitelist change.
+     */
+    private void removePlayers(Ref<EntityStore> ref, Store<EntityStore> store, List<UUID> uuids) {
+        WhitelistAccess whitelist = WhitelistPlugin.get().getWhitelist();
+        mutate(ref, store, () -> {
+            WhitelistExpiry expiry = WhitelistPlugin.get().getWhitelistExpiry();
+            for (UUID uuid : uuids) {
+                expiry.cancel(uuid);
+            }
 
-        sendUpdate(commandBuilder, eventBuilder, false);
+            int[] removed = {0};
+            whitelist.modify(playerRef.getUsername(), list -> {
+                for (UUID uuid : uuids) {
+                    if (list.remove(uuid)) {
+                        removed[0]++;
+                    }
+                }
+                return removed[0] > 0;
+            });
+            return "Removed " + removed[0] + " players from whitelist";
+        });
+    }
+
+    /**
+     * @return the subnet a row's button carries as key, or null if it is malformed
+     */
+    private static Subnet parseSubnet(String text) {
+        try {
+            return text != null ? Subnet.parse(text) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void toggle(Set<UUID> selection, UUID uuid) {
+        if (!selection.remove(uuid)) {
+            selection.add(uuid);
+        }
+    }
+
+    /**
+     * Copies and clears {@code selection} - the batch owns the UUIDs, the checkboxes reset right away.
+     */
+    private static List<UUID> takeSelection(Set<UUID> selection) {
+        List<UUID> batch = new ArrayList<>(selection);
+        selection.clear();
+        return batch;
+    }
+
+    private void turnPage(String list, int delta) {
+        if (LIST_PENDING.equals(list)) {
+            pendingPage += delta;
+        } else {
+            playerPage += delta;
+        }
+    }
+
+    private void refreshPage(Ref<EntityStore> ref, Store<EntityStore> store) {
+        long start = System.nanoTime();
+        UICommandBuilder commandBuilder = new UICommandBuilder();
+        UIEventBuilder eventBuilder = new UIEventBuilder();
+        BuilderUiSink sink = new BuilderUiSink(commandBuilder, eventBuilder);
+
+        renderLists(sink);
+        uiCommands.add(sink.getCount());
+
+        // Nothing changed since the last render - don't send an empty packet
+        if (sink.getCount() > 0) {
+            sendUpdate(commandBuilder, eventBuilder, false);
+        }
+        refreshTimer.recordSince(start);
     }
 }
@@ -0,0 +1,290 @@
+package de.noel.whitelist.sync;
+
+import de.noel.whitelist.data.AtomicFiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only change log in a directory shared by several servers, one tab-separated line per change:
+ * {@code serverId, millis, op, fields...}. Writers take an exclusive file lock, readers a shared one,
+ * so no server ever sees half of another server's batch.
+ * <p>
+ * Read positions are logical offsets: the byte offset in the log as if it had never been compacted.
+ * {@link #compact} drops a prefix every server has read by writing the rest to a new file that starts
+ * with a {@code #base} header (the logical offset of its first line) and renaming it over the log.
+ * The old file is then marked {@code #moved}, so a server that was waiting for its lock opens the new one.
+ * A log without header (written before compaction existed, or replaced by an admin) starts at offset 0.
+ * <p>
+ * File locks are held by the whole JVM and overlapping ones throw within it, so all access in this
+ * process is additionally serialized on one monitor.
+ */
+public class SharedChangeLog {
+    public static final String FILE_NAME = "whitelist_changes.log";
+
+    // Upper bound for one read, so a server that was offline for long catches up in steps.
+    // No valid change comes close; a longer line is skipped.
+    private static final int MAX_READ_BYTES = 4 * 1024 * 1024;
+    private static final int SKIP_CHUNK_BYTES = 64 * 1024;
+
+    // "#base\t" + 19 digits + newline, fixed length so the header can be read in one go
+    private static final String BASE_HEADER = "#base\t";
+    private static final int HEADER_BYTES = BASE_HEADER.length() + 19 + 1;
+    private static final String MOVED = "#moved\n";
+
+    private static final Object PROCESS_LOCK = new Object();
+
+    private final Path path;
+
+    public SharedChangeLog(Path directory) {
+        this.path = directory.resolve(FILE_NAME);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the file size, including what compaction will drop
+     */
+    public long size() throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    /**
+     * @return the logical offset after the last line, where a server joining now starts reading
+     */
+    public long end() throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        return locked(false, (channel, header) -> header.base() + channel.size() - header.length());
+    }
+
+    /**
+     * Appends all lines in one locked write.
+     */
+    public void append(List<String> lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        locked(true, (channel, header) -> {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = channel.size();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+            return null;
+        });
+    }
+
+    /**
+     * Reads the complete lines after {@code offset}. A trailing line without newline is left for the next read.
+     * If {@code offset} lies outside the log - it was replaced, or compacted past a server that was away for
+     * longer than the others waited - the result is flagged rotated and reading starts at the log's first line.
+     * A line longer than the read limit is skipped, the result then holds no lines and its skipped length.
+     */
+    public ReadResult read(long offset) throws IOException {
+        if (!Files.exists(path)) {
+            return new ReadResult(List.of(), 0, offset > 0, 0);
+        }
+        return locked(false, (channel, header) -> read(channel, header, offset));
+    }
+
+    /**
+     * Drops the lines before {@code upTo} if they make up at least half of the log.
+     *
+     * @param upTo logical offset every server has read past, at a line start
+     * @return the number of bytes dropped, 0 if the log was left as it is
+     */
+    public long compact(long upTo) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        return locked(true, (channel, header) -> {
+            long size = channel.size();
+            long end = header.base() + size - header.length();
+            if (upTo <= header.base() || upTo > end || (upTo - header.base()) * 2 < end - header.base()) {
+                return 0L;
+            }
+
+            long cut = upTo - header.base() + header.length();
+            Path temp = AtomicFiles.tempFor(path);
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer headerBytes = ByteBuffer.wrap(String.format("%s%019d\n", BASE_HEADER, upTo).getBytes(StandardCharsets.UTF_8));
+                while (headerBytes.hasRemaining()) {
+                    out.write(headerBytes);
+                }
+                long position = cut;
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, out);
+                }
+                out.force(false);
+            }
+            AtomicFiles.replace(temp, path);
+
+            // Still holding the lock on the old file: whoever waits for it sees the marker and reopens
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(MOVED.getBytes(StandardCharsets.UTF_8)), 0);
+            channel.force(false);
+            return cut - header.length();
+        });
+    }
+
+    /**
+     * Opens the log, locks it and runs {@code action}, again on the new file if a compaction replaced it meanwhile.
+     */
+    private <T> T locked(boolean write, LockedAction<T> action) throws IOException {
+        synchronized (PROCESS_LOCK) {
+            while (true) {
+                try (FileChannel channel = write
+                    ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ)) {
+                    FileLock fileLock = write ? channel.lock() : channel.lock(0, Long.MAX_VALUE, true);
+                    try {
+                        Header header = readHeader(channel);
+                        if (header != null) {
+                            return action.run(channel, header);
+                        }
+                    } finally {
+                        fileLock.release();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the header, a zero-length one at base 0 for a log without, or null if the file was moved
+     */
+    private static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), HEADER_BYTES));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        if (text.startsWith(MOVED)) {
+            return null;
+        }
+        if (text.length() == HEADER_BYTES && text.startsWith(BASE_HEADER) && text.endsWith("\n")) {
+            try {
+                return new Header(Long.parseLong(text.substring(BASE_HEADER.length(), HEADER_BYTES - 1)), HEADER_BYTES);
+            } catch (NumberFormatException e) {
+                // Not a header after all - a line that happens to start like one
+            }
+        }
+        return new Header(0, 0);
+    }
+
+    private static ReadResult read(FileChannel channel, Header header, long offset) throws IOException {
+        long size = channel.size();
+        // Logical offset = file position + shift
+        long shift = header.base() - header.length();
+        boolean rotated = offset < header.base() || offset > size + shift;
+        if (rotated) {
+            offset = header.base();
+        }
+        long position = offset - shift;
+        if (size == position) {
+            return new ReadResult(List.of(), offset, rotated, 0);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - position, MAX_READ_BYTES));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+
+        byte[] bytes = buffer.array();
+        int end = buffer.position();
+        int lastNewline = end - 1;
+        while (lastNewline >= 0 && bytes[lastNewline] != '\n') {
+            lastNewline--;
+        }
+        if (lastNewline < 0) {
+            if (end < MAX_READ_BYTES) {
+                return new ReadResult(List.of(), offset, rotated, 0);
+            }
+            // The limit holds no line end - skip to the next one, or wait if the line is still being written
+            long next = nextNewline(channel, position + end, size);
+            return next < 0
+                ? new ReadResult(List.of(), offset, rotated, 0)
+                : new ReadResult(List.of(), next + 1 + shift, rotated, next + 1 - position);
+        }
+
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= lastNewline; i++) {
+            if (bytes[i] == '\n') {
+                if (i > start) {
+                    lines.add(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                }
+                start = i + 1;
+            }
+        }
+        return new ReadResult(lines, offset + lastNewline + 1, rotated, 0);
+    }
+
+    /**
+     * @return position of the first newline at or after {@code from}, or -1 if there is none before {@code size}
+     */
+    private static long nextNewline(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(SKIP_CHUNK_BYTES);
+        long position = from;
+        while (position < size) {
+            chunk.clear();
+            int read = channel.read(chunk, position);
+            if (read < 0) {
+                break;
+            }
+            byte[] bytes = chunk.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return -1;
+    }
+
+    /**
+     * @param lines     complete lines read, oldest first
+     * @param offset    where the next read continues
+     * @param rotated   whether the requested offset was outside the log, so lines may have been missed
+     * @param skipped   length of an over-long line that was skipped, 0 if none
+     */
+    public record ReadResult(List<String> lines, long offset, boolean rotated, long skipped) {
+    }
+
+    /**
+     * @param base   logical offset of the first line
+     * @param length bytes taken by the header itself
+     */
+    private record Header(long base, int length) {
+    }
+
+    private interface LockedAction<T> {
+        T run(FileChannel channel, Header header) throws IOException;
+    }
+}
@@ -0,0 +1,466 @@
+package de.noel.whitelist.sync;
+
+import de.noel.whitelist.data.AtomicFiles;
+import de.noel.whitelist.data.ChangePublisher;
+import de.noel.whitelist.data.ConnectionAttempt;
+import de.noel.whitelist.data.ConnectionAttemptManager;
+import de.noel.whitelist.data.WhitelistAccess;
+import de.noel.whitelist.metrics.Counter;
+import de.noel.whitelist.metrics.Histogram;
+import de.noel.whitelist.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the whitelist and the pending list of several servers in step through a {@link SharedChangeLog}.
+ * <p>
+ * Local changes are queued and appended in batches on the "Whitelist-Sync" thread. The same thread reads
+ * what other servers appended - woken by a {@link WatchService} on the shared directory, with a poll as
+ * fallback for file systems that don't report remote writes - and applies each batch with one
+ * whitelist {@code modify} and one pending list update. Only changes travel, not the full state,
+ * so a server joining later should start from a copy of the whitelist (e.g. {@code /wl export} and {@code /wl import}).
+ * <p>
+ * Every server also keeps its read position in the shared directory. Once the log is larger than
+ * {@code compactBytes}, the part all servers seen within {@code serverTimeoutMillis} have read is dropped.
+ */
+public class SyncService implements ChangePublisher {
+    private static final String OFFSET_FILE = "whitelist_sync.offset";
+    private static final String POSITIONS_DIRECTORY = "whitelist_sync_positions";
+    // An idle server still rewrites its position this often, so it doesn't look gone
+    private static final long POSITION_REFRESH_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long COMPACT_CHECK_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String WHITELIST_ADD = "W+";
+    private static final String WHITELIST_REMOVE = "W-";
+    private static final String PENDING_ADD = "P+";
+    private static final String PENDING_REMOVE = "P-";
+
+    private final String serverId;
+    private final SharedChangeLog log;
+    private final Path offsetFile;
+    private final Path positionsDirectory;
+    private final Path positionFile;
+    private final long compactBytes;
+    private final long serverTimeoutMillis;
+    private final WhitelistAccess whitelist;
+    private final ConnectionAttemptManager attemptManager;
+
+    private final Queue<String> outgoing = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+    private final WatchService watchService;
+    private final Thread watchThread;
+
+    // Only touched on the sync thread
+    private long offset;
+    private long positionSavedAt;
+    private long compactCheckedAt;
+
+    private final Histogram propagation;
+    private final Counter published;
+    private final Counter applied;
+    private final Counter failures;
+    private final Counter compactions;
+
+    /**
+     * @param serverDirectory     where this server keeps its read position in the shared log
+     * @param compactBytes        log size from which the part every server has read is dropped, 0 to never compact
+     * @param serverTimeoutMillis how long a server may be away before compaction no longer waits for it
+     */
+    public SyncService(String serverId, Path sharedDirectory, Path serverDirectory, long pollIntervalMs,
+                       long compactBytes, long serverTimeoutMillis,
+                       WhitelistAccess whitelist, ConnectionAttemptManager attemptManager, Metrics metrics) throws IOException {
+        this.serverId = clean(serverId);
+        this.whitelist = whitelist;
+        this.attemptManager = attemptManager;
+        this.compactBytes = compactBytes;
+        this.serverTimeoutMillis = serverTimeoutMillis;
+
+        Files.createDirectories(sharedDirectory);
+        this.log = new SharedChangeLog(sharedDirectory);
+        this.offsetFile = serverDirectory.resolve(OFFSET_FILE);
+        this.positionsDirectory = sharedDirectory.resolve(POSITIONS_DIRECTORY);
+        Files.createDirectories(positionsDirectory);
+        this.positionFile = positionsDirectory.resolve(positionFileName(this.serverId));
+        this.offset = loadOffset();
+
+        this.propagation = metrics.histogram("whitelist_sync_propagation_seconds",
+            "Time from a change on another server until it was applied here");
+        this.published = metrics.counter("whitelist_sync_published_total", "Changes written to the shared log");
+        this.applied = metrics.counter("whitelist_sync_applied_total", "Changes from other servers applied here");
+        this.failures = metrics.counter("whitelist_sync_failures_total", "Failed reads or writes of the shared log");
+        this.compactions = metrics.counter("whitelist_sync_compactions_total", "Compactions of the shared log");
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Whitelist-Sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            pollIncoming();
+            compactIfDue();
+        }, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+
+        this.watchService = sharedDirectory.getFileSystem().newWatchService();
+        sharedDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watchThread = new Thread(this::watch, "Whitelist-SyncWatch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+
+        whitelist.setPublisher(this);
+        attemptManager.setPublisher(this);
+    }
+
+    @Override
+    public void whitelistChanged(Set<UUID> added, Set<UUID> removed) {
+        long now = System.currentTimeMillis();
+        for (UUID uuid : added) {
+            outgoing.add(line(now, WHITELIST_ADD, uuid.toString()));
+        }
+        for (UUID uuid : removed) {
+            outgoing.add(line(now, WHITELIST_REMOVE, uuid.toString()));
+        }
+        schedulePublish();
+    }
+
+    @Override
+    public void pendingAdded(ConnectionAttempt attempt) {
+        outgoing.add(line(System.currentTimeMillis(), PENDING_ADD, attempt.getUuid().toString(),
+            String.valueOf(attempt.getTimestamp()), clean(attempt.getIpAddress()), clean(attempt.getUsername())));
+        schedulePublish();
+    }
+
+    @Override
+    public void pendingRemoved(UUID uuid) {
+        outgoing.add(line(System.currentTimeMillis(), PENDING_REMOVE, uuid.toString()));
+        schedulePublish();
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    /**
+     * Stops watching, writes out queued changes and remembers the read position.
+     */
+    public void shutdown() {
+        whitelist.setPublisher(null);
+        attemptManager.setPublisher(null);
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        watchThread.interrupt();
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publish();
+        saveOffset();
+    }
+
+    private void schedulePublish() {
+        if (publishScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::publish);
+            } catch (RuntimeException e) {
+                // Shutting down - the final publish() picks the changes up
+                publishScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Appends everything queued so far as one batch.
+     */
+    private void publish() {
+        // Clear first, so changes queued while writing schedule the next batch
+        publishScheduled.set(false);
+        List<String> batch = new ArrayList<>();
+        String line;
+        while ((line = outgoing.poll()) != null) {
+            batch.add(line);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            log.append(batch);
+            published.add(batch.size());
+        } catch (IOException e) {
+            // Put them back in front of anything newer and retry with the next change or shutdown
+            failures.increment();
+            List<String> newer = new ArrayList<>();
+            while ((line = outgoing.poll()) != null) {
+                newer.add(line);
+            }
+            outgoing.addAll(batch);
+            outgoing.addAll(newer);
+            System.err.println("Failed to write whitelist changes to " + log.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    private void watch() {
+        String fileName = SharedChangeLog.FILE_NAME;
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || (context instanceof Path changed && changed.toString().equals(fileName))) {
+                        relevant = true;
+                    }
+                }
+                key.reset();
+                if (relevant) {
+                    executor.execute(this::pollIncoming);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutdown
+        } catch (RuntimeException e) {
+            // Executor rejected the task during shutdown
+        }
+    }
+
+    /**
+     * Reads new lines from the shared log and applies the ones written by other servers.
+     */
+    private void pollIncoming() {
+        try {
+            while (true) {
+                SharedChangeLog.ReadResult result = log.read(offset);
+                if (result.rotated()) {
+                    System.err.println("Shared whitelist change log " + log.getPath() + " no longer holds this server's read position"
+                        + " (replaced, or compacted while this server was away), reading it from the start - changes in between"
+                        + " may be missing, copy the whitelist from another server if in doubt");
+                }
+                if (result.skipped() > 0) {
+                    failures.increment();
+                    System.err.println("Skipped a " + result.skipped() + " byte line in " + log.getPath() + ", it exceeds the read limit");
+                }
+                boolean moved = result.offset() != offset;
+                if (!result.lines().isEmpty()) {
+                    apply(result.lines());
+                }
+                offset = result.offset();
+                if (moved) {
+                    saveOffset();
+                }
+                // A full read may have stopped at the size limit - keep going until caught up
+                if (result.lines().isEmpty() && result.skipped() == 0) {
+                    if (!moved && System.currentTimeMillis() - positionSavedAt > POSITION_REFRESH_MS) {
+                        saveOffset();
+                    }
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failures.increment();
+            System.err.println("Failed to read whitelist changes from " + log.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    private void apply(List<String> lines) {
+        long now = System.currentTimeMillis();
+
+        // Net effect of the batch, later lines win
+        Set<UUID> whitelistAdded = new LinkedHashSet<>();
+        Set<UUID> whitelistRemoved = new LinkedHashSet<>();
+        Map<UUID, ConnectionAttempt> pendingAdded = new LinkedHashMap<>();
+        Set<UUID> pendingRemoved = new LinkedHashSet<>();
+        // Servers whose whitelist changes are in the batch, the actor in the audit log
+        Set<String> origins = new LinkedHashSet<>();
+        int count = 0;
+
+        for (String line : lines) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 4 || fields[0].equals(serverId)) {
+                continue;
+            }
+
+            UUID uuid;
+            long millis;
+            try {
+                millis = Long.parseLong(fields[1]);
+                uuid = UUID.fromString(fields[3]);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+
+            switch (fields[2]) {
+                case WHITELIST_ADD -> {
+                    whitelistRemoved.remove(uuid);
+                    whitelistAdded.add(uuid);
+                    origins.add(fields[0]);
+                }
+                case WHITELIST_REMOVE -> {
+                    whitelistAdded.remove(uuid);
+                    whitelistRemoved.add(uuid);
+                    origins.add(fields[0]);
+                }
+                case PENDING_ADD -> {
+                    if (fields.length < 7) {
+                        continue;
+                    }
+                    long timestamp;
+                    try {
+                        timestamp = Long.parseLong(fields[4]);
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    pendingRemoved.remove(uuid);
+                    pendingAdded.put(uuid, new ConnectionAttempt(uuid, fields[6], timestamp, fields[5]));
+                }
+                case PENDING_REMOVE -> {
+                    pendingAdded.remove(uuid);
+                    pendingRemoved.add(uuid);
+                }
+                default -> {
+                    continue;
+                }
+            }
+
+            count++;
+            // Clocks of different hosts may be slightly apart - never record a negative delay
+            propagation.record(Math.max(0, now - millis) * 1_000_000L);
+        }
+
+        if (!whitelistAdded.isEmpty() || !whitelistRemoved.isEmpty()) {
+            whitelist.modifyRemote("sync from " + String.join(", ", origins), list -> {
+                boolean changed = false;
+                for (UUID uuid : whitelistRemoved) {
+                    changed |= list.remove(uuid);
+                }
+                for (UUID uuid : whitelistAdded) {
+                    changed |= list.add(uuid);
+                }
+                return changed;
+            });
+        }
+        if (!pendingAdded.isEmpty() || !pendingRemoved.isEmpty()) {
+            attemptManager.applyRemote(pendingAdded.values(), pendingRemoved);
+        }
+        applied.add(count);
+    }
+
+    /**
+     * Drops the part of the shared log that every server seen within the timeout has read, once the log is
+     * larger than {@code compactBytes}. Checked at most once a minute, on the sync thread.
+     */
+    private void compactIfDue() {
+        long now = System.currentTimeMillis();
+        if (compactBytes <= 0 || now - compactCheckedAt < COMPACT_CHECK_INTERVAL_MS) {
+            return;
+        }
+        compactCheckedAt = now;
+
+        try {
+            if (log.size() < compactBytes) {
+                return;
+            }
+            long upTo = offset;
+            try (DirectoryStream<Path> positions = Files.newDirectoryStream(positionsDirectory, "*.offset")) {
+                for (Path position : positions) {
+                    if (position.equals(positionFile)
+                        || now - Files.getLastModifiedTime(position).toMillis() > serverTimeoutMillis) {
+                        continue;
+                    }
+                    try {
+                        upTo = Math.min(upTo, Long.parseLong(Files.readString(position).trim()));
+                    } catch (NumberFormatException e) {
+                        // Half-written by a server without atomic rename - wait for the next check
+                        return;
+                    }
+                }
+            }
+            if (log.compact(upTo) > 0) {
+                compactions.increment();
+            }
+        } catch (IOException e) {
+            failures.increment();
+            System.err.println("Failed to compact " + log.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * First start: begin at the current end of the log, earlier changes are assumed to be in the copied whitelist.
+     */
+    private long loadOffset() throws IOException {
+        if (Files.exists(offsetFile)) {
+            try {
+                return Long.parseLong(Files.readString(offsetFile).trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid " + OFFSET_FILE + ", continuing at the end of the shared log");
+            }
+        }
+        return log.end();
+    }
+
+    /**
+     * Saves the read position locally, and in the shared directory for compaction.
+     */
+    private void saveOffset() {
+        positionSavedAt = System.currentTimeMillis();
+        for (Path path : new Path[]{offsetFile, positionFile}) {
+            try {
+                Path temp = AtomicFiles.tempFor(path);
+                Files.writeString(temp, Long.toString(offset));
+                AtomicFiles.replace(temp, path);
+            } catch (IOException e) {
+                System.err.println("Failed to save " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return a file name for the server ID, which may contain any character; the hash keeps similar IDs apart
+     */
+    private static String positionFileName(String serverId) {
+        String safe = serverId.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (safe.length() > 64) {
+            safe = safe.substring(0, 64);
+        }
+        return safe + "-" + Integer.toHexString(serverId.hashCode()) + ".offset";
+    }
+
+    private String line(long millis, String op, String... fields) {
+        StringBuilder sb = new StringBuilder(serverId).append('\t').append(millis).append('\t').append(op);
+        for (String field : fields) {
+            sb.append('\t').append(field);
+        }
+        return sb.toString();
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}